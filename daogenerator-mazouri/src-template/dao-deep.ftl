@@ -19,6 +19,7 @@ along with greenDAO Generator.  If not, see <http://www.gnu.org/licenses/>.
 -->
 <#if entity.toOneRelations?has_content>
     private String selectDeep;
+    private String selectDeepByKey;
 
     protected String getSelectDeep() {
         if (selectDeep == null) {
@@ -67,10 +68,13 @@ along with greenDAO Generator.  If not, see <http://www.gnu.org/licenses/>.
             return null;
         }
 
-        StringBuilder builder = new StringBuilder(getSelectDeep());
-        builder.append("WHERE ");
-        SqlUtils.appendColumnsEqValue(builder, "T", getPkColumns());
-        String sql = builder.toString();
+        if (selectDeepByKey == null) {
+            StringBuilder builder = new StringBuilder(getSelectDeep());
+            builder.append("WHERE ");
+            SqlUtils.appendColumnsEqValue(builder, "T", getPkColumns());
+            selectDeepByKey = builder.toString();
+        }
+        String sql = selectDeepByKey;
         
         String[] keyArray = new String[] { key.toString() };
         Cursor cursor = db.rawQuery(sql, keyArray);
@@ -23,10 +23,22 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.util.Log;
 import de.greenrobot.dao.AbstractDaoMaster;
+<#if migrations?has_content>
+import de.greenrobot.dao.DaoException;
+</#if>
+import de.greenrobot.dao.DatabaseTuning;
+import de.greenrobot.dao.DbUtils;
+<#if migrations?has_content>
+import de.greenrobot.dao.MigrationListener;
+import de.greenrobot.dao.SchemaMigrator;
+</#if>
 import de.greenrobot.dao.identityscope.IdentityScopeType;
 
+import java.io.IOException;
+
 <#list schema.entities as entity>
 import ${entity.javaPackageDao}.${entity.classNameDao};
 </#list>
@@ -38,28 +50,75 @@ import ${entity.javaPackageDao}.${entity.classNameDao};
 public class DaoMaster extends AbstractDaoMaster {
     public static final int SCHEMA_VERSION = ${schema.version?c};
 
-    /** Creates underlying database table using DAOs. */
+    /** Creates underlying database table using DAOs in one transaction. */
     public static void createAllTables(SQLiteDatabase db, boolean ifNotExists) {
+        db.beginTransaction();
+        try {
 <#list schema.entities as entity>
 <#if !entity.skipTableCreation>
-        ${entity.classNameDao}.createTable(db, ifNotExists);
+            ${entity.classNameDao}.createTable(db, ifNotExists);
 </#if>
 </#list>
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
     
-    /** Drops underlying database table using DAOs. */
+    /** Drops underlying database table using DAOs in one transaction. */
     public static void dropAllTables(SQLiteDatabase db, boolean ifExists) {
+        db.beginTransaction();
+        try {
 <#list schema.entities as entity>
 <#if !entity.skipTableCreation>
-        ${entity.classNameDao}.dropTable(db, ifExists);
+            ${entity.classNameDao}.dropTable(db, ifExists);
 </#if>
 </#list>
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Copies the prebuilt empty database "schema-v${schema.version?c}.db" from the assets into place if the database
+     * does not exist yet (see DaoGenerator.setSchemaSnapshot). Call it before opening the database; the OpenHelper then
+     * finds the current schema version and skips creating the tables.
+     *
+     * @return true if the snapshot was installed, false if the database existed or the snapshot is not usable.
+     */
+    public static boolean installSchemaSnapshot(Context context, String name) throws IOException {
+        return DbUtils.installDatabaseFromAsset(context, "schema-v" + SCHEMA_VERSION + ".db",
+                context.getDatabasePath(name), SCHEMA_VERSION);
     }
     
     public static abstract class OpenHelper extends SQLiteOpenHelper {
 
+        private final DatabaseTuning tuning;
+
         public OpenHelper(Context context, String name, CursorFactory factory) {
+            this(context, name, factory, null);
+        }
+
+        /** Applies the given tuning profile (may be null) whenever the database is opened. */
+        public OpenHelper(Context context, String name, CursorFactory factory, DatabaseTuning tuning) {
             super(context, name, factory, SCHEMA_VERSION);
+            this.tuning = tuning;
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            if (tuning != null) {
+                tuning.apply(db);
+            }
+        }
+
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            // onConfigure is called since Jelly Bean only
+            if (tuning != null && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+                tuning.apply(db);
+            }
         }
 
         @Override
@@ -69,12 +128,71 @@ public class DaoMaster extends AbstractDaoMaster {
         }
     }
     
+<#if migrations?has_content>
+    /**
+     * Migrates the tables from the given schema version to {@link #SCHEMA_VERSION} keeping all rows, using the steps
+     * computed by the generator from the previous schema versions.
+     *
+     * @param listener Notified about the progress of the migration (may be null).
+     * @return false if no migration from oldVersion was generated; the database is unchanged then.
+     */
+    public static boolean migrate(SQLiteDatabase db, int oldVersion, MigrationListener listener) {
+        SchemaMigrator migrator = new SchemaMigrator(db, listener);
+        switch (oldVersion) {
+<#list migrations as migration>
+            case ${migration.fromVersion?c}:
+                // To schema version ${migration.toVersion?c}
+<#list migration.steps as step>
+<#if step.rebuild>
+                migrator.rebuildTable("${step.tableName?j_string}", "${step.columnDefinitions?j_string}",
+                        "${step.targetColumns?j_string}", "${step.sourceExpressions?j_string}");
+<#else>
+                migrator.execSQL("${step.description?j_string}", "${step.sql?j_string}");
+</#if>
+</#list>
+</#list>
+                break;
+            default:
+                return false;
+        }
+        migrator.migrate();
+        return true;
+    }
+
+    /** Upgrades the database using {@link DaoMaster#migrate(SQLiteDatabase, int, MigrationListener)}. */
+    public static class MigrationOpenHelper extends OpenHelper {
+        private final MigrationListener listener;
+
+        public MigrationOpenHelper(Context context, String name, CursorFactory factory, MigrationListener listener) {
+            this(context, name, factory, null, listener);
+        }
+
+        public MigrationOpenHelper(Context context, String name, CursorFactory factory, DatabaseTuning tuning,
+                                   MigrationListener listener) {
+            super(context, name, factory, tuning);
+            this.listener = listener;
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            Log.i("greenDAO", "Migrating schema from version " + oldVersion + " to " + newVersion);
+            if (!migrate(db, oldVersion, listener)) {
+                throw new DaoException("No migration from schema version " + oldVersion + " to " + newVersion);
+            }
+        }
+    }
+
+</#if>
     /** WARNING: Drops all table on Upgrade! Use only during development. */
     public static class DevOpenHelper extends OpenHelper {
         public DevOpenHelper(Context context, String name, CursorFactory factory) {
             super(context, name, factory);
         }
 
+        public DevOpenHelper(Context context, String name, CursorFactory factory, DatabaseTuning tuning) {
+            super(context, name, factory, tuning);
+        }
+
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             Log.i("greenDAO", "Upgrading schema from version " + oldVersion + " to " + newVersion + " by dropping all tables");
@@ -84,7 +202,12 @@ public class DaoMaster extends AbstractDaoMaster {
     }
 
     public DaoMaster(SQLiteDatabase db) {
-        super(db, SCHEMA_VERSION);
+        this(db, null);
+    }
+
+    /** Applies the given tuning profile (may be null) to a database that was opened without it. */
+    public DaoMaster(SQLiteDatabase db, DatabaseTuning tuning) {
+        super(db, SCHEMA_VERSION, tuning);
 <#list schema.entities as entity>
         registerDaoClass(${entity.classNameDao}.class);
 </#list>
@@ -19,9 +19,14 @@ along with greenDAO Generator.  If not, see <http://www.gnu.org/licenses/>.
 -->
 <#assign toBindType = {"Boolean":"Long", "Byte":"Long", "Short":"Long", "Int":"Long", "Long":"Long", "Float":"Double", "Double":"Double", "String":"String", "ByteArray":"Blob", "Date": "Long" } />
 <#assign toCursorType = {"Boolean":"Short", "Byte":"Short", "Short":"Short", "Int":"Int", "Long":"Long", "Float":"Float", "Double":"Double", "String":"String", "ByteArray":"Blob", "Date": "Long"  } />
+<#assign toValueCast = {"Byte":"(long) ", "Short":"(long) ", "Int":"(long) ", "Float":"(double) "} />
+<#assign hasFkToOne = false />
+<#list entity.toOneRelations as toOne><#if toOne.useFkProperty><#assign hasFkToOne = true /></#if></#list>
+<#assign hasBatchToMany = false />
+<#list entity.toManyRelations as toMany><#if (toMany.batchResolvable)!false><#assign hasBatchToMany = true /></#if></#list>
 package ${entity.javaPackageDao};
 
-<#if entity.toOneRelations?has_content || entity.incomingToManyRelations?has_content>
+<#if entity.toOneRelations?has_content || entity.incomingToManyRelations?has_content || hasBatchToMany>
 import java.util.List;
 </#if>
 <#if entity.toOneRelations?has_content>
@@ -33,6 +38,12 @@ import android.database.sqlite.SQLiteStatement;
 
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
+<#if hasBatchToMany>
+import de.greenrobot.dao.ToManyRelation;
+</#if>
+<#if hasFkToOne>
+import de.greenrobot.dao.ToOneRelation;
+</#if>
 <#if entity.toOneRelations?has_content>
 import de.greenrobot.dao.internal.SqlUtils;
 </#if>
@@ -75,6 +86,68 @@ public class ${entity.classNameDao} extends AbstractDao<${entity.className}, ${e
 </#list>
     };
 
+<#if hasFkToOne || hasBatchToMany>
+    /**
+     * Relations of entity ${entity.className}.<br/>
+     * Can be used for QueryBuilder#fetch (to-one) and for resolving relations of entity lists.
+    */
+    public static class Relations {
+<#list entity.toOneRelations as toOne>
+<#if toOne.useFkProperty>
+        public final static ToOneRelation<${entity.className}, ${toOne.targetEntity.className}> ${toOne.name?cap_first} = <#--
+        -->new ToOneRelation<${entity.className}, ${toOne.targetEntity.className}>(
+                ${entity.className}.class, ${toOne.targetEntity.className}.class, "${toOne.name}", <#--
+        -->Properties.${toOne.fkProperties[0].propertyName?cap_first}) {
+            @Override
+            public Object getForeignKey(${entity.className} source) {
+                return source.get${toOne.fkProperties[0].propertyName?cap_first}();
+            }
+
+            @Override
+            public boolean isResolved(${entity.className} source) {
+                return source.__is${toOne.name?cap_first}Resolved();
+            }
+
+            @Override
+            public void setResolved(${entity.className} source, ${toOne.targetEntity.className} target) {
+                source.__set${toOne.name?cap_first}Resolved(target);
+            }
+        };
+</#if>
+</#list>
+<#list entity.toManyRelations as toMany>
+<#if (toMany.batchResolvable)!false>
+        public final static ToManyRelation<${entity.className}, ${toMany.targetEntity.className}> ${toMany.name?cap_first} = <#--
+        -->new ToManyRelation<${entity.className}, ${toMany.targetEntity.className}>(
+                ${entity.className}.class, ${toMany.targetEntity.className}.class, "${toMany.name}", <#--
+        -->Properties.${toMany.sourceProperties[0].propertyName?cap_first},
+                ${toMany.targetEntity.classNameDao}.Properties.${toMany.targetProperties[0].propertyName?cap_first}, <#--
+        --><#if toMany.order?has_content>"${toMany.order}"<#else>null</#if>) {
+            @Override
+            public Object getSourceKey(${entity.className} source) {
+                return source.get${toMany.sourceProperties[0].propertyName?cap_first}();
+            }
+
+            @Override
+            public Object getTargetKey(${toMany.targetEntity.className} target) {
+                return target.get${toMany.targetProperties[0].propertyName?cap_first}();
+            }
+
+            @Override
+            public boolean isResolved(${entity.className} source) {
+                return source.__is${toMany.name?cap_first}Resolved();
+            }
+
+            @Override
+            public void setResolved(${entity.className} source, List<${toMany.targetEntity.className}> targets) {
+                source.__set${toMany.name?cap_first}Resolved(targets);
+            }
+        };
+</#if>
+</#list>
+    };
+
+</#if>
 <#if entity.active>
     private DaoSession daoSession;
 
@@ -103,14 +176,13 @@ public class ${entity.classNameDao} extends AbstractDao<${entity.className}, ${e
         String constraint = ifNotExists? "IF NOT EXISTS ": "";
         db.execSQL("CREATE TABLE " + constraint + "\"${entity.tableName}\" (" + //
 <#list entity.propertiesColumns as property>
-                "\"${property.columnName}\" ${property.columnType}<#if property.constraints??> ${property.constraints} </#if><#if property_has_next>," +<#else>);");</#if> // ${property_index}: ${property.propertyName}
+                "${property.columnDefinition?j_string}<#if property_has_next>," +<#else>);");</#if> // ${property_index}: ${property.propertyName}
 </#list>
 <#if entity.indexes?has_content >
         // Add Indexes
 <#list entity.indexes as index>
-        db.execSQL("CREATE <#if index.unique>UNIQUE </#if>INDEX " + constraint + "${index.name} ON ${entity.tableName}" +
-                " (<#list index.properties 
-as property>\"${property.columnName}\"<#if property_has_next>,</#if></#list>);");
+        db.execSQL(ifNotExists ? "${entity.getIndexSql(index, true)?j_string}"
+                : "${entity.getIndexSql(index, false)?j_string}");
 </#list>
 </#if>         
     }
@@ -268,6 +340,47 @@ as property>\"${property.columnName}\"<#if property_has_next>,</#if></#list>);")
         return ${(!entity.protobuf)?string};
     }
     
+    /** @inheritdoc */
+    @Override
+    protected Object getPropertyValue(${entity.className} entity, int ordinal) {
+        switch (ordinal) {
+<#list entity.properties as property>
+<#if property.notNull || entity.protobuf>
+            case ${property_index}:
+                return ${toValueCast[property.propertyType]!""}${property.databaseValueExpressionNotNull};
+<#elseif !toValueCast[property.propertyType]?? && !property.customType?has_content && property.propertyType != "Boolean" && property.propertyType != "Date">
+            case ${property_index}:
+                return entity.get${property.propertyName?cap_first}();
+<#else>
+            case ${property_index}: {
+                ${property.javaTypeInEntity} ${property.propertyName} = entity.get${property.propertyName?cap_first}();
+                return ${property.propertyName} != null ? ${toValueCast[property.propertyType]!""}${property.databaseValueExpression} : null;
+            }
+</#if>
+</#list>
+            default:
+                return super.getPropertyValue(entity, ordinal);
+        }
+    }
+
+<#list entity.toOneRelations as toOne>
+<#if toOne.useFkProperty>
+    /** Resolves the "${toOne.name}" to-one relationship of all given entities using batched queries. */
+    public void resolve${toOne.name?cap_first}(List<${entity.className}> entities) {
+        resolveToOne(entities, Relations.${toOne.name?cap_first});
+    }
+
+</#if>
+</#list>
+<#list entity.toManyRelations as toMany>
+<#if (toMany.batchResolvable)!false>
+    /** Resolves the "${toMany.name}" to-many relationship of all given entities using batched queries. */
+    public void resolve${toMany.name?cap_first}(List<${entity.className}> entities) {
+        resolveToMany(entities, Relations.${toMany.name?cap_first});
+    }
+
+</#if>
+</#list>
 <#list entity.incomingToManyRelations as toMany>
     /** Internal query to resolve the "${toMany.name}" to-many relationship of ${toMany.sourceEntity.className}. */
     public List<${toMany.targetEntity.className}> _query${toMany.sourceEntity.className?cap_first}_${toMany.name?cap_first}(<#--
@@ -216,6 +216,23 @@ ${property.javaDocSetter}
         }
     }
 
+<#if toOne.useFkProperty>
+    /** Returns true if the to-one is resolved for the current ${toOne.fkProperties[0].propertyName}; called by internal mechanisms like batch resolving. */
+    public synchronized boolean __is${toOne.name?cap_first}Resolved() {
+        return ${toOne.name}__resolvedKey != null && <#--
+        --><#if toOne.resolvedKeyUseEquals[0]>${toOne.name}__resolvedKey.equals(${toOne.fkProperties[0].propertyName})<#--
+        --><#else>${toOne.name}__resolvedKey == ${toOne.fkProperties[0].propertyName}</#if>;
+    }
+
+    /** Sets the resolved to-one without changing ${toOne.fkProperties[0].propertyName}; called by internal mechanisms like deep loading. */
+    public void __set${toOne.name?cap_first}Resolved(${toOne.targetEntity.className} ${toOne.name}) {
+        synchronized (this) {
+            this.${toOne.name} = ${toOne.name};
+            ${toOne.name}__resolvedKey = ${toOne.fkProperties[0].propertyName};
+        }
+    }
+
+</#if>
 </#list>
 <#--
 ##########################################
@@ -247,6 +264,20 @@ ${property.javaDocSetter}
         ${toMany.name} = null;
     }
 
+<#if (toMany.batchResolvable)!false>
+    /** Returns true if the to-many relationship is resolved; called by internal mechanisms like batch resolving. */
+    public synchronized boolean __is${toMany.name?cap_first}Resolved() {
+        return ${toMany.name} != null;
+    }
+
+    /** Sets the resolved to-many list unless it was resolved meanwhile; called by internal mechanisms like batch resolving. */
+    public synchronized void __set${toMany.name?cap_first}Resolved(List<${toMany.targetEntity.className}> ${toMany.name}) {
+        if (this.${toMany.name} == null) {
+            this.${toMany.name} = ${toMany.name};
+        }
+    }
+
+</#if>
 </#list>
 <#--
 ##########################################
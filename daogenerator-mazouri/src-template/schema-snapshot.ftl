@@ -0,0 +1,32 @@
+<#--
+
+Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)     
+                                                                           
+This file is part of greenDAO Generator.                                   
+                                                                           
+greenDAO Generator is free software: you can redistribute it and/or modify 
+it under the terms of the GNU General Public License as published by       
+the Free Software Foundation, either version 3 of the License, or          
+(at your option) any later version.                                        
+greenDAO Generator is distributed in the hope that it will be useful,      
+but WITHOUT ANY WARRANTY; without even the implied warranty of             
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              
+GNU General Public License for more details.                               
+                                                                           
+You should have received a copy of the GNU General Public License          
+along with greenDAO Generator.  If not, see <http://www.gnu.org/licenses/>.
+
+-->
+-- THIS FILE IS GENERATED BY greenDAO, DO NOT EDIT.
+-- Empty database of schema version ${schema.version?c}, see DaoMaster.installSchemaSnapshot.
+BEGIN TRANSACTION;
+<#list schema.entities as entity>
+<#if !entity.skipTableCreation>
+CREATE TABLE "${entity.tableName}" (${entity.columnDefinitions});
+<#list entity.indexes as index>
+${entity.getIndexSql(index, false)};
+</#list>
+</#if>
+</#list>
+PRAGMA user_version=${schema.version?c};
+COMMIT;
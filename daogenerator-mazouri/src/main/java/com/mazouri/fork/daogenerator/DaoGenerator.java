@@ -3,7 +3,12 @@ package com.mazouri.fork.daogenerator;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +37,11 @@ public class DaoGenerator {
     private Template templateEntity;
     private Template templateDaoUnitTest;
     private Template templateContentProvider;
+    private Template templateSchemaSnapshot;
+
+    private File schemaSnapshotDir;
+    private String sqlite3Executable;
+    private List<Schema> previousSchemas = Collections.emptyList();
 
     public DaoGenerator() throws IOException {
         System.out.println("greenDAO Generator");
@@ -51,6 +61,22 @@ public class DaoGenerator {
         templateEntity = config.getTemplate("entity.ftl");
         templateDaoUnitTest = config.getTemplate("dao-unit-test.ftl");
         templateContentProvider = config.getTemplate("content-provider.ftl");
+        templateSchemaSnapshot = config.getTemplate("schema-snapshot.ftl");
+    }
+
+    /**
+     * Lets {@link #generateAll(Schema, String, String, String)} also write a schema snapshot into the given directory
+     * (typically the app's assets): "schema-v&lt;version&gt;.sql" creating all tables and indexes in one transaction.
+     * If the path of a sqlite3 command line shell is given, it also builds the empty database
+     * "schema-v&lt;version&gt;.db" from it, which the generated DaoMaster.installSchemaSnapshot copies into place on
+     * first run instead of executing DDL.
+     *
+     * @param outDir The output directory or null to generate no snapshot.
+     * @param sqlite3Executable Path of sqlite3 (may be null to write the SQL script only).
+     */
+    public void setSchemaSnapshot(String outDir, String sqlite3Executable) throws IOException {
+        schemaSnapshotDir = outDir != null ? toFileForceExists(outDir) : null;
+        this.sqlite3Executable = sqlite3Executable;
     }
 
     private Pattern compilePattern(String sectionName) {
@@ -59,6 +85,24 @@ public class DaoGenerator {
                 + " END.*?\n", flags);
     }
 
+    /**
+     * Lets {@link #generateAll(Schema, String, String, String)} generate DaoMaster.migrate and
+     * DaoMaster.MigrationOpenHelper, which upgrade a database of any of the given schema versions to the generated
+     * version while keeping all rows. Migration steps are computed by comparing each version to the next (see
+     * {@link SchemaMigration}). Pass the definitions of all schema versions released before, each as a separate
+     * {@link Schema} instance.
+     */
+    public void setPreviousSchemas(Schema... schemas) {
+        List<Schema> list = new ArrayList<Schema>(Arrays.asList(schemas));
+        Collections.sort(list, new Comparator<Schema>() {
+            @Override
+            public int compare(Schema lhs, Schema rhs) {
+                return lhs.getVersion() < rhs.getVersion() ? -1 : (lhs.getVersion() == rhs.getVersion() ? 0 : 1);
+            }
+        });
+        previousSchemas = list;
+    }
+
     /** Generates all entities and DAOs for the given schema. */
     public void generateAll(Schema schema, String outDir) throws Exception {
         generateAll(schema, outDir, null, null);
@@ -100,13 +144,76 @@ public class DaoGenerator {
                         + "ContentProvider", schema, entity, additionalObjectsForTemplate);
             }
         }
-        generate(templateDaoMaster, outDirFile, schema.getDefaultJavaPackageDao(), "DaoMaster", schema, null);
+        Map<String, Object> additionalObjectsForMaster = new HashMap<String, Object>();
+        additionalObjectsForMaster.put("migrations", computeMigrations(schema));
+        generate(templateDaoMaster, outDirFile, schema.getDefaultJavaPackageDao(), "DaoMaster", schema, null,
+                additionalObjectsForMaster);
         generate(templateDaoSession, outDirFile, schema.getDefaultJavaPackageDao(), "DaoSession", schema, null);
+        if (schemaSnapshotDir != null) {
+            generateSchemaSnapshot(schema);
+        }
 
         long time = System.currentTimeMillis() - start;
         System.out.println("Processed " + entities.size() + " entities in " + time + "ms");
     }
 
+    private List<SchemaMigration> computeMigrations(Schema schema) {
+        List<SchemaMigration> migrations = new ArrayList<SchemaMigration>();
+        for (int i = 0; i < previousSchemas.size(); i++) {
+            Schema from = previousSchemas.get(i);
+            Schema to = i + 1 < previousSchemas.size() ? previousSchemas.get(i + 1) : schema;
+            if (i == 0) {
+                from.init2ndPass();
+                from.init3rdPass();
+            }
+            if (to != schema) {
+                to.init2ndPass();
+                to.init3rdPass();
+            }
+            SchemaMigration migration = SchemaMigration.diff(from, to);
+            System.out.println("Migration from schema version " + migration.getFromVersion() + " to "
+                    + migration.getToVersion() + ": " + migration.getSteps().size() + " steps");
+            migrations.add(migration);
+        }
+        return migrations;
+    }
+
+    private void generateSchemaSnapshot(Schema schema) throws Exception {
+        String name = "schema-v" + schema.getVersion();
+        File sqlFile = new File(schemaSnapshotDir, name + ".sql");
+        Map<String, Object> root = new HashMap<String, Object>();
+        root.put("schema", schema);
+        Writer writer = new FileWriter(sqlFile);
+        try {
+            templateSchemaSnapshot.process(root, writer);
+            writer.flush();
+            System.out.println("Written " + sqlFile.getCanonicalPath());
+        } finally {
+            writer.close();
+        }
+
+        if (sqlite3Executable != null) {
+            File dbFile = new File(schemaSnapshotDir, name + ".db");
+            if (dbFile.exists() && !dbFile.delete()) {
+                throw new IOException("Could not delete " + dbFile.getCanonicalPath());
+            }
+            Process process = new ProcessBuilder(sqlite3Executable, "-bail", dbFile.getCanonicalPath(),
+                    ".read '" + sqlFile.getCanonicalPath().replace("'", "''") + "'").redirectErrorStream(true).start();
+            InputStream in = process.getInputStream();
+            String output;
+            try {
+                output = new String(DaoUtil.readAllBytes(in), "UTF-8").trim();
+            } finally {
+                in.close();
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || !dbFile.exists()) {
+                throw new IOException("Building " + dbFile.getCanonicalPath() + " failed (" + exitCode + "): " + output);
+            }
+            System.out.println("Written " + dbFile.getCanonicalPath());
+        }
+    }
+
     protected File toFileForceExists(String filename) throws IOException {
         File file = new File(filename);
         if (!file.exists()) {
@@ -339,6 +339,16 @@ public class Entity {
         return indexes;
     }
 
+    /** Internal property used by templates: the column definitions of CREATE TABLE, see {@link SchemaMigration}. */
+    public String getColumnDefinitions() {
+        return SchemaMigration.columnDefinitions(this);
+    }
+
+    /** Internal method used by templates: the CREATE INDEX statement of the given index of this entity. */
+    public String getIndexSql(Index index, boolean ifNotExists) {
+        return SchemaMigration.indexSql(this, index, ifNotExists);
+    }
+
     /** Internal property used by templates, don't use during entity definition. */
     public String getPkType() {
         return pkType;
@@ -625,6 +635,15 @@ public class Entity {
         for (ToManyBase toMany : toManyRelations) {
             Entity targetEntity = toMany.getTargetEntity();
             checkAdditionalImportsEntityTargetEntity(targetEntity);
+            // For the relation meta model
+            if (toMany instanceof ToMany && ((ToMany) toMany).isBatchResolvable()) {
+                if (!targetEntity.getJavaPackage().equals(javaPackageDao)) {
+                    additionalImportsDao.add(targetEntity.getJavaPackage() + "." + targetEntity.getClassName());
+                }
+                if (!targetEntity.getJavaPackageDao().equals(javaPackageDao)) {
+                    additionalImportsDao.add(targetEntity.getJavaPackageDao() + "." + targetEntity.getClassNameDao());
+                }
+            }
         }
 
         for (Property property : properties) {
@@ -226,6 +226,11 @@ public class Property {
         return constraints;
     }
 
+    /** Internal property used by templates: the column definition of CREATE TABLE, see {@link SchemaMigration}. */
+    public String getColumnDefinition() {
+        return SchemaMigration.columnDefinition(this);
+    }
+
     public boolean isUnique() {
         return unique;
     }
@@ -0,0 +1,286 @@
+package com.mazouri.fork.daogenerator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The steps migrating the tables of one schema version to the next, computed by comparing the two {@link Schema}s.
+ * Columns are added using ALTER TABLE ADD COLUMN and indexes are dropped and created individually; a table is rebuilt
+ * (by the runtime's SchemaMigrator) only if a column was removed or changed or a primary key or unique column was added,
+ * which SQLite cannot do in place. Tables are matched by name, so renaming an entity's table drops the old table.
+ *
+ * 比较两个Schema版本，生成最小的迁移步骤
+ */
+public class SchemaMigration {
+
+    /** Internal class used by templates. */
+    public static class Step {
+        private final String description;
+        private final String sql;
+        private final String tableName;
+        private final String columnDefinitions;
+        private final String targetColumns;
+        private final String sourceExpressions;
+
+        Step(String description, String sql) {
+            this.description = description;
+            this.sql = sql;
+            tableName = null;
+            columnDefinitions = null;
+            targetColumns = null;
+            sourceExpressions = null;
+        }
+
+        Step(String tableName, String columnDefinitions, String targetColumns, String sourceExpressions) {
+            this.description = "Rebuild table " + tableName;
+            this.sql = null;
+            this.tableName = tableName;
+            this.columnDefinitions = columnDefinitions;
+            this.targetColumns = targetColumns;
+            this.sourceExpressions = sourceExpressions;
+        }
+
+        public boolean isRebuild() {
+            return tableName != null;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getColumnDefinitions() {
+            return columnDefinitions;
+        }
+
+        public String getTargetColumns() {
+            return targetColumns;
+        }
+
+        public String getSourceExpressions() {
+            return sourceExpressions;
+        }
+
+        @Override
+        public String toString() {
+            return isRebuild() ? description : description + ": " + sql;
+        }
+    }
+
+    private final int fromVersion;
+    private final int toVersion;
+    private final List<Step> steps;
+
+    private SchemaMigration(int fromVersion, int toVersion) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        steps = new ArrayList<Step>();
+    }
+
+    public int getFromVersion() {
+        return fromVersion;
+    }
+
+    public int getToVersion() {
+        return toVersion;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /** Computes the migration between two schemas; both must have been initialized by the generator. */
+    static SchemaMigration diff(Schema from, Schema to) {
+        if (from.getVersion() >= to.getVersion()) {
+            throw new RuntimeException("Cannot migrate from schema version " + from.getVersion() + " to "
+                    + to.getVersion());
+        }
+        SchemaMigration migration = new SchemaMigration(from.getVersion(), to.getVersion());
+        Map<String, Entity> oldTables = tablesByName(from);
+        Map<String, Entity> newTables = tablesByName(to);
+        for (String tableName : oldTables.keySet()) {
+            if (!newTables.containsKey(tableName)) {
+                migration.addSql("Drop table " + tableName, "DROP TABLE IF EXISTS \"" + tableName + "\"");
+            }
+        }
+        for (Entity entity : newTables.values()) {
+            Entity oldEntity = oldTables.get(entity.getTableName());
+            if (oldEntity == null) {
+                migration.addSql("Create table " + entity.getTableName(), "CREATE TABLE \"" + entity.getTableName()
+                        + "\" (" + columnDefinitions(entity) + ")");
+                for (Index index : entity.getIndexes()) {
+                    migration.addSql("Create index " + index.getName(), indexSql(entity, index, false));
+                }
+            } else {
+                migration.diffTable(oldEntity, entity);
+            }
+        }
+        return migration;
+    }
+
+    private void diffTable(Entity oldEntity, Entity entity) {
+        String tableName = entity.getTableName();
+        Map<String, Property> oldColumns = columnsByName(oldEntity);
+        Map<String, Property> newColumns = columnsByName(entity);
+        boolean rebuild = false;
+        for (Map.Entry<String, Property> entry : oldColumns.entrySet()) {
+            Property property = newColumns.get(entry.getKey());
+            if (property == null || !columnDefinition(property).equals(columnDefinition(entry.getValue()))) {
+                rebuild = true;
+            }
+        }
+        List<Property> addedColumns = new ArrayList<Property>();
+        for (Property property : entity.getPropertiesColumns()) {
+            if (!oldColumns.containsKey(property.getColumnName())) {
+                if (property.isPrimaryKey() || property.isUnique()) {
+                    rebuild = true;
+                }
+                addedColumns.add(property);
+            }
+        }
+
+        Map<String, String> oldIndexes = indexesByName(oldEntity);
+        Map<String, String> newIndexes = indexesByName(entity);
+        if (rebuild) {
+            StringBuilder targetColumns = new StringBuilder();
+            StringBuilder sourceExpressions = new StringBuilder();
+            for (Property property : entity.getPropertiesColumns()) {
+                Property oldProperty = oldColumns.get(property.getColumnName());
+                String column = '"' + property.getColumnName() + '"';
+                String expression;
+                if (oldProperty == null) {
+                    if (!property.isNotNull() || property.isPrimaryKey()) {
+                        continue;
+                    }
+                    expression = defaultValue(property);
+                } else if (property.isNotNull() && !oldProperty.isNotNull()) {
+                    expression = "IFNULL(" + column + "," + defaultValue(property) + ")";
+                } else {
+                    expression = column;
+                }
+                if (targetColumns.length() > 0) {
+                    targetColumns.append(',');
+                    sourceExpressions.append(',');
+                }
+                targetColumns.append(column);
+                sourceExpressions.append(expression);
+            }
+            steps.add(new Step(tableName, columnDefinitions(entity), targetColumns.toString(),
+                    sourceExpressions.toString()));
+            // The rebuild dropped all indexes of the old table
+            for (Map.Entry<String, String> entry : newIndexes.entrySet()) {
+                addSql("Create index " + entry.getKey(), entry.getValue());
+            }
+        } else {
+            for (Property property : addedColumns) {
+                String sql = "ALTER TABLE \"" + tableName + "\" ADD COLUMN " + columnDefinition(property);
+                if (property.isNotNull()) {
+                    sql += " DEFAULT " + defaultValue(property);
+                }
+                addSql("Add column " + tableName + "." + property.getColumnName(), sql);
+            }
+            for (Map.Entry<String, String> entry : oldIndexes.entrySet()) {
+                if (!entry.getValue().equals(newIndexes.get(entry.getKey()))) {
+                    addSql("Drop index " + entry.getKey(), "DROP INDEX IF EXISTS " + entry.getKey());
+                }
+            }
+            for (Map.Entry<String, String> entry : newIndexes.entrySet()) {
+                if (!entry.getValue().equals(oldIndexes.get(entry.getKey()))) {
+                    addSql("Create index " + entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void addSql(String description, String sql) {
+        steps.add(new Step(description, sql));
+    }
+
+    private static Map<String, Entity> tablesByName(Schema schema) {
+        Map<String, Entity> tables = new LinkedHashMap<String, Entity>();
+        for (Entity entity : schema.getEntities()) {
+            if (!entity.isSkipTableCreation()) {
+                tables.put(entity.getTableName(), entity);
+            }
+        }
+        return tables;
+    }
+
+    private static Map<String, Property> columnsByName(Entity entity) {
+        Map<String, Property> columns = new LinkedHashMap<String, Property>();
+        for (Property property : entity.getPropertiesColumns()) {
+            columns.put(property.getColumnName(), property);
+        }
+        return columns;
+    }
+
+    private static Map<String, String> indexesByName(Entity entity) {
+        Map<String, String> indexes = new LinkedHashMap<String, String>();
+        for (Index index : entity.getIndexes()) {
+            indexes.put(index.getName(), indexSql(entity, index, false));
+        }
+        return indexes;
+    }
+
+    /**
+     * The column definitions of the table, as in the generated createTable and the schema snapshot (see
+     * {@link Entity#getColumnDefinitions()}).
+     */
+    static String columnDefinitions(Entity entity) {
+        StringBuilder builder = new StringBuilder();
+        for (Property property : entity.getPropertiesColumns()) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(columnDefinition(property));
+        }
+        return builder.toString();
+    }
+
+    static String columnDefinition(Property property) {
+        String definition = '"' + property.getColumnName() + "\" " + property.getColumnType();
+        return property.getConstraints() != null ? definition + " " + property.getConstraints() : definition;
+    }
+
+    /** The index statement, as in the generated createTable and the schema snapshot. */
+    static String indexSql(Entity entity, Index index, boolean ifNotExists) {
+        StringBuilder builder = new StringBuilder("CREATE ");
+        if (index.isUnique()) {
+            builder.append("UNIQUE ");
+        }
+        builder.append("INDEX ");
+        if (ifNotExists) {
+            builder.append("IF NOT EXISTS ");
+        }
+        builder.append(index.getName()).append(" ON ").append(entity.getTableName()).append(" (");
+        List<Property> properties = index.getProperties();
+        for (int i = 0; i < properties.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('"').append(properties.get(i).getColumnName()).append('"');
+        }
+        return builder.append(')').toString();
+    }
+
+    /** The value for rows existing before a NOT NULL column was added. */
+    private static String defaultValue(Property property) {
+        String type = property.getColumnType();
+        if ("TEXT".equals(type)) {
+            return "''";
+        } else if ("BLOB".equals(type)) {
+            return "X''";
+        } else {
+            return "0";
+        }
+    }
+}
@@ -31,6 +31,16 @@ public class ToMany extends ToManyBase {
         return targetProperties;
     }
 
+    /**
+     * True if the relation matches a single source property with a single target property, both being regular entity
+     * properties. Such relations are modelled in the generated DAO and can be resolved for lists of entities at once.
+     */
+    public boolean isBatchResolvable() {
+        return sourceProperties.length == 1 && targetProperties.length == 1
+                && sourceEntity.getProperties().contains(sourceProperties[0])
+                && targetEntity.getProperties().contains(targetProperties[0]);
+    }
+
     void init2ndPass() {
         super.init2ndPass();
         if (sourceProperties == null) {
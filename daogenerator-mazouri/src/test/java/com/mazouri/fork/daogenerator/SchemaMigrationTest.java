@@ -0,0 +1,171 @@
+package com.mazouri.fork.daogenerator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SchemaMigrationTest {
+
+    @Test
+    public void addsColumns() {
+        Schema from = new Schema(1, "test");
+        addNote(from);
+        Schema to = new Schema(2, "test");
+        Entity note = addNote(to);
+        note.addStringProperty("title").notNull();
+        note.addByteArrayProperty("image").notNull();
+        note.addLongProperty("size");
+
+        SchemaMigration migration = diff(from, to);
+        assertEquals(1, migration.getFromVersion());
+        assertEquals(2, migration.getToVersion());
+        assertEquals(sqls(
+                "ALTER TABLE \"NOTE\" ADD COLUMN \"TITLE\" TEXT NOT NULL DEFAULT ''",
+                "ALTER TABLE \"NOTE\" ADD COLUMN \"IMAGE\" BLOB NOT NULL DEFAULT X''",
+                "ALTER TABLE \"NOTE\" ADD COLUMN \"SIZE\" INTEGER"), sqlsOf(migration));
+    }
+
+    @Test
+    public void changesIndexesInPlace() {
+        Schema from = new Schema(1, "test");
+        Entity oldNote = addNote(from);
+        oldNote.addIntProperty("rank").index();
+        oldNote.addIntProperty("priority");
+        Schema to = new Schema(2, "test");
+        Entity note = addNote(to);
+        note.addIntProperty("rank");
+        note.addIntProperty("priority").index();
+
+        assertEquals(sqls(
+                "DROP INDEX IF EXISTS IDX_NOTE_RANK",
+                "CREATE INDEX IDX_NOTE_PRIORITY ON NOTE (\"PRIORITY\")"), sqlsOf(diff(from, to)));
+    }
+
+    @Test
+    public void rebuildsForRemovedColumns() {
+        Schema from = new Schema(1, "test");
+        Entity oldNote = addNote(from);
+        oldNote.addStringProperty("obsolete");
+        oldNote.addIntProperty("rank").index();
+        Schema to = new Schema(2, "test");
+        Entity note = addNote(to);
+        note.addIntProperty("rank").index();
+
+        List<SchemaMigration.Step> steps = diff(from, to).getSteps();
+        assertEquals(2, steps.size());
+        SchemaMigration.Step rebuild = steps.get(0);
+        assertTrue(rebuild.isRebuild());
+        assertEquals("NOTE", rebuild.getTableName());
+        assertEquals("\"_id\" INTEGER PRIMARY KEY,\"TEXT\" TEXT,\"RANK\" INTEGER", rebuild.getColumnDefinitions());
+        assertEquals("\"_id\",\"TEXT\",\"RANK\"", rebuild.getTargetColumns());
+        assertEquals("\"_id\",\"TEXT\",\"RANK\"", rebuild.getSourceExpressions());
+        // The rebuild dropped the old indexes
+        assertEquals("CREATE INDEX IDX_NOTE_RANK ON NOTE (\"RANK\")", steps.get(1).getSql());
+    }
+
+    @Test
+    public void rebuildsForNotNullConstraints() {
+        Schema from = new Schema(1, "test");
+        addNote(from);
+        Schema to = new Schema(2, "test");
+        Entity note = to.addEntity("Note");
+        note.addIdProperty();
+        note.addStringProperty("text").notNull();
+        note.addStringProperty("code").unique();
+        note.addIntProperty("rank").notNull();
+
+        List<SchemaMigration.Step> steps = diff(from, to).getSteps();
+        assertEquals(1, steps.size());
+        SchemaMigration.Step rebuild = steps.get(0);
+        assertTrue(rebuild.isRebuild());
+        assertEquals("\"_id\",\"TEXT\",\"RANK\"", rebuild.getTargetColumns());
+        assertEquals("\"_id\",IFNULL(\"TEXT\",''),0", rebuild.getSourceExpressions());
+    }
+
+    @Test
+    public void createsAndDropsTables() {
+        Schema from = new Schema(1, "test");
+        addNote(from);
+        from.addEntity("Obsolete").addIdProperty();
+        Schema to = new Schema(2, "test");
+        addNote(to);
+        Entity tag = to.addEntity("Tag");
+        tag.addIdProperty();
+        tag.addStringProperty("name").notNull().index();
+
+        assertEquals(sqls(
+                "DROP TABLE IF EXISTS \"OBSOLETE\"",
+                "CREATE TABLE \"TAG\" (\"_id\" INTEGER PRIMARY KEY,\"NAME\" TEXT NOT NULL)",
+                "CREATE INDEX IDX_TAG_NAME ON TAG (\"NAME\")"), sqlsOf(diff(from, to)));
+    }
+
+    @Test
+    public void unchangedSchemaHasNoSteps() {
+        Schema from = new Schema(1, "test");
+        addNote(from).addIntProperty("rank").index();
+        Schema to = new Schema(2, "test");
+        addNote(to).addIntProperty("rank").index();
+
+        assertTrue(diff(from, to).getSteps().isEmpty());
+    }
+
+    @Test
+    public void exposesDdlToTemplates() {
+        Schema schema = new Schema(1, "test");
+        Entity note = addNote(schema);
+        note.addIntProperty("rank").notNull().index();
+        schema.init2ndPass();
+        schema.init3rdPass();
+
+        assertEquals("\"_id\" INTEGER PRIMARY KEY,\"TEXT\" TEXT,\"RANK\" INTEGER NOT NULL",
+                note.getColumnDefinitions());
+        assertEquals("\"RANK\" INTEGER NOT NULL", note.getPropertiesColumns().get(2).getColumnDefinition());
+        Index index = note.getIndexes().get(0);
+        assertEquals("CREATE INDEX IDX_NOTE_RANK ON NOTE (\"RANK\")", note.getIndexSql(index, false));
+        assertEquals("CREATE INDEX IF NOT EXISTS IDX_NOTE_RANK ON NOTE (\"RANK\")", note.getIndexSql(index, true));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rejectsDowngrade() {
+        Schema from = new Schema(2, "test");
+        addNote(from);
+        Schema to = new Schema(1, "test");
+        addNote(to);
+        diff(from, to);
+    }
+
+    private static Entity addNote(Schema schema) {
+        Entity note = schema.addEntity("Note");
+        note.addIdProperty();
+        note.addStringProperty("text");
+        return note;
+    }
+
+    private static SchemaMigration diff(Schema from, Schema to) {
+        from.init2ndPass();
+        from.init3rdPass();
+        to.init2ndPass();
+        to.init3rdPass();
+        return SchemaMigration.diff(from, to);
+    }
+
+    private static List<String> sqls(String... sqls) {
+        List<String> list = new ArrayList<String>();
+        for (String sql : sqls) {
+            list.add(sql);
+        }
+        return list;
+    }
+
+    private static List<String> sqlsOf(SchemaMigration migration) {
+        List<String> sqls = new ArrayList<String>();
+        for (SchemaMigration.Step step : migration.getSteps()) {
+            assertFalse(step.isRebuild());
+            sqls.add(step.getSql());
+        }
+        return sqls;
+    }
+}
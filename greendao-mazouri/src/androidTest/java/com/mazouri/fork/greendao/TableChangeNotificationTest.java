@@ -0,0 +1,121 @@
+package com.mazouri.fork.greendao;
+
+import com.mazouri.fork.greendao.query.TestEntity;
+import com.mazouri.fork.greendao.query.TestEntityDao;
+import com.mazouri.fork.greendao.test.DbTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks when {@link EntityChangeListener}s are told about writes inside transactions: once after a commit, never
+ * after a rollback, and late (but not lost) for transactions begun directly on the database.
+ */
+public class TableChangeNotificationTest extends DbTest {
+
+    private TestEntityDao.Session session;
+    private TestEntityDao dao;
+    private final List<TableChanges> notifications = new ArrayList<TableChanges>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestEntityDao.createTable(db, false);
+        session = new TestEntityDao.Session(db);
+        dao = session.getTestEntityDao();
+        session.addEntityChangeListener(new EntityChangeListener() {
+            @Override
+            public void onEntitiesChanged(TableChanges changes) {
+                notifications.add(changes);
+            }
+        });
+    }
+
+    public void testCommitNotifiesOnceAfterTransaction() {
+        session.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                dao.insert(new TestEntity(1L, "first", 1));
+                dao.insert(new TestEntity(2L, "second", 2));
+                assertTrue(notifications.isEmpty());
+            }
+        });
+        assertEquals(1, notifications.size());
+        TableChanges changes = notifications.get(0);
+        assertTrue(changes.contains(TestEntityDao.TABLENAME));
+        assertEquals(2, changes.getKeys(TestEntityDao.TABLENAME).size());
+    }
+
+    public void testNestedCommitNotifiesAfterOuterTransaction() {
+        session.beginTransaction();
+        try {
+            session.runInTx(new Runnable() {
+                @Override
+                public void run() {
+                    dao.insert(new TestEntity(1L, "inner", 1));
+                }
+            });
+            assertTrue(notifications.isEmpty());
+            dao.insert(new TestEntity(2L, "outer", 2));
+            db.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
+        assertEquals(1, notifications.size());
+        assertEquals(2, notifications.get(0).getKeys(TestEntityDao.TABLENAME).size());
+    }
+
+    public void testRollbackDoesNotNotify() {
+        session.beginTransaction();
+        try {
+            dao.insert(new TestEntity(1L, "rolled back", 1));
+        } finally {
+            session.endTransaction();
+        }
+        assertEquals(0, dao.count());
+        assertTrue(notifications.isEmpty());
+
+        dao.insert(new TestEntity(2L, "outside", 2));
+        assertEquals(1, notifications.size());
+        assertEquals(Collections.<Object>singleton(2L), notifications.get(0).getKeys(TestEntityDao.TABLENAME));
+    }
+
+    public void testRawTransactionIsAnnouncedOnNextWrite() {
+        db.beginTransaction();
+        try {
+            dao.insert(new TestEntity(1L, "raw", 1));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        assertEquals(1, dao.count());
+        assertTrue(notifications.isEmpty());
+
+        dao.insert(new TestEntity(2L, "next", 2));
+        assertEquals(2, notifications.size());
+        assertEquals(Collections.<Object>singleton(1L), notifications.get(0).getKeys(TestEntityDao.TABLENAME));
+        assertEquals(Collections.<Object>singleton(2L), notifications.get(1).getKeys(TestEntityDao.TABLENAME));
+    }
+
+    public void testRawRollbackIsAnnouncedOnNextSessionTransaction() {
+        db.beginTransaction();
+        try {
+            dao.insert(new TestEntity(1L, "raw", 1));
+        } finally {
+            db.endTransaction();
+        }
+        assertEquals(0, dao.count());
+        assertTrue(notifications.isEmpty());
+
+        session.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                // The outcome of the raw transaction is unknown, so its changes are announced anyway
+                assertEquals(1, notifications.size());
+            }
+        });
+        assertEquals(1, notifications.size());
+        assertTrue(notifications.get(0).contains(TestEntityDao.TABLENAME));
+    }
+}
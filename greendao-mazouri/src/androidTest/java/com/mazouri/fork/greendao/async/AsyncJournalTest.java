@@ -0,0 +1,202 @@
+package com.mazouri.fork.greendao.async;
+
+import com.mazouri.fork.greendao.query.TestEntity;
+import com.mazouri.fork.greendao.query.TestEntityDao;
+import com.mazouri.fork.greendao.test.DbTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simulates process deaths by closing the {@link AsyncJournal} without completing its operations, then checks what
+ * opening it again replays.
+ */
+public class AsyncJournalTest extends DbTest {
+
+    private TestEntityDao.Session session;
+    private TestEntityDao dao;
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestEntityDao.createTable(db, false);
+        session = new TestEntityDao.Session(db);
+        dao = session.getTestEntityDao();
+        file = new File(getContext().getCacheDir(), "async-journal-test");
+        deleteSegments();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteSegments();
+        super.tearDown();
+    }
+
+    public void testReplaySkipsAppliedOperations() {
+        AsyncJournal journal = AsyncJournal.openAndReplay(file, session);
+        AsyncOperation applied = append(journal, "applied");
+        append(journal, "pending");
+        // Executed like the writer lane does, but the process dies before the operation completed
+        session.beginTransaction();
+        try {
+            dao.insert((TestEntity) applied.parameter);
+            assertTrue(journal.markApplied(db, Collections.singletonList(applied)));
+            db.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
+        journal.close();
+
+        AsyncJournal.openAndReplay(file, session).close();
+        assertEquals(names("applied", "pending"), loadNames());
+
+        // Replaying again finds nothing
+        AsyncJournal.openAndReplay(file, session).close();
+        assertEquals(names("applied", "pending"), loadNames());
+    }
+
+    public void testDiscardedOperationIsNotReplayed() {
+        AsyncJournal journal = AsyncJournal.openAndReplay(file, session);
+        AsyncOperation canceled = append(journal, "canceled");
+        append(journal, "pending");
+        journal.onCompleted(canceled);
+        journal.close();
+
+        AsyncJournal.openAndReplay(file, session).close();
+        assertEquals(names("pending"), loadNames());
+    }
+
+    public void testCorruptTailIsIgnored() throws IOException {
+        AsyncJournal journal = AsyncJournal.openAndReplay(file, session);
+        append(journal, "complete");
+        append(journal, "torn");
+        journal.close();
+        // Flip a byte in the payload of the second record, so its CRC does not match
+        int offset = secondRecordOffset();
+        RandomAccessFile segment = new RandomAccessFile(singleSegment(), "rw");
+        try {
+            segment.seek(offset + 8 + 12);
+            int value = segment.read();
+            segment.seek(offset + 8 + 12);
+            segment.write(value ^ 0xff);
+        } finally {
+            segment.close();
+        }
+
+        checkReplaysCompleteAndKeepsWorking();
+    }
+
+    public void testUnfinishedTailIsIgnored() throws IOException {
+        AsyncJournal journal = AsyncJournal.openAndReplay(file, session);
+        append(journal, "complete");
+        append(journal, "torn");
+        journal.close();
+        // The length is written last: the process died before writing it
+        int offset = secondRecordOffset();
+        RandomAccessFile segment = new RandomAccessFile(singleSegment(), "rw");
+        try {
+            segment.seek(offset);
+            segment.writeInt(0);
+        } finally {
+            segment.close();
+        }
+
+        checkReplaysCompleteAndKeepsWorking();
+    }
+
+    public void testCompletedSegmentsAreDeleted() {
+        AsyncJournal journal = AsyncJournal.openAndReplay(file, session);
+        char[] chars = new char[16 * 1024];
+        java.util.Arrays.fill(chars, 'x');
+        String padding = new String(chars);
+        AsyncOperation first = append(journal, "first" + padding);
+        for (int i = 0; i < 100; i++) {
+            AsyncOperation operation = append(journal, "op" + i + padding);
+            operation.startedNanos = 1;
+            journal.onCompleted(operation);
+        }
+        // The segment of the first operation is kept, the active one, too
+        assertEquals(2, segmentFiles().size());
+
+        first.startedNanos = 1;
+        journal.onCompleted(first);
+        assertEquals(1, segmentFiles().size());
+        journal.close();
+
+        AsyncJournal.openAndReplay(file, session).close();
+        assertEquals(0, dao.count());
+    }
+
+    private void checkReplaysCompleteAndKeepsWorking() {
+        AsyncJournal journal = AsyncJournal.openAndReplay(file, session);
+        assertEquals(names("complete"), loadNames());
+        append(journal, "after");
+        journal.close();
+
+        AsyncJournal.openAndReplay(file, session).close();
+        assertEquals(names("after", "complete"), loadNames());
+    }
+
+    private AsyncOperation append(AsyncJournal journal, String name) {
+        AsyncOperation operation = new AsyncOperation(AsyncOperation.OperationType.Insert, dao, null,
+                new TestEntity(null, name, 1), 0);
+        operation.journalSequence = journal.append(operation);
+        assertTrue(operation.journalSequence != 0);
+        return operation;
+    }
+
+    /** Offset of the second record in the single segment: after the header and the first record. */
+    private int secondRecordOffset() throws IOException {
+        RandomAccessFile segment = new RandomAccessFile(singleSegment(), "r");
+        try {
+            segment.seek(8);
+            return 8 + 8 + segment.readInt();
+        } finally {
+            segment.close();
+        }
+    }
+
+    private File singleSegment() {
+        List<File> files = segmentFiles();
+        assertEquals(1, files.size());
+        return files.get(0);
+    }
+
+    private List<File> segmentFiles() {
+        List<File> files = new ArrayList<File>();
+        File[] candidates = file.getParentFile().listFiles();
+        if (candidates != null) {
+            for (File candidate : candidates) {
+                if (candidate.getName().startsWith(file.getName() + ".")) {
+                    files.add(candidate);
+                }
+            }
+        }
+        return files;
+    }
+
+    private void deleteSegments() {
+        for (File segment : segmentFiles()) {
+            assertTrue(segment.delete());
+        }
+    }
+
+    private List<String> loadNames() {
+        List<String> names = new ArrayList<String>();
+        for (TestEntity entity : dao.queryBuilder().orderAsc(TestEntityDao.Properties.Name).list()) {
+            names.add(entity.getName());
+        }
+        return names;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, names);
+        return list;
+    }
+}
@@ -0,0 +1,123 @@
+package com.mazouri.fork.greendao.async;
+
+import android.database.sqlite.SQLiteConstraintException;
+
+import com.mazouri.fork.greendao.query.TestEntity;
+import com.mazouri.fork.greendao.query.TestEntityDao;
+import com.mazouri.fork.greendao.test.DbTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Checks that a failing operation of a merged transaction is rolled back to its savepoint while the other operations
+ * commit. This relies on the ROLLBACK TO statement not being mistaken for a rollback of the whole transaction by
+ * Android, which would make the executor fall back to executing all operations one by one.
+ */
+public class AsyncMergedSavepointTest extends DbTest {
+
+    private static final long EXISTING_ID = 100;
+
+    private TestEntityDao dao;
+    private AsyncSession asyncSession;
+    private final List<Runnable> writerTasks = new ArrayList<Runnable>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestEntityDao.createTable(db, false);
+        TestEntityDao.Session session = new TestEntityDao.Session(db);
+        dao = session.getTestEntityDao();
+        dao.insert(new TestEntity(EXISTING_ID, "existing", 0));
+        // Holds back the writer lane until all operations are queued, so they are merged into one transaction
+        asyncSession = new AsyncSession(session, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                writerTasks.add(command);
+            }
+        });
+        asyncSession.setWaitForMergeMillis(1000);
+        asyncSession.setMaxOperationCountToMerge(50);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        asyncSession.shutdown();
+        super.tearDown();
+    }
+
+    /** Inserts are coalesced to a bulk insert, which fails and is retried one insert per savepoint. */
+    public void testFailedInsertOfCoalescedRun() {
+        List<AsyncOperation> operations = new ArrayList<AsyncOperation>();
+        operations.add(insert(null, "first"));
+        operations.add(insert(null, "second"));
+        AsyncOperation failing = insert(EXISTING_ID, "duplicate");
+        operations.add(failing);
+        operations.add(insert(null, "fourth"));
+        operations.add(insert(null, "fifth"));
+        runWriter();
+
+        checkOnlyFailed(failing, operations);
+        assertEquals(names("existing", "fifth", "first", "fourth", "second"), loadNames());
+    }
+
+    /** Operations of different types are each executed in their own savepoint. */
+    public void testFailedOperationBetweenOthers() {
+        List<AsyncOperation> operations = new ArrayList<AsyncOperation>();
+        TestEntity existing = dao.load(EXISTING_ID);
+        existing.setName("updated");
+        operations.add(asyncSession.update(existing, AsyncOperation.FLAG_MERGE_TX));
+        AsyncOperation failing = insert(EXISTING_ID, "duplicate");
+        operations.add(failing);
+        operations.add(asyncSession.deleteByKey(EXISTING_ID, AsyncOperation.FLAG_MERGE_TX));
+        operations.add(insert(null, "inserted"));
+        runWriter();
+
+        checkOnlyFailed(failing, operations);
+        assertEquals(names("inserted"), loadNames());
+    }
+
+    private AsyncOperation insert(Long id, String name) {
+        return asyncSession.insert(new TestEntity(id, name, 0), AsyncOperation.FLAG_MERGE_TX);
+    }
+
+    private void runWriter() {
+        assertEquals(1, writerTasks.size());
+        Thread writer = new Thread(writerTasks.get(0));
+        writer.start();
+        assertTrue(asyncSession.waitForCompletion(5000));
+    }
+
+    private void checkOnlyFailed(AsyncOperation failing, List<AsyncOperation> operations) {
+        assertTrue(failing.isFailed());
+        assertTrue(failing.getThrowable() instanceof SQLiteConstraintException);
+        for (AsyncOperation operation : operations) {
+            if (operation != failing) {
+                assertTrue(operation.isCompletedSucessfully());
+                // Not executed one by one after reverting the merged transaction
+                assertEquals(operations.size(), operation.getMergedOperationsCount());
+            }
+        }
+        AsyncMetrics metrics = asyncSession.getMetrics();
+        assertEquals(1, metrics.getFailedCount());
+        assertEquals(0, metrics.getMergeFallbackCount());
+        assertEquals(1, metrics.getMergeableTransactionCount());
+    }
+
+    private List<String> loadNames() {
+        List<String> names = new ArrayList<String>();
+        for (TestEntity entity : dao.loadAll()) {
+            names.add(entity.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, names);
+        return list;
+    }
+}
@@ -0,0 +1,125 @@
+package com.mazouri.fork.greendao.query;
+
+import com.mazouri.fork.greendao.query.TestEntityDao.Properties;
+import com.mazouri.fork.greendao.test.DbTest;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that {@link QueryBuilder#listFromCache()} returns the same entities in the same order as
+ * {@link QueryBuilder#list()}, i.e. that conditions and orders are evaluated in memory like SQLite does.
+ */
+public class QueryFromCacheTest extends DbTest {
+
+    private static final String[] NAMES = {
+            "apple", "Banana", "Äpfel", "cherry", "Çedille", "zebra", "Ångström", "12", "9", "100", "12.0",
+            "ABC def", "abc DEF", "Äbc", "äbc", "a_c", "a%c", null, null
+    };
+
+    private TestEntityDao dao;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestEntityDao.createTable(db, false);
+        dao = new TestEntityDao.Session(db).getTestEntityDao();
+        for (int i = 0; i < NAMES.length; i++) {
+            dao.insert(new TestEntity(null, NAMES[i], i % 7 - 2));
+        }
+    }
+
+    /** Condition values of another type than the column are converted to the column's affinity. */
+    public void testAffinity() {
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.eq("3")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.eq(" 3 ")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.eq(3.0)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.gt("1.5")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.lt(-0.5)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.between("-1", 2.0)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.in("1", 2.0, "3.5", 4L)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.notIn("1", 2.0)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.eq("abc")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.eq(12)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.eq(12.0)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.gt(100)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.in(9, "100", 12L)));
+        checkSameEntities(dao.queryBuilder().where(Properties.Id.eq("5")));
+        checkSameEntities(dao.queryBuilder().whereOr(Properties.Name.eq(9), Properties.Rank.eq("4")));
+    }
+
+    /** NULL only matches IS NULL; it sorts first ascending and last descending. */
+    public void testNull() {
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.isNull()));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.isNotNull()));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.notEq("apple")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.notIn("apple", "zebra")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.lt("b")));
+        checkSameEntities(dao.queryBuilder().whereOr(Properties.Name.isNull(), Properties.Rank.eq(0)));
+        checkSameOrder(dao.queryBuilder().orderAsc(Properties.Name, Properties.Id));
+        checkSameOrder(dao.queryBuilder().orderDesc(Properties.Name).orderAsc(Properties.Id));
+    }
+
+    /** LIKE is case insensitive for ASCII characters only; '%' and '_' are the only wildcards. */
+    public void testLike() {
+        assertEquals(2, checkSameEntities(dao.queryBuilder().where(Properties.Name.like("%abc%"))));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.like("ABC%")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.like("%bc")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.like("äbc")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.like("Ä%")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.like("a_c")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.like("a%c")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.like("%.%")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Name.like("1_")));
+        checkSameEntities(dao.queryBuilder().where(Properties.Rank.like("-%")));
+    }
+
+    /**
+     * String properties are ordered using COLLATE LOCALIZED in SQL, which is imitated in memory by the default locale's
+     * {@link Collator}; other properties are ordered by value.
+     */
+    public void testStringOrder() {
+        List<TestEntity> ordered = checkSameOrder(dao.queryBuilder().where(Properties.Name.isNotNull())
+                .orderAsc(Properties.Name, Properties.Id));
+        List<String> names = new ArrayList<String>();
+        for (TestEntity entity : ordered) {
+            names.add(entity.getName());
+        }
+        List<String> collated = new ArrayList<String>(names);
+        Collections.sort(collated, Collator.getInstance());
+        assertEquals(collated, names);
+        // Binary order would put "Banana" before "apple"
+        assertTrue(names.indexOf("apple") < names.indexOf("Banana"));
+
+        checkSameOrder(dao.queryBuilder().orderDesc(Properties.Name, Properties.Id));
+        checkSameOrder(dao.queryBuilder().orderAsc(Properties.Rank).orderDesc(Properties.Name).orderAsc(Properties.Id));
+        checkSameOrder(dao.queryBuilder().where(Properties.Rank.ge(0)).orderDesc(Properties.Rank)
+                .orderAsc(Properties.Id).limit(5).offset(2));
+    }
+
+    /** For queries without total order, only the entities must match. Returns the number of entities. */
+    private int checkSameEntities(QueryBuilder<TestEntity> queryBuilder) {
+        List<Long> expected = keys(queryBuilder.list());
+        List<Long> actual = keys(queryBuilder.listFromCache());
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+        return expected.size();
+    }
+
+    private List<TestEntity> checkSameOrder(QueryBuilder<TestEntity> queryBuilder) {
+        List<TestEntity> expected = queryBuilder.list();
+        assertEquals(keys(expected), keys(queryBuilder.listFromCache()));
+        return expected;
+    }
+
+    private static List<Long> keys(List<TestEntity> entities) {
+        List<Long> keys = new ArrayList<Long>(entities.size());
+        for (TestEntity entity : entities) {
+            keys.add(entity.getId());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,95 @@
+package com.mazouri.fork.greendao.query;
+
+import com.mazouri.fork.greendao.query.TestEntityDao.Properties;
+import com.mazouri.fork.greendao.test.DbTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the results of {@link Query#observeChanges(QueryChangeObserver, long)} always equal a fresh query,
+ * whether the diff was computed incrementally or not.
+ */
+public class QueryObserveChangesTest extends DbTest {
+
+    private TestEntityDao dao;
+    private final BlockingQueue<QueryDiff<TestEntity>> diffs = new LinkedBlockingQueue<QueryDiff<TestEntity>>();
+    private final QueryChangeObserver<TestEntity> observer = new QueryChangeObserver<TestEntity>() {
+        @Override
+        public void onQueryChanged(QueryDiff<TestEntity> diff) {
+            diffs.add(diff);
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestEntityDao.createTable(db, false);
+        dao = new TestEntityDao.Session(db).getTestEntityDao();
+        // Rank descends while the PK ascends, so the RANK index order differs from the rowid order
+        for (int i = 0; i < 10; i++) {
+            dao.insert(new TestEntity(null, "Entity " + i, 10 - i / 2));
+        }
+    }
+
+    public void testUnorderedIndexedQuery() throws Exception {
+        Query<TestEntity> query = dao.queryBuilder().where(Properties.Rank.ge(7)).build();
+        checkDiffsMatchQuery(query, false);
+    }
+
+    public void testTiesOrderedQuery() throws Exception {
+        Query<TestEntity> query = dao.queryBuilder().where(Properties.Rank.ge(7)).orderAsc(Properties.Rank).build();
+        checkDiffsMatchQuery(query, false);
+    }
+
+    public void testTotallyOrderedQuery() throws Exception {
+        Query<TestEntity> query = dao.queryBuilder().where(Properties.Rank.ge(7))
+                .orderAsc(Properties.Rank, Properties.Id).build();
+        checkDiffsMatchQuery(query, true);
+    }
+
+    private void checkDiffsMatchQuery(Query<TestEntity> query, boolean incremental) throws Exception {
+        QueryObservation<TestEntity> observation = query.observeChanges(observer, 0);
+        try {
+            QueryDiff<TestEntity> diff = nextDiff();
+            assertTrue(diff.isInitial());
+            assertEquals(keys(query.list()), keys(diff.getResult()));
+
+            dao.insert(new TestEntity(null, "Inserted", 8));
+            checkDiff(query, incremental);
+
+            TestEntity entity = dao.load(2L);
+            entity.setRank(7);
+            dao.update(entity);
+            checkDiff(query, incremental);
+
+            dao.deleteByKey(5L);
+            checkDiff(query, incremental);
+        } finally {
+            observation.cancel();
+        }
+    }
+
+    private void checkDiff(Query<TestEntity> query, boolean incremental) throws InterruptedException {
+        QueryDiff<TestEntity> diff = nextDiff();
+        assertEquals(incremental, diff.isIncremental());
+        assertEquals(keys(query.list()), keys(diff.getResult()));
+    }
+
+    private QueryDiff<TestEntity> nextDiff() throws InterruptedException {
+        QueryDiff<TestEntity> diff = diffs.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No diff delivered", diff);
+        return diff;
+    }
+
+    private static List<Long> keys(List<TestEntity> entities) {
+        List<Long> keys = new ArrayList<Long>(entities.size());
+        for (TestEntity entity : entities) {
+            keys.add(entity.getId());
+        }
+        return keys;
+    }
+}
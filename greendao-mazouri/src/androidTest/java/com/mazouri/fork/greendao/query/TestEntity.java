@@ -0,0 +1,44 @@
+package com.mazouri.fork.greendao.query;
+
+/**
+ * Entity of {@link TestEntityDao}.
+ */
+public class TestEntity {
+
+    private Long id;
+    private String name;
+    private int rank;
+
+    public TestEntity() {
+    }
+
+    public TestEntity(Long id, String name, int rank) {
+        this.id = id;
+        this.name = name;
+        this.rank = rank;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
+}
@@ -0,0 +1,117 @@
+package com.mazouri.fork.greendao.query;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.mazouri.fork.greendao.AbstractDao;
+import com.mazouri.fork.greendao.AbstractDaoSession;
+import com.mazouri.fork.greendao.Property;
+import com.mazouri.fork.greendao.internal.DaoConfig;
+
+/**
+ * DAO for table TEST_ENTITY, written like a generated DAO. RANK is indexed, so SQLite may return unordered queries on it
+ * in index order instead of rowid order.
+ */
+public class TestEntityDao extends AbstractDao<TestEntity, Long> {
+
+    public static final String TABLENAME = "TEST_ENTITY";
+
+    public static class Properties {
+        public final static Property Id = new Property(0, Long.class, "id", true, "_id");
+        public final static Property Name = new Property(1, String.class, "name", false, "NAME");
+        public final static Property Rank = new Property(2, int.class, "rank", false, "RANK");
+    }
+
+    /** A session containing only this DAO. */
+    public static class Session extends AbstractDaoSession {
+        private final TestEntityDao dao;
+
+        public Session(SQLiteDatabase db) {
+            super(db);
+            dao = new TestEntityDao(new DaoConfig(db, TestEntityDao.class), this);
+            registerDao(TestEntity.class, dao);
+        }
+
+        public TestEntityDao getTestEntityDao() {
+            return dao;
+        }
+    }
+
+    public TestEntityDao(DaoConfig config, AbstractDaoSession daoSession) {
+        super(config, daoSession);
+    }
+
+    public static void createTable(SQLiteDatabase db, boolean ifNotExists) {
+        String constraint = ifNotExists ? "IF NOT EXISTS " : "";
+        db.execSQL("CREATE TABLE " + constraint + "\"TEST_ENTITY\" (" +
+                "\"_id\" INTEGER PRIMARY KEY ," +
+                "\"NAME\" TEXT," +
+                "\"RANK\" INTEGER NOT NULL )");
+        db.execSQL("CREATE INDEX " + constraint + "IDX_TEST_ENTITY_RANK ON TEST_ENTITY (\"RANK\")");
+    }
+
+    @Override
+    protected void bindValues(SQLiteStatement stmt, TestEntity entity) {
+        stmt.clearBindings();
+        Long id = entity.getId();
+        if (id != null) {
+            stmt.bindLong(1, id);
+        }
+        String name = entity.getName();
+        if (name != null) {
+            stmt.bindString(2, name);
+        }
+        stmt.bindLong(3, entity.getRank());
+    }
+
+    @Override
+    protected Long readKey(Cursor cursor, int offset) {
+        return cursor.isNull(offset) ? null : cursor.getLong(offset);
+    }
+
+    @Override
+    protected TestEntity readEntity(Cursor cursor, int offset) {
+        return new TestEntity(
+                cursor.isNull(offset) ? null : cursor.getLong(offset),
+                cursor.isNull(offset + 1) ? null : cursor.getString(offset + 1),
+                cursor.getInt(offset + 2));
+    }
+
+    @Override
+    protected void readEntity(Cursor cursor, TestEntity entity, int offset) {
+        entity.setId(cursor.isNull(offset) ? null : cursor.getLong(offset));
+        entity.setName(cursor.isNull(offset + 1) ? null : cursor.getString(offset + 1));
+        entity.setRank(cursor.getInt(offset + 2));
+    }
+
+    @Override
+    protected Object getPropertyValue(TestEntity entity, int ordinal) {
+        switch (ordinal) {
+            case 0:
+                return entity.getId();
+            case 1:
+                return entity.getName();
+            case 2:
+                return (long) entity.getRank();
+            default:
+                return super.getPropertyValue(entity, ordinal);
+        }
+    }
+
+    @Override
+    protected Long updateKeyAfterInsert(TestEntity entity, long rowId) {
+        entity.setId(rowId);
+        return rowId;
+    }
+
+    @Override
+    protected Long getKey(TestEntity entity) {
+        return entity != null ? entity.getId() : null;
+    }
+
+    @Override
+    protected boolean isEntityUpdateable() {
+        return true;
+    }
+}
@@ -0,0 +1,193 @@
+package com.mazouri.fork.greendao.test;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.mazouri.fork.greendao.DaoException;
+import com.mazouri.fork.greendao.DaoLog;
+import com.mazouri.fork.greendao.DatabaseTuning;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of concurrent reads and writes under different {@link DatabaseTuning} profiles. For each
+ * profile, a fresh database file is filled with rows; then reader threads look up random rows while one writer inserts
+ * rows in small transactions for a fixed duration. Before measuring, it checks that the profile's synchronous mode is
+ * in effect. Run it on a device, e.g. from an instrumentation test:
+ * <pre>
+ * new DatabaseTuningBenchmark(getContext().getDatabasePath("bench.db"), 4, 3000)
+ *         .compare(new DatabaseTuning(), DatabaseTuning.forConcurrentAccess());
+ * </pre>
+ *
+ * 比较不同调优参数下的并发读写吞吐量
+ */
+public class DatabaseTuningBenchmark {
+
+    public static class Result {
+        public final DatabaseTuning tuning;
+        public final long reads;
+        public final long writes;
+        public final long durationMillis;
+
+        Result(DatabaseTuning tuning, long reads, long writes, long durationMillis) {
+            this.tuning = tuning;
+            this.reads = reads;
+            this.writes = writes;
+            this.durationMillis = durationMillis;
+        }
+
+        public long getReadsPerSecond() {
+            return reads * 1000 / Math.max(1, durationMillis);
+        }
+
+        public long getWritesPerSecond() {
+            return writes * 1000 / Math.max(1, durationMillis);
+        }
+
+        @Override
+        public String toString() {
+            return tuning + ": " + getReadsPerSecond() + " reads/s, " + getWritesPerSecond() + " writes/s";
+        }
+    }
+
+    private static final int INITIAL_ROWS = 10000;
+    private static final int ROWS_PER_WRITE_TX = 10;
+
+    private final File dbFile;
+    private final int readerThreads;
+    private final long durationMillis;
+
+    public DatabaseTuningBenchmark(File dbFile, int readerThreads, long durationMillis) {
+        if (readerThreads < 1) {
+            throw new IllegalArgumentException("At least one reader thread required");
+        }
+        this.dbFile = dbFile;
+        this.readerThreads = readerThreads;
+        this.durationMillis = durationMillis;
+    }
+
+    /** Runs the benchmark for each profile and logs the results. */
+    public List<Result> compare(DatabaseTuning... tunings) throws InterruptedException {
+        List<Result> results = new ArrayList<Result>(tunings.length);
+        for (DatabaseTuning tuning : tunings) {
+            Result result = run(tuning);
+            DaoLog.i("Benchmark " + result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    public Result run(DatabaseTuning tuning) throws InterruptedException {
+        deleteDatabaseFiles();
+        final SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getPath(), null,
+                SQLiteDatabase.CREATE_IF_NECESSARY);
+        try {
+            tuning.apply(db);
+            checkSynchronous(db, tuning);
+            db.execSQL("CREATE TABLE BENCH (_id INTEGER PRIMARY KEY, VALUE INTEGER, TEXT TEXT)");
+            insertRows(db, new Random(), INITIAL_ROWS);
+
+            final AtomicLong reads = new AtomicLong();
+            final AtomicLong writes = new AtomicLong();
+            final CountDownLatch done = new CountDownLatch(readerThreads + 1);
+            final long start = System.currentTimeMillis();
+            final long deadline = start + durationMillis;
+            for (int i = 0; i < readerThreads; i++) {
+                new Thread("benchmark-reader-" + (i + 1)) {
+                    @Override
+                    public void run() {
+                        try {
+                            read(db, deadline, reads);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            new Thread("benchmark-writer") {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random();
+                        while (System.currentTimeMillis() < deadline) {
+                            insertRows(db, random, ROWS_PER_WRITE_TX);
+                            writes.addAndGet(ROWS_PER_WRITE_TX);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+            done.await();
+            long duration = System.currentTimeMillis() - start;
+            return new Result(tuning, reads.get(), writes.get(), duration);
+        } finally {
+            db.close();
+            deleteDatabaseFiles();
+        }
+    }
+
+    /** Reads PRAGMA synchronous back, as enabling write-ahead logging may reset it. */
+    private void checkSynchronous(SQLiteDatabase db, DatabaseTuning tuning) {
+        if (tuning.getSynchronous() == null) {
+            return;
+        }
+        SQLiteStatement statement = db.compileStatement("PRAGMA synchronous");
+        try {
+            long synchronous = statement.simpleQueryForLong();
+            if (synchronous != tuning.getSynchronous().ordinal()) {
+                throw new DaoException("Expected synchronous=" + tuning.getSynchronous().ordinal() + ", but was "
+                        + synchronous + " for " + tuning);
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void read(SQLiteDatabase db, long deadline, AtomicLong reads) {
+        Random random = new Random();
+        SQLiteStatement statement = db.compileStatement("SELECT VALUE FROM BENCH WHERE _id=?");
+        try {
+            long count = 0;
+            while (System.currentTimeMillis() < deadline) {
+                statement.bindLong(1, 1 + random.nextInt(INITIAL_ROWS));
+                statement.simpleQueryForLong();
+                count++;
+            }
+            reads.addAndGet(count);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertRows(SQLiteDatabase db, Random random, int count) {
+        SQLiteStatement statement = db.compileStatement("INSERT INTO BENCH (VALUE, TEXT) VALUES (?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                statement.bindLong(1, random.nextLong());
+                statement.bindString(2, "Row " + random.nextInt());
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    private void deleteDatabaseFiles() {
+        String path = dbFile.getPath();
+        for (String suffix : new String[]{"", "-journal", "-wal", "-shm"}) {
+            File file = new File(path + suffix);
+            if (file.exists() && !file.delete()) {
+                DaoLog.w("Could not delete " + file);
+            }
+        }
+    }
+}
@@ -19,12 +19,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by wangdong on 16-1-18.
  */
 public abstract class AbstractDao<T, K> {
+    /** Maximum number of keys per IN query when resolving relations (stays below SQLite's 999 variable limit). */
+    private static final int RESOLVE_CHUNK_SIZE = 500;
+
     protected final SQLiteDatabase db;
     protected final DaoConfig config;
     protected IdentityScope<K, T> identityScope;
@@ -34,6 +39,12 @@ public abstract class AbstractDao<T, K> {
     protected final AbstractDaoSession session;
     protected final int pkOrdinal;
 
+    //loadAllCached的快照，表被写入时作废
+    private final Object allCachedLock = new Object();
+    private List<T> allCached;
+    private long tableChangeCount;
+    private int writingTransactions;
+
     public AbstractDao(DaoConfig config) {
         this(config, null);
     }
@@ -59,6 +70,72 @@ public abstract class AbstractDao<T, K> {
         return config.statements;
     }
 
+    /** Called after each write to this DAO's table, e.g. to invalidate cached query results. */
+    void onTableChanged() {
+        onTableChanged(null, null);
+    }
+
+    /**
+     * Like {@link #onTableChanged()} for writes of the given entities and/or keys, so session listeners can be told
+     * which rows changed.
+     */
+    private void onTableChanged(Iterable<T> entities, Iterable<K> keys) {
+        synchronized (allCachedLock) {
+            tableChangeCount++;
+            allCached = null;
+        }
+        if (session != null) {
+            List<Object> changedKeys = null;
+            if ((entities != null || keys != null) && session.isTrackingKeys()) {
+                changedKeys = collectKeys(entities, keys);
+            }
+            session.onTableChanged(this, changedKeys);
+        }
+    }
+
+    /** Called by the session when a transaction first wrote this DAO's table; nothing is cached until it ended. */
+    void beginTableWrite() {
+        synchronized (allCachedLock) {
+            writingTransactions++;
+            allCached = null;
+        }
+    }
+
+    /** Called by the session after a transaction that wrote this DAO's table committed or rolled back. */
+    void endTableWrite() {
+        synchronized (allCachedLock) {
+            writingTransactions--;
+            tableChangeCount++;
+            allCached = null;
+        }
+    }
+
+    /** Returns the keys of the given entities and the given keys, or null if any is unknown. */
+    private List<Object> collectKeys(Iterable<T> entities, Iterable<K> keys) {
+        if (pkOrdinal == -1) {
+            return null;
+        }
+        List<Object> changedKeys = new ArrayList<Object>();
+        if (entities != null) {
+            for (T entity : entities) {
+                K key = getKey(entity);
+                if (key == null) {
+                    return null;
+                }
+                changedKeys.add(key);
+            }
+        }
+        if (keys != null) {
+            for (K key : keys) {
+                if (key == null) {
+                    return null;
+                }
+                changedKeys.add(key);
+            }
+        }
+        return changedKeys;
+    }
+
     public String getTablename() {
         return config.tablename;
     }
@@ -136,6 +213,42 @@ public abstract class AbstractDao<T, K> {
         return loadAllAndCloseCursor(cursor);
     }
 
+    /**
+     * Like {@link #loadAll()}, but keeps the result until the table is written through this DAO, so subsequent calls
+     * return it without a query (used by {@link QueryBuilder#listFromCache()}). The returned list is shared and must
+     * not be modified. Results read inside a transaction are not kept.
+     */
+    List<T> loadAllCached() {
+        if (session != null) {
+            session.checkTransactionEnded();
+        }
+        long changeCount;
+        synchronized (allCachedLock) {
+            if (allCached != null) {
+                return allCached;
+            }
+            changeCount = tableChangeCount;
+        }
+        List<T> all = Collections.unmodifiableList(loadAll());
+        if (!db.inTransaction()) {
+            synchronized (allCachedLock) {
+                if (changeCount == tableChangeCount && writingTransactions == 0) {
+                    allCached = all;
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Returns the value of the property with the given ordinal as it is stored in the database: Long for integral
+     * numbers, booleans and dates, Double for floating point numbers, String, byte[] or null. Used to evaluate query
+     * conditions in memory; generated DAOs override this.
+     */
+    protected Object getPropertyValue(T entity, int ordinal) {
+        throw new DaoException(this + " does not support reading property values, please regenerate it");
+    }
+
     /** Detaches an entity from the identity scope (session). Subsequent query results won't return this object. */
     public boolean detach(T entity) {
         if (identityScope != null) {
@@ -181,7 +294,7 @@ public abstract class AbstractDao<T, K> {
      */
     public void insertInTx(Iterable<T> entities, boolean setPrimaryKey) {
         SQLiteStatement stmt = statements.getInsertStatement();
-        executeInsertInTx(stmt, entities, setPrimaryKey);
+        executeInsertInTx(stmt, entities, setPrimaryKey, null);
     }
 
     /**
@@ -193,7 +306,7 @@ public abstract class AbstractDao<T, K> {
      */
     public void insertOrReplaceInTx(Iterable<T> entities, boolean setPrimaryKey) {
         SQLiteStatement stmt = statements.getInsertOrReplaceStatement();
-        executeInsertInTx(stmt, entities, setPrimaryKey);
+        executeInsertInTx(stmt, entities, setPrimaryKey, null);
     }
 
     /**
@@ -214,32 +327,58 @@ public abstract class AbstractDao<T, K> {
         insertOrReplaceInTx(Arrays.asList(entities), isEntityUpdateable());
     }
 
-    private void executeInsertInTx(SQLiteStatement stmt, Iterable<T> entities, boolean setPrimaryKey) {
+    /**
+     * Like {@link #insertInTx(Iterable)} or {@link #insertOrReplaceInTx(Iterable)}, but returns the row IDs of the
+     * inserted entities in order. Must be called inside a transaction of the current thread; no nested transaction is
+     * begun, so a failure does not mark the enclosing transaction as failed.
+     */
+    long[] insertInCurrentTx(List<T> entities, boolean replace) {
+        SQLiteStatement stmt = replace ? statements.getInsertOrReplaceStatement() : statements.getInsertStatement();
+        long[] rowIds = new long[entities.size()];
+        executeInsertInsideTx(stmt, entities, isEntityUpdateable(), rowIds);
+        onTableChanged(entities, null);
+        return rowIds;
+    }
+
+    private void executeInsertInTx(SQLiteStatement stmt, Iterable<T> entities, boolean setPrimaryKey, long[] rowIds) {
         db.beginTransaction();
         try {
-            synchronized (stmt) {
-                if (identityScope != null) {
-                    identityScope.lock();
-                }
-                try {
-                    for (T entity : entities) {
-                        bindValues(stmt, entity);
+            executeInsertInsideTx(stmt, entities, setPrimaryKey, rowIds);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        onTableChanged(entities, null);
+    }
+
+    /** @param rowIds If not null, receives the row IDs of the inserted entities. */
+    private void executeInsertInsideTx(SQLiteStatement stmt, Iterable<T> entities, boolean setPrimaryKey,
+                                       long[] rowIds) {
+        synchronized (stmt) {
+            if (identityScope != null) {
+                identityScope.lock();
+            }
+            try {
+                int index = 0;
+                for (T entity : entities) {
+                    bindValues(stmt, entity);
+                    if (setPrimaryKey || rowIds != null) {
+                        long rowId = stmt.executeInsert();
+                        if (rowIds != null) {
+                            rowIds[index++] = rowId;
+                        }
                         if (setPrimaryKey) {
-                            long rowId = stmt.executeInsert();
                             updateKeyAfterInsertAndAttach(entity, rowId, false);
-                        } else {
-                            stmt.execute();
                         }
-                    }
-                } finally {
-                    if (identityScope != null) {
-                        identityScope.unlock();
+                    } else {
+                        stmt.execute();
                     }
                 }
+            } finally {
+                if (identityScope != null) {
+                    identityScope.unlock();
+                }
             }
-            db.setTransactionSuccessful();
-        } finally {
-            db.endTransaction();
         }
     }
 
@@ -279,6 +418,7 @@ public abstract class AbstractDao<T, K> {
                 db.endTransaction();
             }
         }
+        onTableChanged();
         return rowId;
     }
 
@@ -312,6 +452,7 @@ public abstract class AbstractDao<T, K> {
             }
         }
         updateKeyAfterInsertAndAttach(entity, rowId, true);
+        onTableChanged(Collections.singletonList(entity), null);
         return rowId;
     }
 
@@ -494,6 +635,7 @@ public abstract class AbstractDao<T, K> {
         if (identityScope != null) {
             identityScope.clear();
         }
+        onTableChanged();
     }
 
     /** Deletes the given entity from the database. Currently, only single value PK entities are supported. */
@@ -526,6 +668,7 @@ public abstract class AbstractDao<T, K> {
         if (identityScope != null) {
             identityScope.remove(key);
         }
+        onTableChanged(null, Collections.singletonList(key));
     }
 
     private void deleteByKeyInsideSynchronized(K key, SQLiteStatement stmt) {
@@ -541,39 +684,9 @@ public abstract class AbstractDao<T, K> {
 
     private void deleteInTxInternal(Iterable<T> entities, Iterable<K> keys) {
         assertSinglePk();
-        SQLiteStatement stmt = statements.getDeleteStatement();
-        List<K> keysToRemoveFromIdentityScope = null;
         db.beginTransaction();
         try {
-            synchronized (stmt) {
-                if (identityScope != null) {
-                    identityScope.lock();
-                    keysToRemoveFromIdentityScope = new ArrayList<K>();
-                }
-                try {
-                    if (entities != null) {
-                        for (T entity : entities) {
-                            K key = getKeyVerified(entity);
-                            deleteByKeyInsideSynchronized(key, stmt);
-                            if (keysToRemoveFromIdentityScope != null) {
-                                keysToRemoveFromIdentityScope.add(key);
-                            }
-                        }
-                    }
-                    if (keys != null) {
-                        for (K key : keys) {
-                            deleteByKeyInsideSynchronized(key, stmt);
-                            if (keysToRemoveFromIdentityScope != null) {
-                                keysToRemoveFromIdentityScope.add(key);
-                            }
-                        }
-                    }
-                } finally {
-                    if (identityScope != null) {
-                        identityScope.unlock();
-                    }
-                }
-            }
+            List<K> keysToRemoveFromIdentityScope = deleteInsideTx(entities, keys);
             db.setTransactionSuccessful();
             if (keysToRemoveFromIdentityScope != null && identityScope != null) {
                 identityScope.remove(keysToRemoveFromIdentityScope);
@@ -581,6 +694,58 @@ public abstract class AbstractDao<T, K> {
         } finally {
             db.endTransaction();
         }
+        onTableChanged(entities, keys);
+    }
+
+    /**
+     * Like {@link #deleteInTx(Iterable)} and {@link #deleteByKeyInTx(Iterable)}, but must be called inside a
+     * transaction of the current thread; no nested transaction is begun, so a failure does not mark the enclosing
+     * transaction as failed.
+     */
+    @SuppressWarnings("unchecked")
+    void deleteInCurrentTx(Iterable<T> entities, Iterable<?> keys) {
+        assertSinglePk();
+        List<K> keysToRemoveFromIdentityScope = deleteInsideTx(entities, (Iterable<K>) keys);
+        if (keysToRemoveFromIdentityScope != null && identityScope != null) {
+            identityScope.remove(keysToRemoveFromIdentityScope);
+        }
+        onTableChanged(entities, (Iterable<K>) keys);
+    }
+
+    /** @return The keys to remove from the identity scope once deleting succeeded or null if there is no scope. */
+    private List<K> deleteInsideTx(Iterable<T> entities, Iterable<K> keys) {
+        SQLiteStatement stmt = statements.getDeleteStatement();
+        List<K> keysToRemoveFromIdentityScope = null;
+        synchronized (stmt) {
+            if (identityScope != null) {
+                identityScope.lock();
+                keysToRemoveFromIdentityScope = new ArrayList<K>();
+            }
+            try {
+                if (entities != null) {
+                    for (T entity : entities) {
+                        K key = getKeyVerified(entity);
+                        deleteByKeyInsideSynchronized(key, stmt);
+                        if (keysToRemoveFromIdentityScope != null) {
+                            keysToRemoveFromIdentityScope.add(key);
+                        }
+                    }
+                }
+                if (keys != null) {
+                    for (K key : keys) {
+                        deleteByKeyInsideSynchronized(key, stmt);
+                        if (keysToRemoveFromIdentityScope != null) {
+                            keysToRemoveFromIdentityScope.add(key);
+                        }
+                    }
+                }
+            } finally {
+                if (identityScope != null) {
+                    identityScope.unlock();
+                }
+            }
+        }
+        return keysToRemoveFromIdentityScope;
     }
 
     /**
@@ -660,12 +825,104 @@ public abstract class AbstractDao<T, K> {
                 db.endTransaction();
             }
         }
+        onTableChanged(Collections.singletonList(entity), null);
     }
 
     public QueryBuilder<T> queryBuilder() {
         return QueryBuilder.internalCreate(this);
     }
 
+    /**
+     * Resolves the given to-one relation for all given entities: the foreign keys are collected and the targets are
+     * loaded with a few IN queries instead of one query per entity. Entities with an already resolved to-one are
+     * skipped; targets found in the target DAO's identity scope are assigned without querying.
+     */
+    public <D> void resolveToOne(List<T> entities, ToOneRelation<T, D> relation) {
+        @SuppressWarnings("unchecked")
+        AbstractDao<D, Object> targetDao = (AbstractDao<D, Object>) getRelationTargetDao(relation.targetEntityClass);
+        Property targetPkProperty = targetDao.getPkProperty();
+        if (targetPkProperty == null) {
+            throw new DaoException("Cannot resolve " + relation + ": target has no single-column primary key");
+        }
+        List<T> unresolved = new ArrayList<T>();
+        Map<Object, D> targets = new HashMap<Object, D>();
+        List<Object> keysToLoad = new ArrayList<Object>();
+        for (T entity : entities) {
+            if (relation.isResolved(entity)) {
+                continue;
+            }
+            unresolved.add(entity);
+            Object key = relation.getForeignKey(entity);
+            if (key != null && !targets.containsKey(key)) {
+                D target = targetDao.identityScope != null ? targetDao.identityScope.get(key) : null;
+                targets.put(key, target);
+                if (target == null) {
+                    keysToLoad.add(key);
+                }
+            }
+        }
+        for (int i = 0; i < keysToLoad.size(); i += RESOLVE_CHUNK_SIZE) {
+            List<Object> chunk = keysToLoad.subList(i, Math.min(i + RESOLVE_CHUNK_SIZE, keysToLoad.size()));
+            List<D> loaded = targetDao.queryBuilder().where(targetPkProperty.in(chunk)).list();
+            for (D target : loaded) {
+                targets.put(targetDao.getKey(target), target);
+            }
+        }
+        for (T entity : unresolved) {
+            Object key = relation.getForeignKey(entity);
+            relation.setResolved(entity, key != null ? targets.get(key) : null);
+        }
+    }
+
+    /**
+     * Resolves the given to-many relation for all given entities: the targets of all entities are loaded with a few IN
+     * queries instead of one query per entity. Entities with an already resolved to-many list are skipped.
+     */
+    public <D> void resolveToMany(List<T> entities, ToManyRelation<T, D> relation) {
+        @SuppressWarnings("unchecked")
+        AbstractDao<D, ?> targetDao = (AbstractDao<D, ?>) getRelationTargetDao(relation.targetEntityClass);
+        List<T> unresolved = new ArrayList<T>();
+        Map<Object, List<D>> targetsBySourceKey = new HashMap<Object, List<D>>();
+        List<Object> keysToLoad = new ArrayList<Object>();
+        for (T entity : entities) {
+            if (relation.isResolved(entity)) {
+                continue;
+            }
+            unresolved.add(entity);
+            Object key = relation.getSourceKey(entity);
+            if (key != null && !targetsBySourceKey.containsKey(key)) {
+                targetsBySourceKey.put(key, new ArrayList<D>());
+                keysToLoad.add(key);
+            }
+        }
+        for (int i = 0; i < keysToLoad.size(); i += RESOLVE_CHUNK_SIZE) {
+            List<Object> chunk = keysToLoad.subList(i, Math.min(i + RESOLVE_CHUNK_SIZE, keysToLoad.size()));
+            QueryBuilder<D> queryBuilder = targetDao.queryBuilder().where(relation.targetProperty.in(chunk));
+            if (relation.order != null) {
+                queryBuilder.orderRaw(relation.order);
+            }
+            for (D target : queryBuilder.list()) {
+                List<D> targets = targetsBySourceKey.get(relation.getTargetKey(target));
+                if (targets != null) {
+                    targets.add(target);
+                }
+            }
+        }
+        for (T entity : unresolved) {
+            Object key = relation.getSourceKey(entity);
+            List<D> targets = key != null ? targetsBySourceKey.get(key) : null;
+            // Each entity gets its own list as entities may share a source key
+            relation.setResolved(entity, targets != null ? new ArrayList<D>(targets) : new ArrayList<D>());
+        }
+    }
+
+    private AbstractDao<?, ?> getRelationTargetDao(Class<?> targetEntityClass) {
+        if (session == null) {
+            throw new DaoException("Relations can only be resolved by DAOs belonging to a session");
+        }
+        return session.getDao(targetEntityClass);
+    }
+
     protected void updateInsideSynchronized(T entity, SQLiteStatement stmt, boolean lock) {
         // To do? Check if it's worth not to bind PKs here (performance).
         bindValues(stmt, entity);
@@ -714,24 +971,10 @@ public abstract class AbstractDao<T, K> {
      * @param entities The entities to insert.
      */
     public void updateInTx(Iterable<T> entities) {
-        SQLiteStatement stmt = statements.getUpdateStatement();
         db.beginTransaction();
         RuntimeException txEx = null;
         try {
-            synchronized (stmt) {
-                if (identityScope != null) {
-                    identityScope.lock();
-                }
-                try {
-                    for (T entity : entities) {
-                        updateInsideSynchronized(entity, stmt, false);
-                    }
-                } finally {
-                    if (identityScope != null) {
-                        identityScope.unlock();
-                    }
-                }
-            }
+            updateInsideTx(entities);
             db.setTransactionSuccessful();
         } catch (RuntimeException e) {
             txEx = e;
@@ -747,6 +990,7 @@ public abstract class AbstractDao<T, K> {
                 }
             }
         }
+        onTableChanged(entities, null);
     }
 
     /**
@@ -758,6 +1002,33 @@ public abstract class AbstractDao<T, K> {
         updateInTx(Arrays.asList(entities));
     }
 
+    /**
+     * Like {@link #updateInTx(Iterable)}, but must be called inside a transaction of the current thread; no nested
+     * transaction is begun, so a failure does not mark the enclosing transaction as failed.
+     */
+    void updateInCurrentTx(Iterable<T> entities) {
+        updateInsideTx(entities);
+        onTableChanged(entities, null);
+    }
+
+    private void updateInsideTx(Iterable<T> entities) {
+        SQLiteStatement stmt = statements.getUpdateStatement();
+        synchronized (stmt) {
+            if (identityScope != null) {
+                identityScope.lock();
+            }
+            try {
+                for (T entity : entities) {
+                    updateInsideSynchronized(entity, stmt, false);
+                }
+            } finally {
+                if (identityScope != null) {
+                    identityScope.unlock();
+                }
+            }
+        }
+    }
+
     protected void assertSinglePk() {
         if (config.pkColumns.length != 1) {
             throw new DaoException(this + " (" + config.tablename + ") does not have a single-column primary key");
@@ -17,10 +17,23 @@ public abstract class AbstractDaoMaster {
     protected final SQLiteDatabase db;
     protected final int schemaVersion;
     protected final Map<Class<? extends AbstractDao<?, ?>>, DaoConfig> daoConfigMap;
+    protected final DatabaseTuning tuning;
 
     public AbstractDaoMaster(SQLiteDatabase db, int schemaVersion) {
+        this(db, schemaVersion, null);
+    }
+
+    /**
+     * Applies the given tuning profile (may be null) to the database before any DAO compiles statements. Pass a profile
+     * only if the database was not configured with it already, e.g. by the generated OpenHelper.
+     */
+    public AbstractDaoMaster(SQLiteDatabase db, int schemaVersion, DatabaseTuning tuning) {
         this.db = db;
         this.schemaVersion = schemaVersion;
+        this.tuning = tuning;
+        if (tuning != null) {
+            tuning.apply(db);
+        }
 
         daoConfigMap = new HashMap<Class<? extends AbstractDao<?, ?>>, DaoConfig>();
     }
@@ -34,6 +47,11 @@ public abstract class AbstractDaoMaster {
         return schemaVersion;
     }
 
+    /** The tuning profile applied by this master or null. */
+    public DatabaseTuning getTuning() {
+        return tuning;
+    }
+
     /** Gets the SQLiteDatabase for custom database access. Not needed for greenDAO entities. */
     public SQLiteDatabase getDatabase() {
         return db;
@@ -1,27 +1,72 @@
 package com.mazouri.fork.greendao;
 
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteTransactionListener;
 
 import com.mazouri.fork.greendao.async.AsyncSession;
 import com.mazouri.fork.greendao.query.QueryBuilder;
+import com.mazouri.fork.greendao.query.QueryResultCache;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * Created by wangdong on 16-1-18.
  */
 public class AbstractDaoSession {
+
+    /**
+     * A top-level transaction of the current thread writing through the DAOs: begun by the session, or begun directly on
+     * the database (raw), whose end is only noticed by the next use of the session on that thread.
+     */
+    private static class TxState implements SQLiteTransactionListener {
+        final TableChanges changes = new TableChanges();
+        final Set<AbstractDao<?, ?>> writtenDaos = new HashSet<AbstractDao<?, ?>>();
+        final boolean raw;
+        int depth;
+        boolean committed;
+
+        TxState(boolean raw) {
+            this.raw = raw;
+        }
+
+        @Override
+        public void onBegin() {
+        }
+
+        @Override
+        public void onCommit() {
+            committed = true;
+        }
+
+        @Override
+        public void onRollback() {
+            committed = false;
+        }
+    }
+
     private final SQLiteDatabase db;
     private final Map<Class<?>, AbstractDao<?, ?>> entityToDao;
+    private final QueryResultCache queryResultCache;
+    private final List<TableChangeListener> tableChangeListeners;
+    private final List<EntityChangeListener> entityChangeListeners;
+    private final ThreadLocal<TxState> txState;
 
     public AbstractDaoSession(SQLiteDatabase db) {
         this.db = db;
         this.entityToDao = new HashMap<Class<?>, AbstractDao<?, ?>>();
+        queryResultCache = new QueryResultCache();
+        tableChangeListeners = new CopyOnWriteArrayList<TableChangeListener>();
+        entityChangeListeners = new CopyOnWriteArrayList<EntityChangeListener>();
+        txState = new ThreadLocal<TxState>();
     }
 
     protected <T> void registerDao(Class<T> entityClass, AbstractDao<T, ?> dao) {
@@ -110,12 +155,12 @@ public class AbstractDaoSession {
      * Run the given Runnable inside a database transaction. If you except a result, consider callInTx.
      */
     public void runInTx(Runnable runnable) {
-        db.beginTransaction();
+        beginTransaction();
         try {
             runnable.run();
             db.setTransactionSuccessful();
         } finally {
-            db.endTransaction();
+            endTransaction();
         }
     }
 
@@ -124,13 +169,13 @@ public class AbstractDaoSession {
      * except a result, consider runInTx.
      */
     public <V> V callInTx(Callable<V> callable) throws Exception {
-        db.beginTransaction();
+        beginTransaction();
         try {
             V result = callable.call();
             db.setTransactionSuccessful();
             return result;
         } finally {
-            db.endTransaction();
+            endTransaction();
         }
     }
 
@@ -139,7 +184,7 @@ public class AbstractDaoSession {
      * DaoException).
      */
     public <V> V callInTxNoException(Callable<V> callable) {
-        db.beginTransaction();
+        beginTransaction();
         try {
             V result;
             try {
@@ -150,10 +195,90 @@ public class AbstractDaoSession {
             db.setTransactionSuccessful();
             return result;
         } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * Begins a transaction like {@link SQLiteDatabase#beginTransaction()}, but table changes inside it are announced to
+     * {@link TableChangeListener}s only after the top-level transaction committed. Mark it successful using
+     * {@link SQLiteDatabase#setTransactionSuccessful()} and always end it using {@link #endTransaction()}. Prefer
+     * {@link #runInTx(Runnable)} and {@link #callInTx(Callable)}.<br/>
+     * Changes inside transactions begun directly on the database are announced late: the session cannot observe their
+     * end, so they are kept pending and announced as soon as the session is used again on that thread (e.g. the next
+     * write or transaction), even if the transaction was rolled back. Cached query results of
+     * tables written inside any transaction are invalidated again after it ended (for transactions begun directly on the
+     * database, as soon as the session is used again on that thread); until then, results of these tables are not
+     * cached.
+     */
+    public void beginTransaction() {
+        TxState state = getTxState();
+        if (state != null && !state.raw) {
+            state.depth++;
+            db.beginTransaction();
+        } else if (db.inTransaction()) {
+            db.beginTransaction();
+        } else {
+            state = new TxState(false);
+            state.depth = 1;
+            db.beginTransactionWithListener(state);
+            txState.set(state);
+        }
+    }
+
+    /** Ends a transaction begun using {@link #beginTransaction()}. */
+    public void endTransaction() {
+        TxState state = txState.get();
+        if (state == null || state.raw) {
+            db.endTransaction();
+        } else if (--state.depth > 0) {
             db.endTransaction();
+        } else {
+            txState.remove();
+            try {
+                db.endTransaction();
+            } finally {
+                endWrites(state);
+            }
+            if (state.committed && !state.changes.isEmpty()) {
+                notifyListeners(state.changes);
+            }
         }
     }
 
+    /**
+     * The transaction state of the current thread; drops the state of a raw transaction that has ended since and
+     * announces its pending changes. Whether it committed is unknown, so they are announced in any case.
+     */
+    private TxState getTxState() {
+        TxState state = txState.get();
+        if (state != null && state.raw && !db.inTransaction()) {
+            txState.remove();
+            endWrites(state);
+            if (!state.changes.isEmpty()) {
+                notifyListeners(state.changes);
+            }
+            return null;
+        }
+        return state;
+    }
+
+    /**
+     * Invalidates the tables written by the given transaction again after it ended: until then, readers on other
+     * connections (WAL) could still see the old rows, so their results must not be cached under the new state.
+     */
+    private void endWrites(TxState state) {
+        for (AbstractDao<?, ?> dao : state.writtenDaos) {
+            dao.endTableWrite();
+            queryResultCache.endWrite(dao.getTablename());
+        }
+    }
+
+    /** Called by DAOs before caching results, so tables written by an ended raw transaction become cacheable again. */
+    void checkTransactionEnded() {
+        getTxState();
+    }
+
     /** Gets the SQLiteDatabase for custom database access. Not needed for greenDAO entities. */
     public SQLiteDatabase getDatabase() {
         return db;
@@ -164,10 +289,125 @@ public class AbstractDaoSession {
         return Collections.unmodifiableCollection(entityToDao.values());
     }
 
+    /**
+     * The result cache shared by all queries of this session that opted in to result caching; use it to adjust the size
+     * budget or to read hit rate and invalidation metrics.
+     */
+    public QueryResultCache getQueryResultCache() {
+        checkTransactionEnded();
+        return queryResultCache;
+    }
+
+    /** True if the DAOs should pass the keys of written rows to {@link #onTableChanged(String, Collection)}. */
+    boolean isTrackingKeys() {
+        return !entityChangeListeners.isEmpty();
+    }
+
+    /**
+     * Called by the DAOs after their table was written. Inside a transaction, the table is marked as being written
+     * until the transaction ended, so results read in the meantime are not cached.
+     *
+     * @param keys The keys of the written rows or null if unknown.
+     */
+    void onTableChanged(AbstractDao<?, ?> dao, Collection<?> keys) {
+        String tablename = dao.getTablename();
+        TxState state = getTxState();
+        boolean listening = !tableChangeListeners.isEmpty() || !entityChangeListeners.isEmpty();
+        if (state == null && db.inTransaction()) {
+            if (listening) {
+                // The commit or rollback of the transaction cannot be observed, the changes stay pending until then
+                DaoLog.w("Writes to " + tablename + " inside SQLiteDatabase.beginTransaction() are announced late; "
+                        + "use transactions of the session (runInTx, callInTx or beginTransaction)");
+            }
+            state = new TxState(true);
+            txState.set(state);
+        }
+        if (state != null) {
+            if (state.writtenDaos.add(dao)) {
+                dao.beginTableWrite();
+                queryResultCache.beginWrite(tablename);
+            }
+        } else {
+            queryResultCache.invalidate(tablename);
+        }
+        if (listening) {
+            if (state != null) {
+                state.changes.add(tablename, keys);
+            } else {
+                TableChanges changes = new TableChanges();
+                changes.add(tablename, keys);
+                notifyListeners(changes);
+            }
+        }
+    }
+
+    private void notifyListeners(TableChanges changes) {
+        if (!tableChangeListeners.isEmpty()) {
+            Set<String> tablenames = changes.getTablenames();
+            for (TableChangeListener listener : tableChangeListeners) {
+                try {
+                    listener.onTablesChanged(tablenames);
+                } catch (RuntimeException e) {
+                    DaoLog.e("Table change listener failed", e);
+                }
+            }
+        }
+        for (EntityChangeListener listener : entityChangeListeners) {
+            try {
+                listener.onEntitiesChanged(changes);
+            } catch (RuntimeException e) {
+                DaoLog.e("Entity change listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener notified about tables written through the DAOs of this session, see
+     * {@link TableChangeListener}. Writes that bypass the DAOs are not noticed. Transactions writing through the DAOs
+     * should be begun by the session (see {@link #beginTransaction()}), otherwise changes are announced late.
+     */
+    public void addTableChangeListener(TableChangeListener listener) {
+        tableChangeListeners.add(listener);
+    }
+
+    public void removeTableChangeListener(TableChangeListener listener) {
+        tableChangeListeners.remove(listener);
+    }
+
+    /**
+     * Registers a listener notified about the tables and primary keys written through the DAOs of this session, see
+     * {@link EntityChangeListener}. While registered, DAOs collect the keys of all written rows; transactions writing
+     * through the DAOs should be begun by the session (see {@link #beginTransaction()}).
+     */
+    public void addEntityChangeListener(EntityChangeListener listener) {
+        entityChangeListeners.add(listener);
+    }
+
+    public void removeEntityChangeListener(EntityChangeListener listener) {
+        entityChangeListeners.remove(listener);
+    }
+
     /**
      * Creates a new {@link AsyncSession} to issue asynchronous entity operations. See {@link AsyncSession} for details.
      */
     public AsyncSession startAsyncSession() {
         return new AsyncSession(this);
     }
+
+    /**
+     * Creates a new {@link AsyncSession} whose writer lane runs on the given executor, see
+     * {@link AsyncSession#AsyncSession(AbstractDaoSession, java.util.concurrent.Executor)}.
+     */
+    public AsyncSession startAsyncSession(Executor writerExecutor) {
+        return new AsyncSession(this, writerExecutor);
+    }
+
+    /**
+     * Creates a new {@link AsyncSession} whose writer lane and reads run on the given executors, see
+     * {@link AsyncSession#AsyncSession(AbstractDaoSession, java.util.concurrent.Executor,
+     * java.util.concurrent.Executor)}.
+     */
+    public AsyncSession startAsyncSession(Executor writerExecutor, Executor readerExecutor) {
+        return new AsyncSession(this, writerExecutor, readerExecutor);
+    }
 }
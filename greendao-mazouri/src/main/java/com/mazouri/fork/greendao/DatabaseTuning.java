@@ -0,0 +1,210 @@
+package com.mazouri.fork.greendao;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A tuning profile for the database connection: write-ahead logging and the pragmas that trade durability or memory
+ * for throughput. Settings left unset keep the platform defaults. Apply a profile while the database is configured,
+ * which the generated OpenHelper does when given a profile, or pass it to the DaoMaster right after opening the
+ * database.
+ * <p/>
+ * With write-ahead logging, readers no longer block behind a writer: Android then opens additional read connections
+ * (the pool size is chosen by the platform and cannot be set through the public API). The pragmas are per connection;
+ * they are applied to the primary connection, which executes all writes and transactions. Read connections opened
+ * later by the platform keep the defaults.
+ *
+ * 数据库调优参数（WAL、synchronous、mmap_size等）
+ */
+public final class DatabaseTuning {
+
+    /** Values of PRAGMA synchronous. */
+    public enum Synchronous {
+        OFF, NORMAL, FULL
+    }
+
+    /** Values of PRAGMA temp_store. */
+    public enum TempStore {
+        DEFAULT, FILE, MEMORY
+    }
+
+    private static final int UNSET = Integer.MIN_VALUE;
+
+    private boolean writeAheadLogging;
+    private Synchronous synchronous;
+    private TempStore tempStore;
+    private long mmapSize = -1;
+    private int cacheSize = UNSET;
+    private int walAutoCheckpoint = UNSET;
+    private int statementCacheSize;
+
+    /**
+     * A profile for concurrent reads and writes: write-ahead logging with synchronous=NORMAL (a commit may be lost on
+     * power loss, but the database stays consistent), temporary tables in memory and a larger statement cache.
+     */
+    public static DatabaseTuning forConcurrentAccess() {
+        return new DatabaseTuning().setWriteAheadLogging(true).setSynchronous(Synchronous.NORMAL)
+                .setTempStore(TempStore.MEMORY).setStatementCacheSize(50);
+    }
+
+    public boolean isWriteAheadLogging() {
+        return writeAheadLogging;
+    }
+
+    /**
+     * Enables write-ahead logging (journal_mode=WAL) and thus concurrent read connections. If false, the journal mode
+     * of the database is left as it is.
+     */
+    public DatabaseTuning setWriteAheadLogging(boolean writeAheadLogging) {
+        this.writeAheadLogging = writeAheadLogging;
+        return this;
+    }
+
+    public Synchronous getSynchronous() {
+        return synchronous;
+    }
+
+    /** Sets PRAGMA synchronous; null keeps the default. */
+    public DatabaseTuning setSynchronous(Synchronous synchronous) {
+        this.synchronous = synchronous;
+        return this;
+    }
+
+    public TempStore getTempStore() {
+        return tempStore;
+    }
+
+    /** Sets PRAGMA temp_store used for temporary tables and indices (also those of sorts); null keeps the default. */
+    public DatabaseTuning setTempStore(TempStore tempStore) {
+        this.tempStore = tempStore;
+        return this;
+    }
+
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    /**
+     * Sets PRAGMA mmap_size, the number of bytes of the database file read through memory-mapped I/O (0 disables it,
+     * -1 keeps the default). Ignored by SQLite versions before 3.7.17 (before Android 5.0).
+     */
+    public DatabaseTuning setMmapSize(long mmapSize) {
+        if (mmapSize < -1) {
+            throw new IllegalArgumentException("Illegal mmap size: " + mmapSize);
+        }
+        this.mmapSize = mmapSize;
+        return this;
+    }
+
+    public int getCacheSize() {
+        return cacheSize == UNSET ? 0 : cacheSize;
+    }
+
+    /**
+     * Sets PRAGMA cache_size: positive values are pages, negative values are KiB (like SQLite). 0 keeps the default.
+     */
+    public DatabaseTuning setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize == 0 ? UNSET : cacheSize;
+        return this;
+    }
+
+    public int getWalAutoCheckpoint() {
+        return walAutoCheckpoint == UNSET ? -1 : walAutoCheckpoint;
+    }
+
+    /**
+     * Sets PRAGMA wal_autocheckpoint: the WAL size in pages that triggers a checkpoint after a commit. 0 disables
+     * automatic checkpoints (checkpoint yourself, e.g. using PRAGMA wal_checkpoint), -1 keeps the default.
+     */
+    public DatabaseTuning setWalAutoCheckpoint(int pages) {
+        if (pages < -1) {
+            throw new IllegalArgumentException("Illegal WAL auto checkpoint: " + pages);
+        }
+        this.walAutoCheckpoint = pages == -1 ? UNSET : pages;
+        return this;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Sets the number of prepared statements cached per connection (see
+     * {@link SQLiteDatabase#setMaxSqlCacheSize(int)}, at most 100); 0 keeps the default.
+     */
+    public DatabaseTuning setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0 || statementCacheSize > 100) {
+            throw new IllegalArgumentException("Illegal statement cache size: " + statementCacheSize);
+        }
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    /**
+     * Applies this profile to the given database. Call it outside of transactions, preferably from
+     * {@link android.database.sqlite.SQLiteOpenHelper#onConfigure(SQLiteDatabase)} or right after opening the database.
+     * Write-ahead logging is enabled first: doing so reconfigures the primary connection and resets its synchronous
+     * mode to the platform's WAL default, which would discard a synchronous pragma applied before.
+     */
+    public void apply(SQLiteDatabase db) {
+        if (db.inTransaction()) {
+            throw new DaoException("Cannot apply a tuning profile inside a transaction");
+        }
+        if (statementCacheSize > 0) {
+            db.setMaxSqlCacheSize(statementCacheSize);
+        }
+        if (writeAheadLogging && !db.enableWriteAheadLogging()) {
+            DaoLog.w("Write-ahead logging is not available for " + db.getPath());
+        }
+        if (synchronous != null) {
+            execPragma(db, "synchronous=" + synchronous.ordinal());
+        }
+        if (tempStore != null) {
+            execPragma(db, "temp_store=" + tempStore.ordinal());
+        }
+        if (mmapSize != -1) {
+            execPragma(db, "mmap_size=" + mmapSize);
+        }
+        if (cacheSize != UNSET) {
+            execPragma(db, "cache_size=" + cacheSize);
+        }
+        if (walAutoCheckpoint != UNSET) {
+            execPragma(db, "wal_autocheckpoint=" + walAutoCheckpoint);
+        }
+    }
+
+    /** Some pragmas return their new value as a row, which execSQL refuses, so all are run as queries. */
+    private static void execPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("DatabaseTuning[");
+        builder.append(writeAheadLogging ? "WAL" : "default journal");
+        if (synchronous != null) {
+            builder.append(", synchronous=").append(synchronous);
+        }
+        if (tempStore != null) {
+            builder.append(", temp_store=").append(tempStore);
+        }
+        if (mmapSize != -1) {
+            builder.append(", mmap_size=").append(mmapSize);
+        }
+        if (cacheSize != UNSET) {
+            builder.append(", cache_size=").append(cacheSize);
+        }
+        if (walAutoCheckpoint != UNSET) {
+            builder.append(", wal_autocheckpoint=").append(walAutoCheckpoint);
+        }
+        if (statementCacheSize > 0) {
+            builder.append(", statement cache=").append(statementCacheSize);
+        }
+        return builder.append(']').toString();
+    }
+}
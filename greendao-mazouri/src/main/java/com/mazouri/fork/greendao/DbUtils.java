@@ -4,11 +4,21 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.mazouri.fork.greendao.internal.SqlScriptReader;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Database utils, for example to execute SQL scripts
@@ -21,6 +31,9 @@ public class DbUtils {
         db.execSQL("VACUUM");
     }
 
+    /** Number of prepared statements kept while executing a script, see {@link SqlScriptReader}. */
+    private static final int SCRIPT_STATEMENT_CACHE_SIZE = 16;
+
     /**
      * Calls {@link #executeSqlScript(Context, SQLiteDatabase, String, boolean)} with transactional set to true.
      *
@@ -31,28 +44,130 @@ public class DbUtils {
     }
 
     /**
-     * Executes the given SQL asset in the given database (SQL file should be UTF-8). The database file may contain
-     * multiple SQL statements. Statements are split using a simple regular expression (something like
-     * "semicolon before a line break"), not by analyzing the SQL syntax. This will work for many SQL files, but check
-     * yours.
+     * Executes the given SQL asset in the given database (SQL file should be UTF-8), see
+     * {@link #executeSqlScript(SQLiteDatabase, InputStream, boolean, int, SqlScriptListener)}. If transactional, the
+     * whole script runs in one transaction.
      *
      * @return number of statements executed.
      */
     public static int executeSqlScript(Context context, SQLiteDatabase db, String assetFilename, boolean transactional)
             throws IOException {
-        byte[] bytes = readAsset(context, assetFilename);
-        String sql = new String(bytes, "UTF-8");
-        String[] lines = sql.split(";(\\s)*[\n\r]");
+        InputStream in = context.getResources().getAssets().open(assetFilename);
         int count;
-        if (transactional) {
-            count = executeSqlStatementsInTx(db, lines);
-        } else {
-            count = executeSqlStatements(db, lines);
+        try {
+            count = executeSqlScript(db, in, transactional, 0, null);
+        } finally {
+            in.close();
         }
         DaoLog.i("Executed " + count + " statements from SQL script '" + assetFilename + "'");
         return count;
     }
 
+    /**
+     * Executes the SQL script (UTF-8) read from the given stream while reading it, so the script is never held in
+     * memory as a whole. Statements are separated by semicolons outside of literals, quoted identifiers and comments;
+     * trigger bodies are kept together (see {@link SqlScriptReader}). The literals of INSERT ... VALUES statements are
+     * bound to cached prepared statements, so inserts into the same table are compiled only once.
+     * <p/>
+     * If transactional, every chunk of statements is committed in its own transaction; if a statement fails, its chunk
+     * is rolled back while earlier chunks stay committed. The stream is not closed.
+     *
+     * @param chunkSize The number of statements per transaction and progress report; 0 for a single chunk.
+     * @param listener  Notified after each chunk (may be null).
+     * @return number of statements executed.
+     */
+    public static int executeSqlScript(SQLiteDatabase db, InputStream in, boolean transactional, int chunkSize,
+                                       SqlScriptListener listener) throws IOException {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        CountingInputStream countingIn = new CountingInputStream(in);
+        SqlScriptReader reader = new SqlScriptReader(new InputStreamReader(countingIn, "UTF-8"));
+        reader.setParameterizeInserts(true);
+        Map<String, SQLiteStatement> statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > SCRIPT_STATEMENT_CACHE_SIZE) {
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+        int count = 0;
+        int chunkCount = 0;
+        boolean inTransaction = false;
+        try {
+            while (reader.next()) {
+                if (transactional && !inTransaction) {
+                    db.beginTransaction();
+                    inTransaction = true;
+                }
+                try {
+                    executeScriptStatement(db, reader.getSql(), reader.getBindArgs(), statements);
+                } catch (RuntimeException e) {
+                    DaoLog.e("SQL script statement at line " + reader.getLineNumber() + " failed");
+                    throw e;
+                }
+                count++;
+                if (chunkSize > 0 && ++chunkCount == chunkSize) {
+                    chunkCount = 0;
+                    if (inTransaction) {
+                        db.setTransactionSuccessful();
+                        inTransaction = false;
+                        db.endTransaction();
+                    }
+                    if (listener != null) {
+                        listener.onProgress(count, countingIn.getCount());
+                    }
+                }
+            }
+            if (inTransaction) {
+                db.setTransactionSuccessful();
+                inTransaction = false;
+                db.endTransaction();
+            }
+            if (listener != null && (chunkSize == 0 || chunkCount > 0)) {
+                listener.onProgress(count, countingIn.getCount());
+            }
+            return count;
+        } finally {
+            if (inTransaction) {
+                db.endTransaction();
+            }
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
+            }
+        }
+    }
+
+    private static void executeScriptStatement(SQLiteDatabase db, String sql, Object[] bindArgs,
+                                               Map<String, SQLiteStatement> statements) {
+        if (bindArgs == null) {
+            db.execSQL(sql);
+            return;
+        }
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        statement.clearBindings();
+        for (int i = 0; i < bindArgs.length; i++) {
+            Object arg = bindArgs[i];
+            if (arg instanceof Long) {
+                statement.bindLong(i + 1, (Long) arg);
+            } else if (arg instanceof Double) {
+                statement.bindDouble(i + 1, (Double) arg);
+            } else if (arg instanceof byte[]) {
+                statement.bindBlob(i + 1, (byte[]) arg);
+            } else {
+                statement.bindString(i + 1, (String) arg);
+            }
+        }
+        statement.execute();
+    }
+
     public static int executeSqlStatementsInTx(SQLiteDatabase db, String[] statements) {
         db.beginTransaction();
         try {
@@ -95,6 +210,44 @@ public class DbUtils {
         return byteCount;
     }
 
+    /** Counts the bytes read, to report the progress of scripts. */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
     public static byte[] readAllBytes(InputStream in) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         copyAllBytes(in, out);
@@ -110,6 +263,65 @@ public class DbUtils {
         }
     }
 
+    /**
+     * Copies a prebuilt database from the given asset to the given database file unless that file exists already, e.g.
+     * a schema snapshot built by the generator. The copy is written to a temporary file first and only moved into place
+     * if it is a SQLite database with the expected user version, so a broken or outdated asset never replaces regular
+     * schema creation.
+     *
+     * @return true if the database was copied.
+     */
+    public static boolean installDatabaseFromAsset(Context context, String assetFilename, File dbFile,
+                                                   int expectedVersion) throws IOException {
+        if (dbFile.exists()) {
+            return false;
+        }
+        File dir = dbFile.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        File tempFile = new File(dbFile.getPath() + ".tmp");
+        InputStream in = context.getResources().getAssets().open(assetFilename);
+        try {
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                copyAllBytes(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        int version = readUserVersion(tempFile);
+        if (version != expectedVersion || !tempFile.renameTo(dbFile)) {
+            tempFile.delete();
+            DaoLog.w("Did not install database from asset '" + assetFilename + "' (version " + version + ", expected "
+                    + expectedVersion + ")");
+            return false;
+        }
+        DaoLog.i("Installed database from asset '" + assetFilename + "'");
+        return true;
+    }
+
+    /** Reads the user version from the header of the given database file, or returns -1 if it is no SQLite file. */
+    private static int readUserVersion(File dbFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(dbFile, "r");
+        try {
+            byte[] header = new byte[64];
+            if (file.length() < header.length) {
+                return -1;
+            }
+            file.readFully(header);
+            if (!new String(header, 0, 16, "US-ASCII").equals("SQLite format 3\u0000")) {
+                return -1;
+            }
+            return ((header[60] & 0xff) << 24) | ((header[61] & 0xff) << 16) | ((header[62] & 0xff) << 8)
+                    | (header[63] & 0xff);
+        } finally {
+            file.close();
+        }
+    }
+
     public static void logTableDump(SQLiteDatabase db, String tablename) {
         Cursor cursor = db.query(tablename, null, null, null, null, null, null);
         try {
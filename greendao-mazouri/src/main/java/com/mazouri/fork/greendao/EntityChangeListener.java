@@ -0,0 +1,11 @@
+package com.mazouri.fork.greendao;
+
+/**
+ * Like {@link TableChangeListener}, but also receives the primary keys of the written rows, see
+ * {@link AbstractDaoSession#addEntityChangeListener(EntityChangeListener)}. Keys are only collected while at least one
+ * such listener is registered.
+ */
+public interface EntityChangeListener {
+    /** @param changes The written tables and keys; only valid during the call. */
+    void onEntitiesChanged(TableChanges changes);
+}
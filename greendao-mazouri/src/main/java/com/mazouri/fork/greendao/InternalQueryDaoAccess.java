@@ -30,6 +30,48 @@ public final class InternalQueryDaoAccess<T> {
         return dao.loadUniqueAndCloseCursor(cursor);
     }
 
+    public List<T> loadAllCached() {
+        return dao.loadAllCached();
+    }
+
+    /** Reads a new entity from the row the cursor is positioned on without attaching it. */
+    public T readEntity(Cursor cursor, int offset) {
+        return dao.readEntity(cursor, offset);
+    }
+
+    public Object getKey(T entity) {
+        return dao.getKey(entity);
+    }
+
+    public Object getPropertyValue(T entity, int ordinal) {
+        return dao.getPropertyValue(entity, ordinal);
+    }
+
+    /**
+     * Inserts (or replaces) the given entities inside the transaction of the current thread and returns their row IDs.
+     * Unlike the InTx methods of the DAO, a failure does not mark the enclosing transaction as failed.
+     */
+    public long[] insertInCurrentTx(List<T> entities, boolean replace) {
+        return dao.insertInCurrentTx(entities, replace);
+    }
+
+    /** Updates the given entities inside the transaction of the current thread, see {@link #insertInCurrentTx}. */
+    public void updateInCurrentTx(List<T> entities) {
+        dao.updateInCurrentTx(entities);
+    }
+
+    /**
+     * Deletes the given entities or the entities with the given keys inside the transaction of the current thread, see
+     * {@link #insertInCurrentTx}.
+     */
+    public void deleteInCurrentTx(List<T> entities, List<?> keys) {
+        dao.deleteInCurrentTx(entities, keys);
+    }
+
+    public void onTableChanged() {
+        dao.onTableChanged();
+    }
+
     public TableStatements getStatements() {
         return dao.getStatements();
     }
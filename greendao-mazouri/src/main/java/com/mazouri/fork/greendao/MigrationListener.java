@@ -0,0 +1,19 @@
+package com.mazouri.fork.greendao;
+
+/**
+ * Follows the steps of a {@link SchemaMigrator}, e.g. to show upgrade progress or to log the time spent per step. All
+ * methods are called on the thread running the migration.
+ *
+ * 数据库迁移进度监听
+ */
+public interface MigrationListener {
+
+    /** Called before the step with the given index (0-based) is executed. */
+    void onStepStarted(int step, int stepCount, String description);
+
+    /** Called after each batch of rows copied while a table is rebuilt. */
+    void onRowsCopied(int step, long copiedRows, long totalRows);
+
+    /** Called after the step with the given index was executed. */
+    void onStepCompleted(int step, int stepCount, String description, long millis);
+}
@@ -58,6 +58,22 @@ public class Property {
         return in(inValues.toArray());
     }
 
+    /**
+     * Creates an "IN" condition for a large number of keys (e.g. thousands of IDs), so there is no limit of SQL
+     * variables. Reads bind the keys in lists of a few fixed sizes, queried in chunks if there are too many; if the
+     * query cannot be chunked (e.g. it is ordered or limited), and for deletes, the keys are loaded into a temporary
+     * table in a transaction, which blocks other writers while it runs. Supported for list, unique, count and delete queries; not for lazy lists and cursors. To
+     * change the keys of a built query, pass a long[] or Collection to setParameter.
+     */
+    public WhereCondition inLarge(long[] keys) {
+        return new WhereCondition.LargeInCondition(this, keys);
+    }
+
+    /** See {@link #inLarge(long[])}. */
+    public WhereCondition inLarge(Collection<?> keys) {
+        return new WhereCondition.LargeInCondition(this, keys);
+    }
+
     /** Creates an "NOT IN (..., ..., ...)" condition  for this property. */
     public WhereCondition notIn(Object... notInValues) {
         StringBuilder condition = new StringBuilder(" NOT IN (");
@@ -0,0 +1,189 @@
+package com.mazouri.fork.greendao;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executes the steps of a schema upgrade, usually generated into DaoMaster.migrate by the generator: plain statements
+ * like ALTER TABLE ADD COLUMN and index changes, and table rebuilds for changes SQLite cannot apply in place. A rebuild
+ * creates the new table, copies the rows in batches of ascending rowids and replaces the old table; the batches keep
+ * each statement short and allow reporting progress.
+ * <p/>
+ * All steps run in one transaction, so a failed upgrade leaves the database unchanged. When called from
+ * SQLiteOpenHelper.onUpgrade, the helper's transaction also covers the new schema version.
+ *
+ * 增量数据库迁移
+ */
+public class SchemaMigrator {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static abstract class Step {
+        final String description;
+
+        Step(String description) {
+            this.description = description;
+        }
+
+        abstract void execute(int index);
+    }
+
+    private final SQLiteDatabase db;
+    private final MigrationListener listener;
+    private final List<Step> steps;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long[] stepMillis;
+
+    /** @param listener Notified about the progress of the migration (may be null). */
+    public SchemaMigrator(SQLiteDatabase db, MigrationListener listener) {
+        this.db = db;
+        this.listener = listener;
+        steps = new ArrayList<Step>();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /** Sets the number of rows copied per statement while rebuilding a table. */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Illegal batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /** Adds a step executing the given statement. */
+    public SchemaMigrator execSQL(String description, final String sql) {
+        steps.add(new Step(description) {
+            @Override
+            void execute(int index) {
+                db.execSQL(sql);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Adds a step replacing the given table by a table with the given column definitions. The rows are copied by
+     * evaluating sourceExpressions on the old table (usually the old columns kept, and default values for new NOT NULL
+     * columns) into targetColumns. Indexes of the old table are dropped with it; add steps to recreate them.
+     *
+     * @param columnDefinitions The part of CREATE TABLE inside the brackets.
+     * @param targetColumns     Comma separated, quoted columns of the new table to copy into.
+     * @param sourceExpressions Comma separated expressions on the old table, one for each of targetColumns.
+     */
+    public SchemaMigrator rebuildTable(final String tablename, final String columnDefinitions,
+                                       final String targetColumns, final String sourceExpressions) {
+        steps.add(new Step("Rebuild table " + tablename) {
+            @Override
+            void execute(int index) {
+                rebuild(index, tablename, columnDefinitions, targetColumns, sourceExpressions);
+            }
+        });
+        return this;
+    }
+
+    public int getStepCount() {
+        return steps.size();
+    }
+
+    /** The time spent per step by the last {@link #migrate()} or null. */
+    public long[] getStepMillis() {
+        return stepMillis;
+    }
+
+    /**
+     * Executes all steps in one transaction.
+     *
+     * @return The time spent in milliseconds.
+     */
+    public long migrate() {
+        int count = steps.size();
+        long[] millis = new long[count];
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                Step step = steps.get(i);
+                if (listener != null) {
+                    listener.onStepStarted(i, count, step.description);
+                }
+                long stepStart = System.nanoTime();
+                try {
+                    step.execute(i);
+                } catch (RuntimeException e) {
+                    throw new DaoException("Migration step failed: " + step.description, e);
+                }
+                millis[i] = (System.nanoTime() - stepStart) / 1000000;
+                DaoLog.d("Migration step " + (i + 1) + "/" + count + " (" + step.description + ") took " + millis[i]
+                        + "ms");
+                if (listener != null) {
+                    listener.onStepCompleted(i, count, step.description, millis[i]);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        stepMillis = millis;
+        long time = (System.nanoTime() - start) / 1000000;
+        DaoLog.i("Migrated schema in " + count + " steps in " + time + "ms");
+        return time;
+    }
+
+    private void rebuild(int index, String tablename, String columnDefinitions, String targetColumns,
+                         String sourceExpressions) {
+        String table = '"' + tablename + '"';
+        String newTable = "\"" + tablename + "__greendao_new\"";
+        db.execSQL("DROP TABLE IF EXISTS " + newTable);
+        db.execSQL("CREATE TABLE " + newTable + " (" + columnDefinitions + ")");
+
+        String insert = "INSERT INTO " + newTable + " (" + targetColumns + ") SELECT " + sourceExpressions + " FROM "
+                + table + " WHERE rowid>?";
+        SQLiteStatement countStmt = db.compileStatement("SELECT COUNT(*) FROM " + table);
+        SQLiteStatement boundStmt = db.compileStatement("SELECT rowid FROM " + table
+                + " WHERE rowid>? ORDER BY rowid LIMIT 1 OFFSET " + (batchSize - 1));
+        SQLiteStatement copyBatchStmt = db.compileStatement(insert + " AND rowid<=?");
+        SQLiteStatement copyRestStmt = db.compileStatement(insert);
+        try {
+            long total = countStmt.simpleQueryForLong();
+            long copied = 0;
+            long lastRowId = Long.MIN_VALUE;
+            while (true) {
+                boundStmt.bindLong(1, lastRowId);
+                long upperRowId;
+                try {
+                    upperRowId = boundStmt.simpleQueryForLong();
+                } catch (SQLiteDoneException e) {
+                    // Less than a batch left
+                    copyRestStmt.bindLong(1, lastRowId);
+                    copied += copyRestStmt.executeUpdateDelete();
+                    break;
+                }
+                copyBatchStmt.bindLong(1, lastRowId);
+                copyBatchStmt.bindLong(2, upperRowId);
+                copied += copyBatchStmt.executeUpdateDelete();
+                lastRowId = upperRowId;
+                if (listener != null) {
+                    listener.onRowsCopied(index, copied, total);
+                }
+            }
+            if (listener != null) {
+                listener.onRowsCopied(index, copied, total);
+            }
+        } finally {
+            countStmt.close();
+            boundStmt.close();
+            copyBatchStmt.close();
+            copyRestStmt.close();
+        }
+
+        db.execSQL("DROP TABLE " + table);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + table);
+    }
+}
@@ -0,0 +1,16 @@
+package com.mazouri.fork.greendao;
+
+/**
+ * Reports the progress of {@link DbUtils#executeSqlScript(android.database.sqlite.SQLiteDatabase,
+ * java.io.InputStream, boolean, int, SqlScriptListener)}, called on the executing thread after each chunk.
+ *
+ * SQL脚本执行进度监听
+ */
+public interface SqlScriptListener {
+
+    /**
+     * @param statements The number of statements executed (and committed if the script runs in transactions).
+     * @param bytesRead  The number of script bytes read so far; the reader reads ahead of the executed statements.
+     */
+    void onProgress(int statements, long bytesRead);
+}
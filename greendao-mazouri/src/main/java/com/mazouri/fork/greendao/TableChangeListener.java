@@ -0,0 +1,18 @@
+package com.mazouri.fork.greendao;
+
+import java.util.Set;
+
+/**
+ * Notified about tables written through the DAOs of a session, see
+ * {@link AbstractDaoSession#addTableChangeListener(TableChangeListener)}. Changes made inside a transaction of the
+ * session are announced once after the transaction committed and not at all if it was rolled back. Changes inside
+ * transactions begun directly on the database are announced when the session is used again on the writing thread after
+ * the transaction ended, even if it was rolled back.<br/>
+ * Listeners are called on the writing thread, so they should return quickly (e.g. schedule work elsewhere).
+ *
+ * 表变更的监听，事务提交后统一通知
+ */
+public interface TableChangeListener {
+    /** @param tablenames Names of the written tables; do not modify. */
+    void onTablesChanged(Set<String> tablenames);
+}
@@ -0,0 +1,63 @@
+package com.mazouri.fork.greendao;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The tables and primary keys written by a committed transaction (or a single write outside of transactions), passed
+ * to {@link EntityChangeListener}s. Keys are unknown for writes not addressing rows by key (e.g.
+ * {@link AbstractDao#deleteAll()}, {@link com.mazouri.fork.greendao.query.DeleteQuery}, entities without single-column
+ * primary key); such writes only insert or delete rows.
+ *
+ * 一次提交中被写入的表及主键
+ */
+public final class TableChanges {
+
+    /** Keys by table; a null value means the keys of the table are unknown. */
+    private final Map<String, Set<Object>> keysForTable;
+
+    TableChanges() {
+        keysForTable = new HashMap<String, Set<Object>>();
+    }
+
+    /** @param keys Written keys or null if unknown. */
+    void add(String tablename, Collection<?> keys) {
+        if (keys == null) {
+            keysForTable.put(tablename, null);
+        } else if (!keysForTable.containsKey(tablename)) {
+            keysForTable.put(tablename, new HashSet<Object>(keys));
+        } else {
+            Set<Object> existing = keysForTable.get(tablename);
+            if (existing != null) {
+                existing.addAll(keys);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return keysForTable.isEmpty();
+    }
+
+    public Set<String> getTablenames() {
+        return Collections.unmodifiableSet(keysForTable.keySet());
+    }
+
+    public boolean contains(String tablename) {
+        return keysForTable.containsKey(tablename);
+    }
+
+    /** Returns the written keys of the given table, or null if the table was not written or its keys are unknown. */
+    public Set<Object> getKeys(String tablename) {
+        Set<Object> keys = keysForTable.get(tablename);
+        return keys != null ? Collections.unmodifiableSet(keys) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "TableChanges" + keysForTable;
+    }
+}
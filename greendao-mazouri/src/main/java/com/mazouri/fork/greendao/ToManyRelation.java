@@ -0,0 +1,51 @@
+package com.mazouri.fork.greendao;
+
+import java.util.List;
+
+/**
+ * Meta model of a to-many relation matching a property of the source entity (usually its primary key) with a property
+ * of the target entity. Instances are generated into the "Relations" inner class of the DAOs and can be passed to
+ * {@link AbstractDao#resolveToMany(List, ToManyRelation)}. To-many relations using a join entity are not modelled.
+ *
+ * 对多关系的元数据，由生成的Dao提供
+ *
+ * @param <S> Source entity owning the to-many list.
+ * @param <T> Target entity referencing the source.
+ */
+public abstract class ToManyRelation<S, T> {
+
+    public final Class<S> sourceEntityClass;
+    public final Class<T> targetEntityClass;
+    public final String name;
+    public final Property sourceProperty;
+    public final Property targetProperty;
+    /** Raw ORDER BY clause for the target entities (using table prefix "T") or null. */
+    public final String order;
+
+    public ToManyRelation(Class<S> sourceEntityClass, Class<T> targetEntityClass, String name,
+                          Property sourceProperty, Property targetProperty, String order) {
+        this.sourceEntityClass = sourceEntityClass;
+        this.targetEntityClass = targetEntityClass;
+        this.name = name;
+        this.sourceProperty = sourceProperty;
+        this.targetProperty = targetProperty;
+        this.order = order;
+    }
+
+    /** Returns the value of the source property of the given source entity (may be null). */
+    public abstract Object getSourceKey(S source);
+
+    /** Returns the value of the target property of the given target entity (may be null). */
+    public abstract Object getTargetKey(T target);
+
+    /** Returns true if the to-many list of the given source is already resolved. */
+    public abstract boolean isResolved(S source);
+
+    /** Sets the given list as the resolved to-many list of the given source. */
+    public abstract void setResolved(S source, List<T> targets);
+
+    @Override
+    public String toString() {
+        return "ToManyRelation " + sourceEntityClass.getSimpleName() + "." + name;
+    }
+}
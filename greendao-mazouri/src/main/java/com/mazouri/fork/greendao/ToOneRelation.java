@@ -0,0 +1,43 @@
+package com.mazouri.fork.greendao;
+
+/**
+ * Meta model of a to-one relation based on a foreign key property. Instances are generated into the "Relations" inner
+ * class of the DAOs and can be passed to {@link com.mazouri.fork.greendao.query.QueryBuilder#fetch(ToOneRelation,
+ * ToOneRelation[])} and {@link AbstractDao#resolveToOne(java.util.List, ToOneRelation)}.
+ *
+ * 对一关系的元数据，由生成的Dao提供
+ *
+ * @param <S> Source entity holding the foreign key.
+ * @param <T> Target entity referenced by the foreign key.
+ */
+public abstract class ToOneRelation<S, T> {
+
+    public final Class<S> sourceEntityClass;
+    public final Class<T> targetEntityClass;
+    public final String name;
+    public final Property fkProperty;
+
+    public ToOneRelation(Class<S> sourceEntityClass, Class<T> targetEntityClass, String name, Property fkProperty) {
+        this.sourceEntityClass = sourceEntityClass;
+        this.targetEntityClass = targetEntityClass;
+        this.name = name;
+        this.fkProperty = fkProperty;
+    }
+
+    /** Returns the current foreign key value of the given source entity (may be null). */
+    public abstract Object getForeignKey(S source);
+
+    /** Returns true if the to-one of the given source is resolved for the source's current foreign key. */
+    public abstract boolean isResolved(S source);
+
+    /**
+     * Sets the given target (may be null) as the resolved to-one for the source's current foreign key without changing
+     * the foreign key. The to-one getter will return it without loading.
+     */
+    public abstract void setResolved(S source, T target);
+
+    @Override
+    public String toString() {
+        return "ToOneRelation " + sourceEntityClass.getSimpleName() + "." + name;
+    }
+}
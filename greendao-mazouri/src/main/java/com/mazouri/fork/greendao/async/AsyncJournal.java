@@ -0,0 +1,633 @@
+package com.mazouri.fork.greendao.async;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.mazouri.fork.greendao.AbstractDao;
+import com.mazouri.fork.greendao.AbstractDaoSession;
+import com.mazouri.fork.greendao.DaoException;
+import com.mazouri.fork.greendao.DaoLog;
+import com.mazouri.fork.greendao.InternalQueryDaoAccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the single entity writes (Insert, InsertOrReplace, Update, Delete and DeleteByKey) of an
+ * {@link AsyncSession}, see {@link AsyncSession#enableJournal(File)}. Each operation is appended to a memory-mapped file
+ * before it is enqueued; the data written to the mapping survives the death of the process (not a power loss). When
+ * an operation is executed, its record number is inserted into the table {@value #TABLE} in the same transaction, so
+ * replaying the journal on the next start skips operations that were committed already. Operations completed without
+ * executing (canceled, expired, dropped) are marked by discard records.<br/>
+ * <br/>
+ * The journal consists of segment files named after the journal file with a number appended ("journal.1", ...). Each
+ * segment is mapped once at its final size; when the active one is full, a new one is started. A segment without
+ * outstanding records is deleted (the active one is truncated instead), so the size of the journal stays bounded by
+ * the outstanding operations. Java offers no way to unmap a file: the mappings of deleted segments are released by the
+ * garbage collector.<br/>
+ * <br/>
+ * Record layout: length (int, 0 marks the end), CRC32 of the payload (int), payload. The payload starts with the record
+ * number (long) and the kind (byte), followed by the table name and the property values as stored in the database.
+ *
+ * 异步写操作的持久化日志，按段存储，进程被杀死后在下次启动时重放
+ */
+final class AsyncJournal {
+
+    static final String TABLE = "GREENDAO_ASYNC_JOURNAL";
+
+    private static final int MAGIC = 0x67444a31;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int SEGMENT_SIZE = 256 * 1024;
+
+    private static final byte KIND_INSERT = 1;
+    private static final byte KIND_INSERT_OR_REPLACE = 2;
+    private static final byte KIND_UPDATE = 3;
+    private static final byte KIND_DELETE_BY_KEY = 4;
+    private static final byte KIND_DISCARD = 5;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_LONG = 1;
+    private static final byte VALUE_DOUBLE = 2;
+    private static final byte VALUE_STRING = 3;
+    private static final byte VALUE_BLOB = 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final class Record {
+        long sequence;
+        byte kind;
+        String tablename;
+        Object[] values;
+        int end;    //offset of the next record in the segment
+    }
+
+    /** A journal file, mapped once. */
+    private static final class Segment {
+        final File file;
+        final int number;
+        final RandomAccessFile randomAccessFile;
+        final MappedByteBuffer buffer;
+        int position = HEADER_SIZE;
+        int outstandingCount;
+        long firstSequence;     //first operation record (not discard) in the segment, 0 if none
+
+        /** Maps the file with at least the given capacity; a new file gets an empty header. */
+        Segment(File file, int number, int capacity) throws IOException {
+            this.file = file;
+            this.number = number;
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                long length = channel.size();
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Journal segment too large: " + length);
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(length, capacity));
+                if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, VERSION);
+                    buffer.putInt(HEADER_SIZE, 0);
+                } else if (buffer.getInt(4) != VERSION) {
+                    throw new IOException("Unsupported journal version " + buffer.getInt(4) + " in " + file);
+                }
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+        }
+
+        void truncate() {
+            buffer.putInt(HEADER_SIZE, 0);
+            position = HEADER_SIZE;
+            firstSequence = 0;
+        }
+
+        void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                DaoLog.w("Could not close journal segment " + file, e);
+            }
+        }
+    }
+
+    private final File file;
+    /** Oldest first, the last one is active. */
+    private final List<Segment> segments = new ArrayList<Segment>();
+    /** Segments of the records of operations that did not complete yet. */
+    private final Map<Long, Segment> outstanding = new HashMap<Long, Segment>();
+    private long nextSequence;
+    private long cleanupBelowSequence;  //applied markers below are obsolete; 0 if there is nothing to clean up
+    private SQLiteStatement markStatement;  //only used by the writer lane
+
+    private AsyncJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the given journal (creating it if necessary) and replays the operations that were not committed before, in
+     * one transaction.
+     */
+    static AsyncJournal openAndReplay(File file, AbstractDaoSession daoSession) {
+        AsyncJournal journal = new AsyncJournal(file);
+        try {
+            journal.replay(daoSession);
+        } catch (IOException e) {
+            journal.close();
+            throw new DaoException("Could not open journal " + file, e);
+        } catch (RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /** The existing segment files ordered by number. */
+    private List<Segment> openSegments() throws IOException {
+        final String prefix = file.getName() + ".";
+        File directory = file.getAbsoluteFile().getParentFile();
+        String[] names = directory.list();
+        List<Integer> numbers = new ArrayList<Integer>();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix)) {
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(prefix.length())));
+                    } catch (NumberFormatException e) {
+                        // Not a segment
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers);
+        List<Segment> existing = new ArrayList<Segment>(numbers.size());
+        try {
+            for (int number : numbers) {
+                existing.add(new Segment(new File(directory, prefix + number), number, HEADER_SIZE + 4));
+            }
+        } catch (IOException e) {
+            for (Segment segment : existing) {
+                segment.close();
+            }
+            throw e;
+        }
+        return existing;
+    }
+
+    /**
+     * Replays the records of all segments, reading them one by one: a first pass collects the discarded records, the
+     * second one applies the others. All segments are deleted afterwards and a new one is started.
+     */
+    private void replay(AbstractDaoSession daoSession) throws IOException {
+        SQLiteDatabase db = daoSession.getDatabase();
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " (SEQ INTEGER PRIMARY KEY)");
+        List<Segment> existing = openSegments();
+        int nextNumber = 1;
+        try {
+            Set<Long> discarded = new HashSet<Long>();
+            long maxSequence = queryMaxAppliedSequence(db);
+            long minSequence = Long.MAX_VALUE;
+            int recordCount = 0;
+            for (Segment segment : existing) {
+                nextNumber = segment.number + 1;
+                for (Record record = read(segment, HEADER_SIZE); record != null; record = read(segment, record.end)) {
+                    maxSequence = Math.max(maxSequence, record.sequence);
+                    minSequence = Math.min(minSequence, record.sequence);
+                    recordCount++;
+                    if (record.kind == KIND_DISCARD) {
+                        discarded.add(record.sequence);
+                    }
+                }
+            }
+            nextSequence = maxSequence + 1;
+            if (recordCount > 0) {
+                Set<Long> applied = queryAppliedSequences(db, minSequence);
+                Map<String, AbstractDao<Object, Object>> daos = daosByTablename(daoSession);
+                int replayedCount = 0;
+                daoSession.beginTransaction();
+                try {
+                    for (Segment segment : existing) {
+                        for (Record record = read(segment, HEADER_SIZE); record != null;
+                             record = read(segment, record.end)) {
+                            if (record.kind != KIND_DISCARD && !discarded.contains(record.sequence)
+                                    && !applied.contains(record.sequence)) {
+                                apply(daos, record);
+                                markApplied(db, record.sequence);
+                                replayedCount++;
+                            }
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    daoSession.endTransaction();
+                }
+                DaoLog.i("Replayed " + replayedCount + " of " + recordCount + " journal records from " + file);
+            }
+        } finally {
+            for (Segment segment : existing) {
+                segment.close();
+            }
+        }
+        for (Segment segment : existing) {
+            delete(segment);
+        }
+        segments.add(new Segment(segmentFile(nextNumber), nextNumber, SEGMENT_SIZE));
+        // The journal is empty now, all markers are obsolete
+        db.execSQL("DELETE FROM " + TABLE);
+    }
+
+    private File segmentFile(int number) {
+        return new File(file.getPath() + "." + number);
+    }
+
+    /**
+     * Deletes the file of the given closed segment. Its records are removed from the mapping first, so they are not
+     * replayed even if the file cannot be deleted; their markers may be cleaned up then.
+     */
+    private void delete(Segment segment) {
+        segment.truncate();
+        if (!segment.file.delete() && segment.file.exists()) {
+            DaoLog.w("Could not delete journal segment " + segment.file);
+        }
+    }
+
+    private static long queryMaxAppliedSequence(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT MAX(SEQ) FROM " + TABLE, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Set<Long> queryAppliedSequences(SQLiteDatabase db, long minSequence) {
+        Set<Long> sequences = new HashSet<Long>();
+        Cursor cursor = db.rawQuery("SELECT SEQ FROM " + TABLE + " WHERE SEQ>=?",
+                new String[]{String.valueOf(minSequence)});
+        try {
+            while (cursor.moveToNext()) {
+                sequences.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return sequences;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, AbstractDao<Object, Object>> daosByTablename(AbstractDaoSession daoSession) {
+        Map<String, AbstractDao<Object, Object>> daos = new HashMap<String, AbstractDao<Object, Object>>();
+        for (AbstractDao<?, ?> dao : daoSession.getAllDaos()) {
+            daos.put(dao.getTablename(), (AbstractDao<Object, Object>) dao);
+        }
+        return daos;
+    }
+
+    /** Failures are logged and skipped: the operation would have failed the same way before. */
+    private void apply(Map<String, AbstractDao<Object, Object>> daos, Record record) {
+        AbstractDao<Object, Object> dao = daos.get(record.tablename);
+        if (dao == null) {
+            DaoLog.w("Skipping journal record " + record.sequence + ": no DAO for table " + record.tablename);
+            return;
+        }
+        try {
+            switch (record.kind) {
+                case KIND_INSERT:
+                    dao.insert(readEntity(dao, record.values));
+                    break;
+                case KIND_INSERT_OR_REPLACE:
+                    dao.insertOrReplace(readEntity(dao, record.values));
+                    break;
+                case KIND_UPDATE:
+                    dao.update(readEntity(dao, record.values));
+                    break;
+                case KIND_DELETE_BY_KEY:
+                    dao.deleteByKey(record.values[0]);
+                    break;
+                default:
+                    DaoLog.w("Skipping journal record " + record.sequence + " of unknown kind " + record.kind);
+            }
+        } catch (RuntimeException e) {
+            DaoLog.w("Replaying journal record " + record.sequence + " failed", e);
+        }
+    }
+
+    /** Creates an entity from the values as stored in the database by reading them like a query result. */
+    private static Object readEntity(AbstractDao<Object, Object> dao, Object[] values) {
+        MatrixCursor cursor = new MatrixCursor(dao.getAllColumns(), 1);
+        try {
+            cursor.addRow(values);
+            cursor.moveToFirst();
+            return new InternalQueryDaoAccess<Object>(dao).readEntity(cursor, 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads the record at the given offset of the segment.
+     *
+     * @return null at the end marker or if the record is incomplete (the process died while writing it)
+     */
+    private Record read(Segment segment, int offset) {
+        MappedByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        if (offset + 8 > capacity) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || length > capacity - offset - 8) {
+            return null;
+        }
+        int crc = buffer.getInt(offset + 4);
+        byte[] payload = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + 8);
+        source.get(payload);
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, length);
+        if ((int) crc32.getValue() != crc) {
+            DaoLog.w("Journal segment " + segment.file + " has a corrupt record at " + offset + ", ignoring the rest");
+            return null;
+        }
+        Record record = parse(ByteBuffer.wrap(payload));
+        record.end = offset + 8 + length;
+        return record;
+    }
+
+    private static Record parse(ByteBuffer payload) {
+        Record record = new Record();
+        record.sequence = payload.getLong();
+        record.kind = payload.get();
+        if (record.kind != KIND_DISCARD) {
+            record.tablename = (String) readValue(payload);
+            int count = payload.getInt();
+            record.values = new Object[count];
+            for (int i = 0; i < count; i++) {
+                record.values[i] = readValue(payload);
+            }
+        }
+        return record;
+    }
+
+    private static Object readValue(ByteBuffer payload) {
+        byte type = payload.get();
+        switch (type) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_LONG:
+                return payload.getLong();
+            case VALUE_DOUBLE:
+                return payload.getDouble();
+            case VALUE_STRING:
+            case VALUE_BLOB:
+                byte[] bytes = new byte[payload.getInt()];
+                payload.get(bytes);
+                return type == VALUE_BLOB ? bytes : new String(bytes, UTF8);
+            default:
+                throw new DaoException("Unknown value type in journal: " + type);
+        }
+    }
+
+    /** @return true if operations of the given type are journaled. */
+    static boolean isJournaled(AsyncOperation operation) {
+        if (operation.dao == null) {
+            return false;
+        }
+        switch (operation.type) {
+            case Insert:
+            case InsertOrReplace:
+            case Update:
+            case Delete:
+            case DeleteByKey:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Appends the given operation, see {@link #isJournaled(AsyncOperation)}.
+     *
+     * @return The record number or 0 if the operation cannot be journaled (e.g. deleting an entity without key); it
+     * then fails when executed.
+     */
+    synchronized long append(AsyncOperation operation) {
+        InternalQueryDaoAccess<Object> daoAccess = new InternalQueryDaoAccess<Object>(operation.dao);
+        byte kind;
+        Object[] values;
+        switch (operation.type) {
+            case Insert:
+            case InsertOrReplace:
+            case Update:
+                kind = operation.type == AsyncOperation.OperationType.Insert ? KIND_INSERT
+                        : operation.type == AsyncOperation.OperationType.Update ? KIND_UPDATE : KIND_INSERT_OR_REPLACE;
+                values = new Object[operation.dao.getProperties().length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = daoAccess.getPropertyValue(operation.parameter, i);
+                }
+                break;
+            case Delete:
+                kind = KIND_DELETE_BY_KEY;
+                values = new Object[]{daoAccess.getKey(operation.parameter)};
+                break;
+            case DeleteByKey:
+                kind = KIND_DELETE_BY_KEY;
+                values = new Object[]{operation.parameter};
+                break;
+            default:
+                throw new DaoException("Unsupported operation: " + operation.type);
+        }
+        if (kind == KIND_DELETE_BY_KEY && !(values[0] instanceof Long || values[0] instanceof String)) {
+            return 0;
+        }
+        long sequence = nextSequence++;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(sequence);
+            out.writeByte(kind);
+            writeValue(out, operation.dao.getTablename());
+            out.writeInt(values.length);
+            for (Object value : values) {
+                writeValue(out, value);
+            }
+        } catch (IOException e) {
+            throw new DaoException("Could not serialize " + operation.type, e);
+        }
+        Segment segment = write(bytes.toByteArray());
+        if (segment.firstSequence == 0) {
+            segment.firstSequence = sequence;
+        }
+        segment.outstandingCount++;
+        outstanding.put(sequence, segment);
+        return sequence;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof Long) {
+            out.writeByte(VALUE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(VALUE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String || value instanceof byte[]) {
+            byte[] data = value instanceof String ? ((String) value).getBytes(UTF8) : (byte[]) value;
+            out.writeByte(value instanceof String ? VALUE_STRING : VALUE_BLOB);
+            out.writeInt(data.length);
+            out.write(data);
+        } else {
+            throw new DaoException("Cannot journal value of " + value.getClass());
+        }
+    }
+
+    /**
+     * Writes the payload after the last record of the active segment, starting a new segment if it is full. The end
+     * marker after the new record is written before its length, so a process dying in between leaves the segment ending
+     * before the new record.
+     *
+     * @return the segment written to
+     */
+    private Segment write(byte[] payload) {
+        Segment segment = segments.get(segments.size() - 1);
+        int required = segment.position + 8 + payload.length + 4;
+        if (required > segment.buffer.capacity()) {
+            segment = startSegment(HEADER_SIZE + 8 + payload.length + 4);
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.position;
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, payload.length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + 8);
+        target.put(payload);
+        buffer.putInt(position + 4, (int) crc32.getValue());
+        int end = position + 8 + payload.length;
+        buffer.putInt(end, 0);
+        buffer.putInt(position, payload.length);
+        segment.position = end;
+        return segment;
+    }
+
+    /** Starts a new active segment; the previous one is released if none of its records is outstanding. */
+    private Segment startSegment(int requiredCapacity) {
+        Segment previous = segments.get(segments.size() - 1);
+        int number = previous.number + 1;
+        Segment segment;
+        try {
+            segment = new Segment(segmentFile(number), number, Math.max(SEGMENT_SIZE, requiredCapacity));
+        } catch (IOException e) {
+            throw new DaoException("Could not start journal segment " + number + " of " + file, e);
+        }
+        segments.add(segment);
+        if (previous.outstandingCount == 0) {
+            release(previous);
+        }
+        return segment;
+    }
+
+    /**
+     * Called after a journaled operation completed. If it was not executed, a discard record keeps it from being
+     * replayed. A segment whose records all completed is deleted, or truncated if it is the active one.
+     */
+    synchronized void onCompleted(AsyncOperation operation) {
+        if (operation.startedNanos == 0) {
+            ByteBuffer payload = ByteBuffer.allocate(9);
+            payload.putLong(operation.journalSequence);
+            payload.put(KIND_DISCARD);
+            write(payload.array());
+        }
+        Segment segment = outstanding.remove(operation.journalSequence);
+        if (segment != null && --segment.outstandingCount == 0) {
+            Segment active = segments.get(segments.size() - 1);
+            if (segment != active) {
+                release(segment);
+            }
+            if (segments.size() == 1 && active.outstandingCount == 0) {
+                active.truncate();
+                cleanupBelowSequence = nextSequence;
+            }
+        }
+    }
+
+    /** Deletes the given segment, which is not the active one; applied markers of its records become obsolete. */
+    private void release(Segment segment) {
+        segments.remove(segment);
+        segment.close();
+        delete(segment);
+        long lowest = nextSequence;
+        for (Segment remaining : segments) {
+            if (remaining.firstSequence != 0) {
+                lowest = remaining.firstSequence;
+                break;
+            }
+        }
+        cleanupBelowSequence = lowest;
+    }
+
+    /**
+     * Marks the journaled operations among the given ones as applied; call inside the transaction that executed them.
+     *
+     * @return false if the markers could not be written; the transaction must then be rolled back.
+     */
+    boolean markApplied(SQLiteDatabase db, List<AsyncOperation> operations) {
+        try {
+            long cleanupBelow;
+            synchronized (this) {
+                cleanupBelow = cleanupBelowSequence;
+                cleanupBelowSequence = 0;
+            }
+            if (cleanupBelow != 0) {
+                db.execSQL("DELETE FROM " + TABLE + " WHERE SEQ<?", new Object[]{cleanupBelow});
+            }
+            for (AsyncOperation operation : operations) {
+                if (operation.journalSequence != 0) {
+                    markApplied(db, operation.journalSequence);
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            DaoLog.w("Could not mark journaled operations as applied", e);
+            return false;
+        }
+    }
+
+    private void markApplied(SQLiteDatabase db, long sequence) {
+        if (markStatement == null) {
+            markStatement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE + " (SEQ) VALUES (?)");
+        }
+        synchronized (markStatement) {
+            markStatement.bindLong(1, sequence);
+            markStatement.execute();
+        }
+    }
+
+    synchronized void close() {
+        if (markStatement != null) {
+            markStatement.close();
+        }
+        for (Segment segment : segments) {
+            segment.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.mazouri.fork.greendao.async;
+
+import com.mazouri.fork.greendao.DaoLog;
+import com.mazouri.fork.greendao.async.AsyncOperation.OperationType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregated numbers of the operations of an {@link AsyncSession}: latency histograms per {@link OperationType} for the
+ * time spent queued (enqueue to start) and executing (start to completion, including the rest of a merged transaction),
+ * the queue depth high-water mark, merge effectiveness and failure counts. All methods are thread-safe; histograms
+ * are returned as snapshots.
+ *
+ * 异步操作的延迟、队列深度、合并与失败统计
+ */
+public final class AsyncMetrics {
+
+    private static final ScheduledExecutorService REPORTER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "greenDAO-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Map<OperationType, LatencyHistogram> queueWaitHistograms;
+    private final Map<OperationType, LatencyHistogram> executionHistograms;
+    private final Map<OperationType, long[]> failedCounts;
+
+    private long completedCount;
+    private long failedCount;
+    private long canceledCount;
+    private long droppedCount;
+    private long expiredCount;
+    private int queueHighWaterMark;
+    private long mergeableTransactionCount;
+    private long mergeableOperationCount;
+    private long mergeFallbackCount;
+
+    private ScheduledFuture<?> reporterFuture;  //guarded by this
+
+    AsyncMetrics() {
+        queueWaitHistograms = new EnumMap<OperationType, LatencyHistogram>(OperationType.class);
+        executionHistograms = new EnumMap<OperationType, LatencyHistogram>(OperationType.class);
+        failedCounts = new EnumMap<OperationType, long[]>(OperationType.class);
+    }
+
+    synchronized void onQueued(int queuedCount) {
+        if (queuedCount > queueHighWaterMark) {
+            queueHighWaterMark = queuedCount;
+        }
+    }
+
+    /** Records a completed operation; histograms only include operations that were executed. */
+    synchronized void onCompleted(AsyncOperation operation, long completedNanos) {
+        completedCount++;
+        if (operation.isCancelled()) {
+            canceledCount++;
+            return;
+        } else if (operation.isDropped()) {
+            droppedCount++;
+            return;
+        } else if (operation.isExpired()) {
+            expiredCount++;
+            return;
+        }
+        if (operation.isFailed()) {
+            failedCount++;
+            long[] count = failedCounts.get(operation.type);
+            if (count == null) {
+                count = new long[1];
+                failedCounts.put(operation.type, count);
+            }
+            count[0]++;
+        }
+        long startedNanos = operation.startedNanos;
+        if (startedNanos != 0) {
+            histogram(queueWaitHistograms, operation.type).record((startedNanos - operation.enqueuedNanos) / 1000);
+            histogram(executionHistograms, operation.type).record((completedNanos - startedNanos) / 1000);
+        }
+    }
+
+    private static LatencyHistogram histogram(Map<OperationType, LatencyHistogram> histograms, OperationType type) {
+        LatencyHistogram histogram = histograms.get(type);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(type, histogram);
+        }
+        return histogram;
+    }
+
+    /** A transaction executing the given count of mergeable operations committed. */
+    synchronized void onMergeableTransaction(int operationCount) {
+        mergeableTransactionCount++;
+        mergeableOperationCount += operationCount;
+    }
+
+    /** A merged transaction was rolled back and its operations executed one by one. */
+    synchronized void onMergeFallback() {
+        mergeFallbackCount++;
+    }
+
+    /** Time from enqueue to start of the given operation type or null if none was executed yet. */
+    public synchronized LatencyHistogram getQueueWaitHistogram(OperationType type) {
+        LatencyHistogram histogram = queueWaitHistograms.get(type);
+        return histogram != null ? histogram.copy() : null;
+    }
+
+    /** Time from start to completion of the given operation type or null if none was executed yet. */
+    public synchronized LatencyHistogram getExecutionHistogram(OperationType type) {
+        LatencyHistogram histogram = executionHistograms.get(type);
+        return histogram != null ? histogram.copy() : null;
+    }
+
+    /** Completed operations including failed, canceled and dropped ones. */
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    /** Executed operations that failed (not including canceled, expired or dropped ones). */
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized long getFailedCount(OperationType type) {
+        long[] count = failedCounts.get(type);
+        return count != null ? count[0] : 0;
+    }
+
+    public synchronized long getCanceledCount() {
+        return canceledCount;
+    }
+
+    /** Operations not executed because their deadline expired, see {@link AsyncOperation#setTimeout(long)}. */
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /** Operations dropped by {@link AsyncSession.Backpressure#DROP_OLDEST_LOW_PRIORITY}. */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Largest count of queued operations (not started yet) seen at the same time. */
+    public synchronized int getQueueHighWaterMark() {
+        return queueHighWaterMark;
+    }
+
+    /** Committed transactions that executed mergeable operations (merged or alone). */
+    public synchronized long getMergeableTransactionCount() {
+        return mergeableTransactionCount;
+    }
+
+    /** Mergeable operations per committed transaction; 1 means nothing was merged, 0 if there were none. */
+    public synchronized double getMergeRatio() {
+        return mergeableTransactionCount > 0 ? (double) mergeableOperationCount / mergeableTransactionCount : 0;
+    }
+
+    /** Merged transactions rolled back because an operation failed, whose operations were executed one by one. */
+    public synchronized long getMergeFallbackCount() {
+        return mergeFallbackCount;
+    }
+
+    /** Resets all numbers, e.g. after reporting them. */
+    public synchronized void reset() {
+        queueWaitHistograms.clear();
+        executionHistograms.clear();
+        failedCounts.clear();
+        completedCount = 0;
+        failedCount = 0;
+        canceledCount = 0;
+        droppedCount = 0;
+        expiredCount = 0;
+        queueHighWaterMark = 0;
+        mergeableTransactionCount = 0;
+        mergeableOperationCount = 0;
+        mergeFallbackCount = 0;
+    }
+
+    /** Calls the given reporter every interval; null stops reporting. */
+    synchronized void setReporter(final AsyncMetricsReporter reporter, long intervalMillis) {
+        if (reporterFuture != null) {
+            reporterFuture.cancel(false);
+            reporterFuture = null;
+        }
+        if (reporter != null) {
+            if (intervalMillis <= 0) {
+                throw new IllegalArgumentException("Illegal interval: " + intervalMillis);
+            }
+            reporterFuture = REPORTER.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reporter.report(AsyncMetrics.this);
+                    } catch (RuntimeException e) {
+                        DaoLog.e("Metrics reporter failed", e);
+                    }
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("AsyncMetrics[completed=").append(completedCount);
+        builder.append(", failed=").append(failedCount).append(", canceled=").append(canceledCount);
+        builder.append(", dropped=").append(droppedCount).append(", expired=").append(expiredCount).append(", queueHighWaterMark=").append(queueHighWaterMark);
+        builder.append(", mergeRatio=").append(String.format("%.2f", getMergeRatio()));
+        builder.append(", mergeFallbacks=").append(mergeFallbackCount);
+        for (Map.Entry<OperationType, LatencyHistogram> entry : executionHistograms.entrySet()) {
+            builder.append(", ").append(entry.getKey()).append("={queueWait: ");
+            builder.append(queueWaitHistograms.get(entry.getKey())).append("; execution: ");
+            builder.append(entry.getValue()).append('}');
+        }
+        return builder.append(']').toString();
+    }
+}
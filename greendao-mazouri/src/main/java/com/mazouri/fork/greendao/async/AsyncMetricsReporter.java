@@ -0,0 +1,13 @@
+package com.mazouri.fork.greendao.async;
+
+/**
+ * Exports the metrics of an {@link AsyncSession} periodically, see
+ * {@link AsyncSession#setMetricsReporter(AsyncMetricsReporter, long)}.
+ *
+ * 定期导出异步会话的统计数据
+ */
+public interface AsyncMetricsReporter {
+
+    /** Called on a shared background thread; the metrics keep counting while the reporter reads them. */
+    void report(AsyncMetrics metrics);
+}
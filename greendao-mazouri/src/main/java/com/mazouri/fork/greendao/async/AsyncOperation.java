@@ -4,9 +4,21 @@ import android.database.sqlite.SQLiteDatabase;
 
 import com.mazouri.fork.greendao.AbstractDao;
 import com.mazouri.fork.greendao.DaoException;
+import com.mazouri.fork.greendao.DaoLog;
+import com.mazouri.fork.greendao.query.Query;
+import com.mazouri.fork.greendao.query.QueryChunkCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * An operation that will be enqueued for asynchronous execution.
+ * An operation that will be enqueued for asynchronous execution. As a {@link Future}, it can be canceled until it
+ * starts; see {@link DaoFuture} for a typed variant with callbacks.
  *
  * 异步操作,排队进入队列,等待执行
  *
@@ -14,7 +26,13 @@ import com.mazouri.fork.greendao.DaoException;
  *
  * Created by wangdong on 16-1-18.
  */
-public class AsyncOperation {
+public class AsyncOperation implements Future<Object> {
+
+    private static final int STATE_QUEUED = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_CANCELED = 2;
+    private static final int STATE_EXPIRED = 3;
+    private static final int STATE_DROPPED = 4;
 
     //定义枚举类型，实际上对应sql中操作的类型
     public static enum OperationType {
@@ -24,7 +42,7 @@ public class AsyncOperation {
         Delete, DeleteInTxIterable, DeleteInTxArray, //
         DeleteByKey, DeleteAll, //
         TransactionRunnable, TransactionCallable, //
-        QueryList, QueryUnique, //
+        QueryList, QueryUnique, QueryChunked, //
         Load, LoadAll, //
         Count, Refresh
     }
@@ -35,6 +53,20 @@ public class AsyncOperation {
     public static final int FLAG_STOP_QUEUE_ON_EXCEPTION = 1 << 1;
     public static final int FLAG_TRACK_CREATOR_STACKTRACE = 1 << 2;
 
+    /** Runs before queued operations of normal and low priority, e.g. queries of the UI. */
+    public static final int FLAG_PRIORITY_HIGH = 1 << 3;
+    /**
+     * Runs after queued operations of high and normal priority, e.g. background sync. Only low priority operations are
+     * dropped by {@link AsyncSession.Backpressure#DROP_OLDEST_LOW_PRIORITY}.
+     */
+    public static final int FLAG_PRIORITY_LOW = 1 << 4;
+
+    //优先级，数值越小越先执行
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+    static final int PRIORITY_COUNT = 3;
+
     final OperationType type;   //所属的类型是@see OperationType，实际上也就是sql的操作的类型
     final AbstractDao<Object, Object> dao;  //所属的类型是AbstractDao-->所有的Dao的抽象类，实现增删改查实体对象的操作
     private final SQLiteDatabase database;
@@ -52,6 +84,21 @@ public class AsyncOperation {
 
     int sequenceNumber; //当前的异步操作的序号
 
+    volatile long enqueuedNanos;    //进入队列的时间，System.nanoTime()
+    volatile long startedNanos;     //开始执行的时间，未执行为0
+
+    /** Number of the journal record of this operation or 0 if it is not journaled, see {@link AsyncJournal}. */
+    long journalSequence;
+
+    private int state;  //guarded by this
+    private List<Runnable> completionListeners;    //guarded by this, null after completion
+    private volatile boolean stopRequested;
+    private volatile boolean hasDeadline;
+    private volatile long deadlineNanos;
+
+    /** Set if executed by the reader pool instead of the ordered writer lane. */
+    boolean executedAsRead;
+
     @SuppressWarnings("unchecked")
     /**
      * Either supply dao or database (set other to null).
@@ -108,11 +155,40 @@ public class AsyncOperation {
         return result;
     }
 
+    /** @return true if this operation only reads and may run in parallel to other reads, see {@link AsyncSession.ReadOrdering}. */
+    public boolean isRead() {
+        switch (type) {
+            case QueryList:
+            case QueryUnique:
+            case QueryChunked:
+            case Load:
+            case LoadAll:
+            case Count:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /** @return true if this operation may be merged with others into a single database transaction. */
     public boolean isMergeTx() {
         return (flags & FLAG_MERGE_TX) != 0;
     }
 
+    /**
+     * @return {@link #PRIORITY_HIGH}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_LOW} as set by the flags; if both
+     * priority flags are set, high priority wins.
+     */
+    public int getPriority() {
+        if ((flags & FLAG_PRIORITY_HIGH) != 0) {
+            return PRIORITY_HIGH;
+        } else if ((flags & FLAG_PRIORITY_LOW) != 0) {
+            return PRIORITY_LOW;
+        } else {
+            return PRIORITY_NORMAL;
+        }
+    }
+
     SQLiteDatabase getDatabase() {
         return database != null ? database : dao.getDatabase();
     }
@@ -183,10 +259,181 @@ public class AsyncOperation {
         return completed;
     }
 
-    /** Called when the operation is done. Notifies any threads waiting for this operation's completion. */
-    synchronized void setCompleted() {
+    /**
+     * Called when the operation is done. Notifies any threads waiting for this operation's completion and runs the
+     * completion listeners once.
+     */
+    void setCompleted() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            listeners = markCompleted();
+        }
+        runCompletionListeners(listeners);
+    }
+
+    private List<Runnable> markCompleted() {
         completed = true;
         notifyAll();
+        List<Runnable> listeners = completionListeners;
+        completionListeners = null;
+        return listeners;
+    }
+
+    private static void runCompletionListeners(List<Runnable> listeners) {
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    DaoLog.e("Completion listener failed", e);
+                }
+            }
+        }
+    }
+
+    /** Runs the given listener once the operation completed (immediately if it already has). */
+    void addCompletionListener(Runnable listener) {
+        synchronized (this) {
+            if (!completed) {
+                if (completionListeners == null) {
+                    completionListeners = new ArrayList<Runnable>(1);
+                }
+                completionListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Drops the operation if it does not start within the given time from now: it then completes failed without
+     * touching the database. Has no effect once the operation started.
+     */
+    public void setTimeout(long timeoutMillis) {
+        deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        hasDeadline = true;
+    }
+
+    /**
+     * Called by the executor before executing the operation.
+     *
+     * @return false if the operation must not be executed because it was canceled or its deadline expired.
+     */
+    synchronized boolean start() {
+        if (state == STATE_QUEUED) {
+            if (hasDeadline && System.nanoTime() - deadlineNanos > 0) {
+                state = STATE_EXPIRED;
+                throwable = new DaoException("Deadline expired before the operation started");
+                return false;
+            }
+            state = STATE_RUNNING;
+            startedNanos = System.nanoTime();
+        }
+        return state == STATE_RUNNING;
+    }
+
+    /**
+     * Called by the executor after removing the operation from its queue to make space for others. The operation will
+     * not be executed; the executor completes it with a {@link DaoException} as throwable.
+     */
+    synchronized void drop() {
+        if (state == STATE_QUEUED) {
+            state = STATE_DROPPED;
+            throwable = new DaoException("Operation was dropped because the queue was full");
+        }
+    }
+
+    /** @return true if the operation was not executed because its deadline expired, see {@link #setTimeout(long)}. */
+    public synchronized boolean isExpired() {
+        return state == STATE_EXPIRED;
+    }
+
+    /** @return true if the operation was dropped because the queue was full, see {@link AsyncSession.Backpressure}. */
+    public synchronized boolean isDropped() {
+        return state == STATE_DROPPED;
+    }
+
+    /**
+     * Cancels the operation if it did not start yet; it then completes with a {@link CancellationException} as
+     * throwable and is skipped by the executor. Running operations cannot be interrupted.
+     *
+     * @return true if the operation was canceled.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (state != STATE_QUEUED || completed) {
+                return false;
+            }
+            state = STATE_CANCELED;
+            throwable = new CancellationException("Operation was canceled");
+            listeners = markCompleted();
+        }
+        runCompletionListeners(listeners);
+        return true;
+    }
+
+    /**
+     * Asks a running chunked query (see {@link AsyncSession#queryChunked(Query, int, QueryChunkCallback)}) to stop
+     * before delivering its next chunk; it then completes successfully with the count of entities delivered so far.
+     * Use {@link #cancel(boolean)} for operations that did not start yet.
+     */
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    public boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == STATE_CANCELED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return completed;
+    }
+
+    /** Like {@link #getResult()}, but as defined by {@link Future}. */
+    @Override
+    public Object get() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (!completed) {
+                wait();
+            }
+            return report();
+        }
+    }
+
+    @Override
+    public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+            TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (!completed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Operation did not complete in time");
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return report();
+        }
+    }
+
+    private Object report() throws ExecutionException {
+        if (state == STATE_CANCELED) {
+            throw new CancellationException("Operation was canceled");
+        } else if (throwable != null) {
+            throw new ExecutionException(throwable);
+        }
+        return result;
     }
 
     public boolean isCompletedSucessfully() {
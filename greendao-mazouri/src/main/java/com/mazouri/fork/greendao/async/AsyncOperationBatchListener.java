@@ -0,0 +1,19 @@
+package com.mazouri.fork.greendao.async;
+
+import java.util.List;
+
+/**
+ * Listener called on the main thread with the {@link AsyncOperation}s completed since the last call, see
+ * {@link AsyncSession#setBatchListenerMainThread(AsyncOperationBatchListener)}. Delivering completions in batches keeps
+ * the main looper responsive while many operations complete in a short time.
+ *
+ * 在主线程中批量回调已完成的异步操作
+ */
+public interface AsyncOperationBatchListener {
+
+    /**
+     * Called with the operations in completion order; the list belongs to the listener. Note, that operations may not
+     * have been successful, check {@link AsyncOperation#isFailed()} for error situations.
+     */
+    void onAsyncOperationsCompleted(List<AsyncOperation> operations);
+}
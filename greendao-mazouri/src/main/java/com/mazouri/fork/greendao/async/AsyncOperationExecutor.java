@@ -4,17 +4,29 @@ import android.database.sqlite.SQLiteDatabase;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 
+import com.mazouri.fork.greendao.AbstractDaoSession;
 import com.mazouri.fork.greendao.DaoException;
 import com.mazouri.fork.greendao.DaoLog;
+import com.mazouri.fork.greendao.InternalQueryDaoAccess;
 import com.mazouri.fork.greendao.query.Query;
 
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.concurrent.BlockingQueue;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -24,11 +36,136 @@ import java.util.concurrent.TimeUnit;
  * Created by wangdong on 16-1-18.
  */
 public class AsyncOperationExecutor implements Runnable, Handler.Callback{
-    //类型是ExecutorService，也就是Java中的线程池
-    private static ExecutorService executorService = Executors.newCachedThreadPool();
+    /** Default interval between batches delivered to the main thread batch listener, about one frame. */
+    public static final int DEFAULT_MAIN_THREAD_BATCH_INTERVAL_MILLIS = 16;
 
-    //类型是BlockingQueue队列，类型强制为AsyncOperation。实际上也就是异步操作的存储队列
-    private final BlockingQueue<AsyncOperation> queue;
+    private static final int MSG_COMPLETED = 1;
+    private static final int MSG_COMPLETED_BATCH = 2;
+
+    /** Default idle time after which the writer lane gives its thread back to the executor. */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 1000;
+
+    /** Most threads of the default executor; further writer lanes wait until a lane gives back its thread. */
+    public static final int DEFAULT_EXECUTOR_MAX_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    //默认的写线程池，由所有未指定Executor的会话共享；每个会话同时最多占用一个线程
+    private static final NamedThreadFactory DEFAULT_THREAD_FACTORY = new NamedThreadFactory("greenDAO-async");
+    private static final ThreadPoolExecutor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+    //合并的事务中每个写操作都在自己的保存点中执行，失败时只回滚这个操作
+    private static final String SQL_SAVEPOINT = "SAVEPOINT greendao_async_op";
+    private static final String SQL_RELEASE = "RELEASE greendao_async_op";
+    // Android executes statements starting with "ROL" as a rollback of the whole transaction, so start with a comment
+    private static final String SQL_ROLLBACK_TO = "/* operation failed */ ROLLBACK TO greendao_async_op";
+
+    /** Executes a read on a reader lane; the read queue runs higher priorities and then older reads first. */
+    private class ReadTask implements Runnable, Comparable<ReadTask> {
+        final AsyncOperation operation;
+
+        ReadTask(AsyncOperation operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            if (claim(operation)) {
+                executeOperationAndPostCompleted(operation);
+            }
+        }
+
+        @Override
+        public int compareTo(ReadTask other) {
+            int priority = operation.getPriority();
+            int otherPriority = other.operation.getPriority();
+            if (priority != otherPriority) {
+                return priority < otherPriority ? -1 : 1;
+            }
+            int sequenceNumber = operation.sequenceNumber;
+            int otherSequenceNumber = other.operation.sequenceNumber;
+            return sequenceNumber < otherSequenceNumber ? -1 : (sequenceNumber == otherSequenceNumber ? 0 : 1);
+        }
+    }
+
+    /**
+     * Occupies a thread of the reader executor: runs reads from the read queue until none arrived for the idle timeout.
+     * At most maxReaderThreads lanes run at the same time.
+     */
+    private class ReaderLane implements Runnable {
+        @Override
+        public void run() {
+            readerThread.set(Boolean.TRUE);
+            boolean exited = false;
+            try {
+                while (true) {
+                    ReadTask task;
+                    try {
+                        task = shutdown ? readQueue.poll() : readQueue.poll(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        task = readQueue.poll();
+                    }
+                    if (task != null) {
+                        task.run();
+                    } else {
+                        synchronized (readQueue) {
+                            if (readQueue.isEmpty()) {
+                                activeReaders--;
+                                exited = true;
+                                return;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                if (!exited) {
+                    synchronized (readQueue) {
+                        activeReaders--;
+                    }
+                }
+                readerThread.remove();
+            }
+        }
+    }
+
+    //写队列，按优先级分道，同一优先级内按调用顺序
+    private final OperationQueue queue;
+
+    //读队列，读操作在最多maxReaderThreads个读线程中并行执行
+    private final PriorityBlockingQueue<ReadTask> readQueue;
+
+    //执行读操作的线程池，由调用者提供；否则为会话自己的ownReaderPool
+    private final Executor readerExecutor;
+    private final ThreadPoolExecutor ownReaderPool;
+
+    //guarded by readQueue
+    private int maxReaderThreads;
+    private int activeReaders;  //占用读线程的ReaderLane的数目
+    private int largestReaders;
+
+    //等待之前的写操作完成的读操作，按序号排列; guarded by this
+    private final Queue<AsyncOperation> deferredReads;
+
+    //进入写队列但还没有完成的操作，按序号排列; guarded by this
+    private final Set<AsyncOperation> pendingWriterLane;
+
+    private volatile AsyncSession.ReadOrdering readOrdering;
+
+    //队列容量，0表示不限制; guarded by this
+    private int maxQueueSize;
+    private AsyncSession.Backpressure backpressure;
+    private int queuedCount;    //已进入队列但还没有开始的操作的数目
+    private int blockedEnqueuers;   //因队列已满而等待的线程的数目
+    private volatile Thread writerThread;
+    //在读线程池中执行读操作（及其回调）时为true
+    private final ThreadLocal<Boolean> readerThread = new ThreadLocal<Boolean>();
+
+    //事务通过daoSession开启，表变更在事务提交后才通知
+    private final AbstractDaoSession daoSession;
+
+    //执行写队列的线程池，写队列忙时占用其中一个线程
+    private final Executor writerExecutor;
+    private volatile long idleTimeoutMillis;
+    private volatile boolean shutdown;
 
     private volatile boolean executorRunning; //当前的线程池是否处于执行任务的状态
 
@@ -37,8 +174,24 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
     //listener与listenerMainThread均是异步操作的观察者的回调，只是listenerMainThread是在主线程中回调
     private volatile AsyncOperationListener listener;
     private volatile AsyncOperationListener listenerMainThread;
+
+    //批量在主线程中回调，每个间隔最多发送一个消息
+    private volatile AsyncOperationBatchListener batchListenerMainThread;
+    private volatile int mainThreadBatchIntervalMillis;
+    private final Object mainThreadBatchLock = new Object();
+    private List<AsyncOperation> mainThreadBatch;   //guarded by mainThreadBatchLock, null if no message is pending
+    private volatile long lastBatchUptimeMillis;    //主线程中最后一次批量回调的时间
     private volatile int waitForMergeMillis;  //等待合并的时间
 
+    //自适应合并，开启时由mergeController决定等待时间与合并数目，而不使用上面两个固定值
+    private final MergeController mergeController;
+
+    private final AsyncMetrics metrics;
+
+    //持久化的写操作日志，未开启时为null
+    private volatile AsyncJournal journal;
+    private volatile boolean adaptiveMerge;
+
     private int countOperationsEnqueued;    //异步操作进入队列的数目
     private int countOperationsCompleted;   //异步操作已经完成的数目
 
@@ -50,28 +203,449 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
      *      创建BlockingQueue的队列。
      *      初始化允许最大允许合并的异步操作的数目是50，
      *      允许最大合并超时的时间是50ms
+     *
+     * @param writerExecutor Runs the writer lane or null to use the shared default executor.
+     * @param readerExecutor Runs the reader lanes or null to use reader threads of this session.
      */
-    AsyncOperationExecutor() {
-        queue = new LinkedBlockingQueue<AsyncOperation>();
+    AsyncOperationExecutor(AbstractDaoSession daoSession, Executor writerExecutor, Executor readerExecutor) {
+        this.daoSession = daoSession;
+        this.writerExecutor = writerExecutor != null ? writerExecutor : DEFAULT_EXECUTOR;
+        idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+        mainThreadBatchIntervalMillis = DEFAULT_MAIN_THREAD_BATCH_INTERVAL_MILLIS;
+        queue = new OperationQueue();
         maxOperationCountToMerge = 50;
         waitForMergeMillis = 50;
+        mergeController = new MergeController();
+        metrics = new AsyncMetrics();
+        adaptiveMerge = true;
+        readOrdering = AsyncSession.ReadOrdering.AFTER_PRECEDING_WRITES;
+        deferredReads = new ArrayDeque<AsyncOperation>();
+        pendingWriterLane = new LinkedHashSet<AsyncOperation>();
+        backpressure = AsyncSession.Backpressure.BLOCK;
+        readQueue = new PriorityBlockingQueue<ReadTask>();
+        maxReaderThreads = 2;
+        if (readerExecutor != null) {
+            this.readerExecutor = readerExecutor;
+            ownReaderPool = null;
+        } else {
+            // Reader lanes wait for reads themselves, so the pool only needs to keep threads between bursts briefly
+            ownReaderPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, DEFAULT_IDLE_TIMEOUT_MILLIS,
+                    TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+                    new NamedThreadFactory("greenDAO-async-reader"));
+            this.readerExecutor = ownReaderPool;
+        }
+    }
+
+    /** Bounded, so sessions beyond the limit queue up instead of each starting a thread. */
+    private static ThreadPoolExecutor createDefaultExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_EXECUTOR_MAX_THREADS,
+                DEFAULT_EXECUTOR_MAX_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                DEFAULT_THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
      * 参数是异步操作AsyncOperation，
      * 在函数内部将当前的AsyncOperation进入队列。
      * 同时如果当前的线程池不是处于运行的状态，开启线程池的运行的状态
+     * 队列已满时按照{@link AsyncSession.Backpressure}处理
      * @param operation
      */
     public void enqueue(AsyncOperation operation) {
+        List<AsyncOperation> droppedOps = null;
         synchronized (this) {
+            checkNotShutdown();
+            while (maxQueueSize > 0 && queuedCount >= maxQueueSize) {
+                if (backpressure == AsyncSession.Backpressure.BLOCK && !isExecutorThread()) {
+                    awaitQueueSpace();
+                    checkNotShutdown();
+                    continue;
+                }
+                AsyncOperation droppedOp = null;
+                if (backpressure == AsyncSession.Backpressure.DROP_OLDEST_LOW_PRIORITY) {
+                    droppedOp = removeOldestLowPriority();
+                }
+                if (droppedOp == null) {
+                    throw new DaoException("Async queue is full (" + queuedCount + " operations queued)");
+                }
+                droppedOp.drop();
+                if (droppedOps == null) {
+                    droppedOps = new ArrayList<AsyncOperation>();
+                }
+                droppedOps.add(droppedOp);
+            }
+            if (journal != null && AsyncJournal.isJournaled(operation)) {
+                // Appended before the operation is acknowledged by returning
+                operation.journalSequence = journal.append(operation);
+            }
             operation.sequenceNumber = ++lastSequenceNumber;
-            queue.add(operation);
+            operation.enqueuedNanos = System.nanoTime();
             countOperationsEnqueued++;
-            if (!executorRunning) {
-                executorRunning = true;
-                executorService.execute(this);
+            queuedCount++;
+            metrics.onQueued(queuedCount);
+            AsyncSession.ReadOrdering ordering = readOrdering;
+            if (operation.isRead() && ordering != AsyncSession.ReadOrdering.STRICT) {
+                operation.executedAsRead = true;
+                if (ordering == AsyncSession.ReadOrdering.RELAXED || pendingWriterLane.isEmpty()) {
+                    if (!executeRead(operation)) {
+                        // Undo the enqueue, nothing will execute the operation
+                        queuedCount--;
+                        countOperationsEnqueued--;
+                        throw new DaoException("Executor rejected the async reader lane");
+                    }
+                } else {
+                    deferredReads.add(operation);
+                }
+            } else {
+                pendingWriterLane.add(operation);
+                if (operation.isMergeTx()) {
+                    mergeController.onArrival(System.nanoTime());
+                }
+                queue.add(operation);
+                if (!executorRunning) {
+                    startWriterLane(operation);
+                }
+            }
+        }
+        if (droppedOps != null) {
+            for (AsyncOperation droppedOp : droppedOps) {
+                handleOperationCompleted(droppedOp);
+            }
+        }
+    }
+
+    /**
+     * Only the writer lane frees queue space, and it may wait for reads; so the writer and reader threads (including
+     * listeners called on them) must not block on a full queue.
+     */
+    private boolean isExecutorThread() {
+        return Thread.currentThread() == writerThread || readerThread.get() != null;
+    }
+
+    private void startWriterLane(AsyncOperation operation) {
+        executorRunning = true;
+        try {
+            writerExecutor.execute(this);
+        } catch (RejectedExecutionException e) {
+            // Undo the enqueue, nothing will execute the operation
+            executorRunning = false;
+            queue.remove(operation);
+            pendingWriterLane.remove(operation);
+            queuedCount--;
+            countOperationsEnqueued--;
+            throw new DaoException("Executor rejected the async writer lane", e);
+        }
+    }
+
+    private void checkNotShutdown() {
+        if (shutdown) {
+            throw new DaoException("Async session was shut down");
+        }
+    }
+
+    /**
+     * Rejects further operations; queued operations are still executed, after that the writer lane gives back its
+     * thread right away and the reader threads terminate. A caller-supplied executor is not shut down.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            notifyAll();
+            if (isCompleted()) {
+                onTerminated();
+            }
+        }
+        queue.close();
+    }
+
+    private void onTerminated() {
+        if (ownReaderPool != null) {
+            ownReaderPool.shutdown();
+        }
+        metrics.setReporter(null, 0);
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Opens the journal and replays the operations it holds that were not committed before, see
+     * {@link AsyncSession#enableJournal(File)}.
+     */
+    public synchronized void enableJournal(File journalFile) {
+        if (journal != null) {
+            throw new DaoException("Journal already enabled");
+        } else if (countOperationsEnqueued > 0) {
+            throw new DaoException("Journal must be enabled before enqueuing operations");
+        }
+        journal = AsyncJournal.openAndReplay(journalFile, daoSession);
+    }
+
+    public boolean isJournalEnabled() {
+        return journal != null;
+    }
+
+    public AsyncMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Calls the given reporter with {@link #getMetrics()} every interval until set to null or terminated. */
+    public void setMetricsReporter(AsyncMetricsReporter reporter, long intervalMillis) {
+        metrics.setReporter(reporter, intervalMillis);
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /** @return true if shut down and all operations enqueued before completed. */
+    public synchronized boolean isTerminated() {
+        return shutdown && isCompleted();
+    }
+
+    /**
+     * Waits until terminated after {@link #shutdown()}, but at most the given time. If the thread gets interrupted,
+     * any {@link InterruptedException} will be rethrown as a {@link DaoException}.
+     *
+     * @return true if terminated in the given time frame.
+     */
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                throw new DaoException("Interrupted while waiting for termination", e);
+            }
+        }
+        return true;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Sets the time the writer lane and idle reader threads wait for further operations before giving back their
+     * threads; default is {@link #DEFAULT_IDLE_TIMEOUT_MILLIS}. 0 gives back the writer thread as soon as the queue is
+     * empty; a longer timeout saves thread hand-overs for operations arriving in bursts.
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Illegal idle timeout: " + idleTimeoutMillis);
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        if (ownReaderPool != null) {
+            ownReaderPool.setKeepAliveTime(Math.max(1, idleTimeoutMillis), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** @return true while the writer lane occupies a thread of its executor. */
+    public boolean isWriterThreadActive() {
+        return executorRunning;
+    }
+
+    /** Name of the thread currently running the writer lane or null if there is none. */
+    public String getWriterThreadName() {
+        Thread thread = writerThread;
+        return thread != null ? thread.getName() : null;
+    }
+
+    /** Current count of reader threads (busy or waiting for reads). */
+    public int getReaderThreadCount() {
+        synchronized (readQueue) {
+            return activeReaders;
+        }
+    }
+
+    /** Largest count of reader threads that were occupied at the same time. */
+    public int getLargestReaderThreadCount() {
+        synchronized (readQueue) {
+            return largestReaders;
+        }
+    }
+
+    /** Count of threads of the default executor shared by all sessions without an executor of their own. */
+    public static int getDefaultExecutorThreadCount() {
+        return DEFAULT_EXECUTOR.getPoolSize();
+    }
+
+    /** Waits while the queue is full; the executor thread itself never blocks (it would wait for itself). */
+    private void awaitQueueSpace() {
+        blockedEnqueuers++;
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            throw new DaoException("Interrupted while waiting for space in the async queue", e);
+        } finally {
+            blockedEnqueuers--;
+        }
+    }
+
+    /**
+     * Removes the oldest low priority operation that did not start yet from the writer lane, the deferred reads or the
+     * read queue.
+     *
+     * @return The removed operation or null if there is none.
+     */
+    private AsyncOperation removeOldestLowPriority() {
+        while (true) {
+            AsyncOperation oldest = queue.peekOldest(AsyncOperation.PRIORITY_LOW);
+            for (AsyncOperation read : deferredReads) {
+                if (read.getPriority() == AsyncOperation.PRIORITY_LOW) {
+                    if (oldest == null || read.sequenceNumber < oldest.sequenceNumber) {
+                        oldest = read;
+                    }
+                    break;
+                }
             }
+            ReadTask oldestTask = null;
+            for (ReadTask task : readQueue) {
+                AsyncOperation read = task.operation;
+                if (read.getPriority() == AsyncOperation.PRIORITY_LOW
+                        && (oldest == null || read.sequenceNumber < oldest.sequenceNumber)) {
+                    oldest = read;
+                    oldestTask = task;
+                }
+            }
+            if (oldest == null) {
+                return null;
+            }
+            // The writer lane and the reader threads take operations without holding this lock, so removing may fail
+            boolean removed;
+            if (oldestTask != null) {
+                removed = readQueue.remove(oldestTask);
+            } else if (oldest.executedAsRead) {
+                removed = deferredReads.remove(oldest);
+            } else {
+                removed = queue.remove(oldest);
+            }
+            if (removed) {
+                queuedCount--;
+                return oldest;
+            }
+        }
+    }
+
+    /**
+     * Queues the read and starts a reader lane unless maxReaderThreads already run.
+     *
+     * @return false if the reader executor rejected the lane and no other lane runs; the read was not queued then.
+     */
+    private boolean executeRead(AsyncOperation operation) {
+        ReadTask task = new ReadTask(operation);
+        synchronized (readQueue) {
+            readQueue.add(task);
+            if (activeReaders < maxReaderThreads) {
+                activeReaders++;
+                largestReaders = Math.max(largestReaders, activeReaders);
+                try {
+                    readerExecutor.execute(new ReaderLane());
+                } catch (RejectedExecutionException e) {
+                    activeReaders--;
+                    if (activeReaders == 0) {
+                        readQueue.remove(task);
+                        DaoLog.w("Executor rejected the async reader lane", e);
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Starts the reads that waited for the given operation and all other writer lane operations called before them. */
+    private void onWriterLaneCompleted(AsyncOperation operation) {
+        List<AsyncOperation> rejectedReads = null;
+        synchronized (this) {
+            pendingWriterLane.remove(operation);
+            int barrier = pendingWriterLane.isEmpty() ? Integer.MAX_VALUE
+                    : pendingWriterLane.iterator().next().sequenceNumber;
+            AsyncOperation read = deferredReads.peek();
+            while (read != null && read.sequenceNumber < barrier) {
+                deferredReads.remove();
+                if (!executeRead(read)) {
+                    if (rejectedReads == null) {
+                        rejectedReads = new ArrayList<AsyncOperation>();
+                    }
+                    rejectedReads.add(read);
+                }
+                read = deferredReads.peek();
+            }
+        }
+        if (rejectedReads != null) {
+            for (AsyncOperation read : rejectedReads) {
+                if (startDequeued(read)) {
+                    read.throwable = new DaoException("Executor rejected the async reader lane");
+                }
+                handleOperationCompleted(read);
+            }
+        }
+    }
+
+    public synchronized int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /** Sets the count of queued operations (not started yet) at which backpressure applies; 0 (default) is unbounded. */
+    public synchronized void setMaxQueueSize(int maxQueueSize) {
+        if (maxQueueSize < 0) {
+            throw new IllegalArgumentException("Illegal max queue size: " + maxQueueSize);
+        }
+        this.maxQueueSize = maxQueueSize;
+        notifyAll();
+    }
+
+    public synchronized AsyncSession.Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    public synchronized void setBackpressure(AsyncSession.Backpressure backpressure) {
+        if (backpressure == null) {
+            throw new IllegalArgumentException("Backpressure must not be null");
+        }
+        this.backpressure = backpressure;
+        notifyAll();
+    }
+
+    /** Count of enqueued operations that did not start yet. */
+    public synchronized int getQueuedCount() {
+        return queuedCount;
+    }
+
+    public AsyncSession.ReadOrdering getReadOrdering() {
+        return readOrdering;
+    }
+
+    /** Applies to operations enqueued afterwards. */
+    public void setReadOrdering(AsyncSession.ReadOrdering readOrdering) {
+        if (readOrdering == null) {
+            throw new IllegalArgumentException("Read ordering must not be null");
+        }
+        this.readOrdering = readOrdering;
+    }
+
+    public int getMaxReaderThreads() {
+        synchronized (readQueue) {
+            return maxReaderThreads;
+        }
+    }
+
+    /** Applies to reads queued afterwards; reader lanes above a lowered limit keep running until they are idle. */
+    public void setMaxReaderThreads(int maxReaderThreads) {
+        if (maxReaderThreads < 1) {
+            throw new IllegalArgumentException("Illegal reader thread count: " + maxReaderThreads);
+        }
+        synchronized (readQueue) {
+            this.maxReaderThreads = maxReaderThreads;
         }
     }
 
@@ -80,16 +654,62 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
         return maxOperationCountToMerge;
     }
 
+    /** Sets a fixed maximum count of operations merged into one transaction and disables adaptive merging. */
     public void setMaxOperationCountToMerge(int maxOperationCountToMerge) {
         this.maxOperationCountToMerge = maxOperationCountToMerge;
+        adaptiveMerge = false;
     }
 
     public int getWaitForMergeMillis() {
         return waitForMergeMillis;
     }
 
+    /** Sets a fixed time to wait for operations to merge and disables adaptive merging. */
     public void setWaitForMergeMillis(int waitForMergeMillis) {
         this.waitForMergeMillis = waitForMergeMillis;
+        adaptiveMerge = false;
+    }
+
+    public boolean isAdaptiveMerge() {
+        return adaptiveMerge;
+    }
+
+    /**
+     * Enables (default) or disables tuning the merge wait time and the count of operations per transaction from the
+     * observed arrival rate and transaction latency, see {@link #setTargetLatencyMillis(int)}. If disabled,
+     * {@link #getWaitForMergeMillis()} and {@link #getMaxOperationCountToMerge()} are used.
+     */
+    public void setAdaptiveMerge(boolean adaptiveMerge) {
+        this.adaptiveMerge = adaptiveMerge;
+    }
+
+    public int getTargetLatencyMillis() {
+        return mergeController.getTargetLatencyMillis();
+    }
+
+    /** Latency a merged operation should not exceed (waiting plus transaction) when merging adaptively; default 100. */
+    public void setTargetLatencyMillis(int targetLatencyMillis) {
+        mergeController.setTargetLatencyMillis(targetLatencyMillis);
+    }
+
+    /** The wait time for operations to merge currently in effect. */
+    public double getCurrentWaitForMergeMillis() {
+        return adaptiveMerge ? mergeController.getWaitMicros() / 1000.0 : waitForMergeMillis;
+    }
+
+    /** The maximum count of operations merged into one transaction currently in effect. */
+    public int getCurrentMaxOperationCountToMerge() {
+        return adaptiveMerge ? mergeController.getMaxOperationCount() : maxOperationCountToMerge;
+    }
+
+    /** Smoothed interval between mergeable operations or -1 if not observed yet. */
+    public double getArrivalIntervalMillis() {
+        return mergeController.getArrivalIntervalMillis();
+    }
+
+    /** Smoothed duration of the transactions executing mergeable operations or -1 if not observed yet. */
+    public double getTransactionMillis() {
+        return mergeController.getTransactionMillis();
     }
 
     public AsyncOperationListener getListener() {
@@ -108,6 +728,30 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
         this.listenerMainThread = listenerMainThread;
     }
 
+    public AsyncOperationBatchListener getBatchListenerMainThread() {
+        return batchListenerMainThread;
+    }
+
+    /**
+     * Sets a listener called on the main thread with the operations completed since its last call, at most once per
+     * {@link #getMainThreadBatchIntervalMillis()}. May be used together with the per operation listeners.
+     */
+    public void setBatchListenerMainThread(AsyncOperationBatchListener batchListenerMainThread) {
+        this.batchListenerMainThread = batchListenerMainThread;
+    }
+
+    public int getMainThreadBatchIntervalMillis() {
+        return mainThreadBatchIntervalMillis;
+    }
+
+    /** Minimum interval between two calls of the main thread batch listener; default is one frame (16 ms). */
+    public void setMainThreadBatchIntervalMillis(int mainThreadBatchIntervalMillis) {
+        if (mainThreadBatchIntervalMillis < 0) {
+            throw new IllegalArgumentException("Illegal interval: " + mainThreadBatchIntervalMillis);
+        }
+        this.mainThreadBatchIntervalMillis = mainThreadBatchIntervalMillis;
+    }
+
     public synchronized boolean isCompleted() {
         return countOperationsEnqueued == countOperationsCompleted;
     }
@@ -133,9 +777,15 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
      * @return true if operations completed in the given time frame.
      */
     public synchronized boolean waitForCompletion(int maxMillis) {
-        if (!isCompleted()) {
+        // Loop because enqueue and dequeue also notify while the queue is bounded
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        while (!isCompleted()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
             try {
-                wait(maxMillis);
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
             } catch (InterruptedException e) {
                 throw new DaoException("Interrupted while waiting for all operations to complete", e);
             }
@@ -145,6 +795,10 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
 
     @Override
     public boolean handleMessage(Message msg) {
+        if (msg.what == MSG_COMPLETED_BATCH) {
+            deliverMainThreadBatch();
+            return false;
+        }
         AsyncOperationListener listenerToCall = listenerMainThread;
         if (listenerToCall != null) {
             listenerToCall.onAsyncOperationCompleted((AsyncOperation) msg.obj);
@@ -152,6 +806,35 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
         return false;
     }
 
+    /** Adds the operation to the pending batch and schedules a message unless one is already pending. */
+    private void addToMainThreadBatch(AsyncOperation operation) {
+        synchronized (mainThreadBatchLock) {
+            if (mainThreadBatch != null) {
+                mainThreadBatch.add(operation);
+                return;
+            }
+            mainThreadBatch = new ArrayList<AsyncOperation>();
+            mainThreadBatch.add(operation);
+        }
+        // The first completion after a quiet period is delivered right away
+        long delay = lastBatchUptimeMillis + mainThreadBatchIntervalMillis - SystemClock.uptimeMillis();
+        Handler handler = getHandlerMainThread();
+        handler.sendMessageDelayed(handler.obtainMessage(MSG_COMPLETED_BATCH), Math.max(0, delay));
+    }
+
+    private void deliverMainThreadBatch() {
+        List<AsyncOperation> batch;
+        synchronized (mainThreadBatchLock) {
+            batch = mainThreadBatch;
+            mainThreadBatch = null;
+        }
+        lastBatchUptimeMillis = SystemClock.uptimeMillis();
+        AsyncOperationBatchListener listenerToCall = batchListenerMainThread;
+        if (listenerToCall != null && batch != null) {
+            listenerToCall.onAsyncOperationsCompleted(batch);
+        }
+    }
+
     /**
      * 在while循环中，从队列中逐一的去除异步操作的对象AsyncOperation。
      * 如果两次在队列中取出的对象都是空指针，就在逻辑上将当前的线程池停止运行。
@@ -161,10 +844,11 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
      */
     @Override
     public void run() {
+        writerThread = Thread.currentThread();
         try {
             try {
                 while (true) {
-                    AsyncOperation operation = queue.poll(1, TimeUnit.SECONDS);
+                    AsyncOperation operation = queue.poll(idleTimeoutMillis, TimeUnit.MILLISECONDS);
                     if (operation == null) {
                         synchronized (this) {
                             // Check again, this time in synchronized to be in sync with enqueue(AsyncOperation)
@@ -176,19 +860,29 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
                             }
                         }
                     }
+                    if (!claim(operation)) {
+                        continue;
+                    }
                     if (operation.isMergeTx()) {
                         // Wait some ms for another operation to merge because a TX is expensive
-                        AsyncOperation operation2 = queue.poll(waitForMergeMillis, TimeUnit.MILLISECONDS);
-                        if (operation2 != null) {
+                        long waitMicros = adaptiveMerge ? mergeController.getWaitMicros() : waitForMergeMillis * 1000L;
+                        AsyncOperation operation2 = queue.poll(waitMicros, TimeUnit.MICROSECONDS);
+                        if (operation2 != null && startDequeued(operation2)) {
                             if (operation.isMergeableWith(operation2)) {
                                 mergeTxAndExecute(operation, operation2);
                             } else {
                                 // Cannot merge, execute both
-                                executeOperationAndPostCompleted(operation);
+                                executeMergeableAlone(operation);
                                 executeOperationAndPostCompleted(operation2);
                             }
                             continue;
                         }
+                        executeMergeableAlone(operation);
+                        if (operation2 != null) {
+                            // Canceled or expired; completed after its predecessor to keep the writer lane order
+                            handleOperationCompleted(operation2);
+                        }
+                        continue;
                     }
                     executeOperationAndPostCompleted(operation);
                 }
@@ -196,12 +890,15 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
                 DaoLog.w(Thread.currentThread().getName() + " was interruppted", e);
             }
         } finally {
+            writerThread = null;
             executorRunning = false;
         }
     }
 
     /**
-     * Also checks for other operations in the queue that can be merged into the transaction.
+     * Also checks for other operations in the queue that can be merged into the transaction. Consecutive single entity
+     * operations of the same type and DAO are executed as one bulk call, see {@link #executeCoalesced(List)}. Failed
+     * operations are isolated using savepoints, see {@link #executeMerged(SQLiteDatabase, List, int)}.
      *
      * 两个异步操作合并事务并且进行执行
      */
@@ -209,38 +906,55 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
         ArrayList<AsyncOperation> mergedOps = new ArrayList<AsyncOperation>();
         mergedOps.add(operation1);
         mergedOps.add(operation2);
+        List<AsyncOperation> skippedOps = null;    //已取消或过期的操作，在合并的操作完成后再完成
 
+        int maxCount = adaptiveMerge ? mergeController.getMaxOperationCount() : maxOperationCountToMerge;
         SQLiteDatabase db = operation1.getDatabase();
-        db.beginTransaction();
+        long startNanos = System.nanoTime();
+        beginTransaction(db);
         boolean success = false;
         try {
-            for (int i = 0; i < mergedOps.size(); i++) {
-                AsyncOperation operation = mergedOps.get(i);    //从合并的列表中取出异步操作的对象
-                executeOperation(operation);    //执行异步操作的对象
-                if (operation.isFailed()) {     //如果当前的操作失败，回滚
-                    // Operation may still have changed the DB, roll back everything
-                    break;
-                }
-                if (i == mergedOps.size() - 1) {    //如果当前的对象已经是数组中的最后一个异步执行的任务
-                    AsyncOperation peekedOp = queue.peek(); //再从全局的队列中检查，当前是否有新的任务进入
-                    if (i < maxOperationCountToMerge && operation.isMergeableWith(peekedOp)) {  //如果当前合并处理的最大的操作数目还没有达到，并且当前的异步操作与新取出来的操作是能够合并的
-                        AsyncOperation removedOp = queue.remove();
-                        if (removedOp != peekedOp) {    //同时,为了避免peek与remove取出的对象不是同一个对象,需要做异步检查
-                            // Paranoia check, should not occur unless threading is broken
-                            throw new DaoException("Internal error: peeked op did not match removed op");
-                        }
+            int executedCount = 0;
+            while (true) {
+                //从全局的队列中取出能够合并的操作，直到达到最大合并数目
+                AsyncOperation lastOp = mergedOps.get(mergedOps.size() - 1);
+                AsyncOperation peekedOp = queue.peek();
+                while (mergedOps.size() <= maxCount && lastOp.isMergeableWith(peekedOp)) {
+                    //peek与poll之间操作可能因队列已满被丢弃，只取出peek到的对象
+                    AsyncOperation removedOp = queue.pollIfHead(peekedOp);
+                    if (removedOp == null) {
+                        peekedOp = queue.peek();
+                        continue;
+                    }
+                    if (startDequeued(removedOp)) {
                         mergedOps.add(removedOp);
+                        lastOp = removedOp;
                     } else {
-                        // No more ops in the queue to merge, finish it 如果代码走到这里(没有要合并的操作了)，结束当前的事务
-                        db.setTransactionSuccessful();
-                        success = true;
+                        if (skippedOps == null) {
+                            skippedOps = new ArrayList<AsyncOperation>();
+                        }
+                        skippedOps.add(removedOp);
+                    }
+                    peekedOp = queue.peek();
+                }
+                if (executedCount == mergedOps.size()) {
+                    // No more ops in the queue to merge, finish it 如果代码走到这里(没有要合并的操作了)，结束当前的事务
+                    if (journal != null && !journal.markApplied(db, mergedOps)) {
                         break;
                     }
+                    db.setTransactionSuccessful();
+                    success = true;
+                    break;
+                }
+                executedCount = executeMerged(db, mergedOps, executedCount);
+                if (executedCount == -1) {
+                    // Failure could not be isolated, roll back everything 如果当前的操作失败且无法单独回滚，回滚整个事务
+                    break;
                 }
             }
         } finally {
             try {
-                db.endTransaction();
+                endTransaction(db);
             } catch (RuntimeException e) {
                 DaoLog.i("Async transaction could not be ended, success so far was: " + success, e);
                 success = false;
@@ -248,47 +962,316 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
         }
         if (success) {
             int mergedCount = mergedOps.size();
+            mergeController.onTransaction(System.nanoTime() - startNanos, mergedCount);
+            metrics.onMergeableTransaction(mergedCount);
             for (AsyncOperation asyncOperation : mergedOps) {
-                asyncOperation.mergedOperationsCount = mergedCount;
+                if (!asyncOperation.isFailed()) {
+                    asyncOperation.mergedOperationsCount = mergedCount;
+                }
                 handleOperationCompleted(asyncOperation);
             }
         } else {
             DaoLog.i("Reverted merged transaction because one of the operations failed. Executing operations one by " +
                     "one instead...");
+            metrics.onMergeFallback();
             for (AsyncOperation asyncOperation : mergedOps) {
                 asyncOperation.reset();
                 executeOperationAndPostCompleted(asyncOperation);
             }
         }
+        if (skippedOps != null) {
+            for (AsyncOperation skippedOp : skippedOps) {
+                handleOperationCompleted(skippedOp);
+            }
+        }
+    }
+
+    /**
+     * Called before executing an operation taken from a queue. May be called concurrently by the writer lane and the
+     * reader pool.
+     *
+     * @return false if the operation was canceled or its deadline expired; it is then completed without execution.
+     */
+    private boolean claim(AsyncOperation operation) {
+        if (startDequeued(operation)) {
+            return true;
+        }
+        handleOperationCompleted(operation);
+        return false;
+    }
+
+    /** Starts an operation taken from a queue, see {@link AsyncOperation#start()}, and makes space for others. */
+    private boolean startDequeued(AsyncOperation operation) {
+        synchronized (this) {
+            queuedCount--;
+            if (blockedEnqueuers > 0) {
+                notifyAll();
+            }
+        }
+        return operation.start();
+    }
+
+    /**
+     * Executes the given operations starting at the given index inside the merged transaction. Writes that do not begin
+     * a nested transaction run in a savepoint: if one fails, only its changes are rolled back and it completes failed
+     * while the others commit. A failed coalesced run is rolled back and retried one operation at a time to find the
+     * failing ones.<br/>
+     * A failure in a nested transaction (e.g. insertInTx or runInTx) makes Android roll back the whole transaction; so
+     * does a failing savepoint statement (e.g. after SQLite aborted the transaction). The caller then falls back to
+     * executing all operations one by one.
+     *
+     * @return The count of executed operations or -1 if the transaction must be rolled back.
+     */
+    private int executeMerged(SQLiteDatabase db, List<AsyncOperation> mergedOps, int start) {
+        int size = mergedOps.size();
+        int i = start;
+        while (i < size) {
+            AsyncOperation operation = mergedOps.get(i);
+            int end = i + 1;
+            if (isCoalescable(operation)) {
+                while (end < size && isCoalescableWith(operation, mergedOps.get(end))) {
+                    end++;
+                }
+            }
+            if (end - i > 1) {
+                List<AsyncOperation> run = mergedOps.subList(i, end);
+                if (!savepoint(db)) {
+                    return -1;
+                }
+                executeCoalesced(run);
+                if (!operation.isFailed()) {
+                    if (!release(db)) {
+                        return -1;
+                    }
+                } else {
+                    if (!rollbackToSavepoint(db)) {
+                        return -1;
+                    }
+                    for (AsyncOperation runOperation : run) {
+                        runOperation.reset();
+                        if (!executeIsolated(db, runOperation)) {
+                            return -1;
+                        }
+                    }
+                }
+            } else if (!executeIsolated(db, operation)) {
+                return -1;
+            }
+            i = end;
+        }
+        return size;
+    }
+
+    /** @return false if the operation failed and its failure could not be isolated from the transaction. */
+    private boolean executeIsolated(SQLiteDatabase db, AsyncOperation operation) {
+        if (operation.isRead() || operation.type == AsyncOperation.OperationType.Refresh) {
+            // Nothing to roll back
+            executeOperation(operation);
+            return true;
+        } else if (!isSavepointIsolated(operation)) {
+            executeOperation(operation);
+            return !operation.isFailed();
+        }
+        if (!savepoint(db)) {
+            return false;
+        }
+        executeOperation(operation);
+        if (operation.isFailed()) {
+            return rollbackToSavepoint(db);
+        } else {
+            return release(db);
+        }
+    }
+
+    /** Operations that write without beginning a nested transaction when executed inside the merged transaction. */
+    private static boolean isSavepointIsolated(AsyncOperation operation) {
+        switch (operation.type) {
+            case Insert:
+            case InsertOrReplace:
+            case Update:
+            case Delete:
+            case DeleteByKey:
+            case DeleteAll:
+                return operation.dao != null;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean savepoint(SQLiteDatabase db) {
+        return execSavepointSql(db, SQL_SAVEPOINT);
+    }
+
+    private static boolean release(SQLiteDatabase db) {
+        return execSavepointSql(db, SQL_RELEASE);
+    }
+
+    /** Rolls back the changes since the savepoint and releases it. */
+    private static boolean rollbackToSavepoint(SQLiteDatabase db) {
+        return execSavepointSql(db, SQL_ROLLBACK_TO) && execSavepointSql(db, SQL_RELEASE);
+    }
+
+    private static boolean execSavepointSql(SQLiteDatabase db, String sql) {
+        try {
+            db.execSQL(sql);
+            return true;
+        } catch (RuntimeException e) {
+            DaoLog.w("Could not execute " + sql + ", merged transaction is rolled back", e);
+            return false;
+        }
+    }
+
+    private static boolean isCoalescable(AsyncOperation operation) {
+        switch (operation.type) {
+            case Insert:
+            case InsertOrReplace:
+            case Update:
+            case Delete:
+            case DeleteByKey:
+                return operation.dao != null;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isCoalescableWith(AsyncOperation operation, AsyncOperation other) {
+        return other.type == operation.type && other.dao == operation.dao;
+    }
+
+    /**
+     * Executes single entity operations of the same type and DAO using one bulk call inside the merged transaction (like
+     * insertInTx for Inserts), so the statement is locked and prepared once. If the call fails, all operations are
+     * marked failed; the caller then rolls back the run and executes its operations one by one, which attributes the
+     * error.
+     *
+     * 同类型同Dao的单个操作合并为一次批量操作
+     */
+    private void executeCoalesced(List<AsyncOperation> run) {
+        AsyncOperation first = run.get(0);
+        List<Object> parameters = new ArrayList<Object>(run.size());
+        for (AsyncOperation operation : run) {
+            parameters.add(operation.parameter);
+        }
+        InternalQueryDaoAccess<Object> daoAccess = new InternalQueryDaoAccess<Object>(first.dao);
+        long timeStarted = System.currentTimeMillis();
+        Throwable throwable = null;
+        long[] rowIds = null;
+        try {
+            switch (first.type) {
+                case Insert:
+                    rowIds = daoAccess.insertInCurrentTx(parameters, false);
+                    break;
+                case InsertOrReplace:
+                    rowIds = daoAccess.insertInCurrentTx(parameters, true);
+                    break;
+                case Update:
+                    daoAccess.updateInCurrentTx(parameters);
+                    break;
+                case Delete:
+                    daoAccess.deleteInCurrentTx(parameters, null);
+                    break;
+                case DeleteByKey:
+                    daoAccess.deleteInCurrentTx(null, parameters);
+                    break;
+                default:
+                    throw new DaoException("Unsupported operation: " + first.type);
+            }
+        } catch (Throwable th) {
+            throwable = th;
+        }
+        long timeCompleted = System.currentTimeMillis();
+        for (int i = 0; i < run.size(); i++) {
+            AsyncOperation operation = run.get(i);
+            operation.timeStarted = timeStarted;
+            operation.timeCompleted = timeCompleted;
+            operation.throwable = throwable;
+            if (rowIds != null) {
+                operation.result = rowIds[i];
+            }
+        }
     }
 
+    /** May be called concurrently by the writer lane and the reader pool. */
     private void handleOperationCompleted(AsyncOperation operation) {
+        metrics.onCompleted(operation, System.nanoTime());
+        if (operation.journalSequence != 0) {
+            journal.onCompleted(operation);
+        }
         operation.setCompleted();
+        if (!operation.executedAsRead) {
+            onWriterLaneCompleted(operation);
+        }
 
         AsyncOperationListener listenerToCall = listener;
         if (listenerToCall != null) {
             listenerToCall.onAsyncOperationCompleted(operation);
         }
         if (listenerMainThread != null) {
-            if (handlerMainThread == null) {
-                handlerMainThread = new Handler(Looper.getMainLooper(), this);
-            }
-            Message msg = handlerMainThread.obtainMessage(1, operation);
-            handlerMainThread.sendMessage(msg);
+            Handler handler = getHandlerMainThread();
+            Message msg = handler.obtainMessage(MSG_COMPLETED, operation);
+            handler.sendMessage(msg);
+        }
+        if (batchListenerMainThread != null) {
+            addToMainThreadBatch(operation);
         }
         synchronized (this) {
             countOperationsCompleted++;
             if (countOperationsCompleted == countOperationsEnqueued) {
                 notifyAll();
+                if (shutdown) {
+                    onTerminated();
+                }
             }
         }
     }
 
+    private synchronized Handler getHandlerMainThread() {
+        if (handlerMainThread == null) {
+            handlerMainThread = new Handler(Looper.getMainLooper(), this);
+        }
+        return handlerMainThread;
+    }
+
+    /** Executes a mergeable operation no other operation arrived for; its time is a transaction of one. */
+    private void executeMergeableAlone(AsyncOperation operation) {
+        long startNanos = System.nanoTime();
+        executeOperationJournaled(operation);
+        if (!operation.isFailed()) {
+            mergeController.onTransaction(System.nanoTime() - startNanos, 1);
+            metrics.onMergeableTransaction(1);
+        }
+        handleOperationCompleted(operation);
+    }
+
     private void executeOperationAndPostCompleted(AsyncOperation operation) {
-        executeOperation(operation);
+        executeOperationJournaled(operation);
         handleOperationCompleted(operation);
     }
 
+    /** A journaled operation is executed in a transaction that also marks it as applied, so it is not replayed. */
+    private void executeOperationJournaled(AsyncOperation operation) {
+        if (operation.journalSequence == 0) {
+            executeOperation(operation);
+            return;
+        }
+        SQLiteDatabase db = operation.getDatabase();
+        try {
+            beginTransaction(db);
+            try {
+                executeOperation(operation);
+                if (journal.markApplied(db, Collections.singletonList(operation))) {
+                    db.setTransactionSuccessful();
+                } else if (!operation.isFailed()) {
+                    operation.throwable = new DaoException("Could not mark journaled operation as applied");
+                }
+            } finally {
+                endTransaction(db);
+            }
+        } catch (RuntimeException e) {
+            operation.throwable = e;
+        }
+    }
+
     @SuppressWarnings({"unchecked", "rawtypes"})
     private void executeOperation(AsyncOperation operation) {
         operation.timeStarted = System.currentTimeMillis();
@@ -304,7 +1287,7 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
                     operation.dao.deleteInTx((Object[]) operation.parameter);
                     break;
                 case Insert:
-                    operation.dao.insert(operation.parameter);
+                    operation.result = operation.dao.insert(operation.parameter);
                     break;
                 case InsertInTxIterable:
                     operation.dao.insertInTx((Iterable<Object>) operation.parameter);
@@ -313,7 +1296,7 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
                     operation.dao.insertInTx((Object[]) operation.parameter);
                     break;
                 case InsertOrReplace:
-                    operation.dao.insertOrReplace(operation.parameter);
+                    operation.result = operation.dao.insertOrReplace(operation.parameter);
                     break;
                 case InsertOrReplaceInTxIterable:
                     operation.dao.insertOrReplaceInTx((Iterable<Object>) operation.parameter);
@@ -342,6 +1325,9 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
                 case QueryUnique:
                     operation.result = ((Query) operation.parameter).forCurrentThread().unique();
                     break;
+                case QueryChunked:
+                    operation.result = ((ChunkedQuery) operation.parameter).execute(operation);
+                    break;
                 case DeleteByKey:
                     operation.dao.deleteByKey(operation.parameter);
                     break;
@@ -372,23 +1358,40 @@ public class AsyncOperationExecutor implements Runnable, Handler.Callback{
 
     private void executeTransactionRunnable(AsyncOperation operation) {
         SQLiteDatabase db = operation.getDatabase();
-        db.beginTransaction();
+        beginTransaction(db);
         try {
             ((Runnable) operation.parameter).run();
             db.setTransactionSuccessful();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
         }
     }
 
     @SuppressWarnings("unchecked")
     private void executeTransactionCallable(AsyncOperation operation) throws Exception {
         SQLiteDatabase db = operation.getDatabase();
-        db.beginTransaction();
+        beginTransaction(db);
         try {
             operation.result = ((Callable<Object>) operation.parameter).call();
             db.setTransactionSuccessful();
         } finally {
+            endTransaction(db);
+        }
+    }
+
+    /** Transactions on the session's database go through the session, so table changes are announced on commit. */
+    private void beginTransaction(SQLiteDatabase db) {
+        if (daoSession != null && db == daoSession.getDatabase()) {
+            daoSession.beginTransaction();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    private void endTransaction(SQLiteDatabase db) {
+        if (daoSession != null && db == daoSession.getDatabase()) {
+            daoSession.endTransaction();
+        } else {
             db.endTransaction();
         }
     }
@@ -7,15 +7,20 @@ import com.mazouri.fork.greendao.AbstractDaoSession;
 import com.mazouri.fork.greendao.DaoException;
 import com.mazouri.fork.greendao.async.AsyncOperation.OperationType;
 import com.mazouri.fork.greendao.query.Query;
+import com.mazouri.fork.greendao.query.QueryChunkCallback;
 
+import java.io.File;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Asynchronous interface to entity operations. All operations will enqueued a @link {@link AsyncOperation} and return
- * immediately (fine to call on the UI/main thread). The queue will be processed in a (single) background thread. The
- * processing order is the call order of the operations. It's possible to start multiple AsyncSessions that will
- * execute
- * concurrently.
+ * immediately (fine to call on the UI/main thread). Writes will be processed in a (single) background thread in the
+ * call order of the operations within each priority (see {@link AsyncOperation#FLAG_PRIORITY_HIGH}); reads run in
+ * parallel on reader threads as defined by {@link ReadOrdering}. It's possible to start multiple AsyncSessions that
+ * will execute concurrently.
  *
  * 这是一个针对实体对象的操作的异步的接口，所有的操作将会进入队列，并且立即返回到对应的UI线程与主线程中。
  * 这个队列将运行在后台（单）线程中，处理操作的顺序依赖这些操作被调度的顺序。有可能启动多个异步的会话，那样就会并发的执行
@@ -27,13 +32,73 @@ import java.util.concurrent.Callable;
 // Facade to AsyncOperationExecutor: prepares operations and delegates work to AsyncOperationExecutor.
 //相对于AsyncOperationExecutor，这是一层壳子。准备一些操作，同时将具体的工作托管给AsyncOperationExecutor
 public class AsyncSession {
+
+    /**
+     * Defines how reads (see {@link AsyncOperation#isRead()}) are ordered relative to writes. Reads run on a bounded
+     * pool of reader threads unless ordering is {@link #STRICT}; this pays off for databases with write-ahead logging,
+     * which allow reading while another connection writes.
+     */
+    public static enum ReadOrdering {
+        /** All operations run one after another in call order on the single writer lane. */
+        STRICT,
+        /** A read starts after all operations called before it completed; later writes may run concurrently. */
+        AFTER_PRECEDING_WRITES,
+        /** Reads start immediately and may not see writes still queued when they were called. */
+        RELAXED
+    }
+
+    /**
+     * Defines what happens when an operation is enqueued while {@link #getMaxQueueSize()} operations are queued (not
+     * started yet).
+     */
+    public static enum Backpressure {
+        /**
+         * The calling thread waits until there is space; the executor's writer and reader threads (e.g. listeners
+         * called on them) fail fast instead, as waiting there could deadlock.
+         */
+        BLOCK,
+        /** A {@link DaoException} is thrown and the operation is not enqueued. */
+        FAIL_FAST,
+        /**
+         * The oldest queued operation with {@link AsyncOperation#FLAG_PRIORITY_LOW} is dropped: it completes failed
+         * without execution, see {@link AsyncOperation#isDropped()}. Fails fast if there is none.
+         */
+        DROP_OLDEST_LOW_PRIORITY
+    }
+
     private final AbstractDaoSession daoSession;    //AbstractDaoSession,可以理解为这是对Sql的异步操作线程池的外部包装
     private final AsyncOperationExecutor executor;  //维护一个线程池的变量
     private int sessionFlags;   //按照其成员变量的注解，将这个变量设置给所有的异步操作的对象
 
     public AsyncSession(AbstractDaoSession daoSession) {
+        this(daoSession, null, null);
+    }
+
+    /**
+     * @param writerExecutor Runs the writer lane; while operations are queued, it occupies one thread of the executor,
+     *                       which it gives back after {@link #getIdleTimeoutMillis()} without operations. Use an
+     *                       executor that starts a thread for each task when shared with other work (e.g. a cached
+     *                       thread pool or, on Java 21 JVMs, Executors.newVirtualThreadPerTaskExecutor()). Pass null
+     *                       to use the default executor shared by all sessions, whose threads are named
+     *                       "greenDAO-async-N"; it runs at most
+     *                       {@link AsyncOperationExecutor#DEFAULT_EXECUTOR_MAX_THREADS} writer lanes at the same
+     *                       time, further ones wait until a lane gives back its thread.
+     */
+    public AsyncSession(AbstractDaoSession daoSession, Executor writerExecutor) {
+        this(daoSession, writerExecutor, null);
+    }
+
+    /**
+     * @param writerExecutor See {@link #AsyncSession(AbstractDaoSession, Executor)}.
+     * @param readerExecutor Runs the reads (see {@link ReadOrdering}); each reader thread occupies one thread of the
+     *                       executor while reads are queued, at most {@link #getMaxReaderThreads()} at a time, and
+     *                       gives it back after {@link #getIdleTimeoutMillis()} without reads. Reads run in priority
+     *                       order regardless of the executor's own queue. Pass null to use reader threads of this
+     *                       session named "greenDAO-async-reader-N".
+     */
+    public AsyncSession(AbstractDaoSession daoSession, Executor writerExecutor, Executor readerExecutor) {
         this.daoSession = daoSession;
-        this.executor = new AsyncOperationExecutor();
+        this.executor = new AsyncOperationExecutor(daoSession, writerExecutor, readerExecutor);
     }
 
     //具体的操作交给AsyncOperationExecutor
@@ -55,6 +120,187 @@ public class AsyncSession {
         executor.setWaitForMergeMillis(waitForMergeMillis);
     }
 
+    public boolean isAdaptiveMerge() {
+        return executor.isAdaptiveMerge();
+    }
+
+    /**
+     * Enables (default) or disables adaptive merging: the wait time for merges and the count of operations per
+     * transaction follow the observed load within the target latency. Setting a fixed wait time or count disables it.
+     */
+    public void setAdaptiveMerge(boolean adaptiveMerge) {
+        executor.setAdaptiveMerge(adaptiveMerge);
+    }
+
+    public int getTargetLatencyMillis() {
+        return executor.getTargetLatencyMillis();
+    }
+
+    /** Latency a merged operation should not exceed (waiting plus transaction) when merging adaptively; default 100. */
+    public void setTargetLatencyMillis(int targetLatencyMillis) {
+        executor.setTargetLatencyMillis(targetLatencyMillis);
+    }
+
+    /** The merge wait time currently in effect (chosen by adaptive merging if enabled). */
+    public double getCurrentWaitForMergeMillis() {
+        return executor.getCurrentWaitForMergeMillis();
+    }
+
+    /** The maximum count of operations per transaction currently in effect (chosen by adaptive merging if enabled). */
+    public int getCurrentMaxOperationCountToMerge() {
+        return executor.getCurrentMaxOperationCountToMerge();
+    }
+
+    /** Smoothed interval between mergeable operations or -1 if not observed yet. */
+    public double getArrivalIntervalMillis() {
+        return executor.getArrivalIntervalMillis();
+    }
+
+    /** Smoothed duration of transactions executing mergeable operations or -1 if not observed yet. */
+    public double getTransactionMillis() {
+        return executor.getTransactionMillis();
+    }
+
+    public ReadOrdering getReadOrdering() {
+        return executor.getReadOrdering();
+    }
+
+    /** Sets the ordering of reads relative to writes; default is {@link ReadOrdering#AFTER_PRECEDING_WRITES}. */
+    public void setReadOrdering(ReadOrdering readOrdering) {
+        executor.setReadOrdering(readOrdering);
+    }
+
+    public int getMaxReaderThreads() {
+        return executor.getMaxReaderThreads();
+    }
+
+    /** Sets the number of threads executing reads in parallel (default 2); not used for {@link ReadOrdering#STRICT}. */
+    public void setMaxReaderThreads(int maxReaderThreads) {
+        executor.setMaxReaderThreads(maxReaderThreads);
+    }
+
+    public int getMaxQueueSize() {
+        return executor.getMaxQueueSize();
+    }
+
+    /**
+     * Bounds the count of queued operations (not started yet) to apply {@link #getBackpressure()} to bursts; 0 (default)
+     * is unbounded.
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        executor.setMaxQueueSize(maxQueueSize);
+    }
+
+    public Backpressure getBackpressure() {
+        return executor.getBackpressure();
+    }
+
+    /** Sets how a full queue is handled, default is {@link Backpressure#BLOCK}. */
+    public void setBackpressure(Backpressure backpressure) {
+        executor.setBackpressure(backpressure);
+    }
+
+    /** Count of enqueued operations that did not start yet. */
+    public int getQueuedCount() {
+        return executor.getQueuedCount();
+    }
+
+    public long getIdleTimeoutMillis() {
+        return executor.getIdleTimeoutMillis();
+    }
+
+    /**
+     * Sets the time the writer lane and idle reader threads wait for further operations before giving back their
+     * threads (default 1000); 0 gives back the writer thread as soon as the queue is empty.
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        executor.setIdleTimeoutMillis(idleTimeoutMillis);
+    }
+
+    /**
+     * Rejects further operations with a {@link DaoException}; queued operations are still executed. Threads are given
+     * back once they completed; a caller-supplied executor is not shut down.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /** @return true if shut down and all operations enqueued before completed. */
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    /**
+     * Waits until terminated after {@link #shutdown()}, but at most the given time.
+     *
+     * @return true if terminated in the given time frame.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /** @return true while the writer lane occupies a thread of its executor (at most one per session). */
+    public boolean isWriterThreadActive() {
+        return executor.isWriterThreadActive();
+    }
+
+    /** Name of the thread currently running the writer lane or null if there is none. */
+    public String getWriterThreadName() {
+        return executor.getWriterThreadName();
+    }
+
+    /** Current count of reader threads, at most {@link #getMaxReaderThreads()}. */
+    public int getReaderThreadCount() {
+        return executor.getReaderThreadCount();
+    }
+
+    /** Largest count of reader threads that existed at the same time. */
+    public int getLargestReaderThreadCount() {
+        return executor.getLargestReaderThreadCount();
+    }
+
+    /** Count of threads of the default executor shared by all sessions created without an executor. */
+    public static int getDefaultExecutorThreadCount() {
+        return AsyncOperationExecutor.getDefaultExecutorThreadCount();
+    }
+
+    /**
+     * Makes Insert, InsertOrReplace, Update, Delete and DeleteByKey operations durable: they are appended to the journal
+     * before being enqueued, so they survive if the process dies before executing them. The journal is stored in
+     * segment files named after the given file ("journal.1", ...), which are deleted once their operations completed.
+     * Operations remaining in the journal from a previous process are replayed right away, in one transaction on the
+     * calling thread (avoid calling it on the main thread); each one is applied once even if the process died while or
+     * after executing it. Must be called before enqueuing the first operation; use the same file for the same database
+     * only.
+     * <br/>
+     * Values are captured when enqueuing; later changes to the entity object are not journaled. Other operation types
+     * are not journaled.
+     */
+    public void enableJournal(File journalFile) {
+        executor.enableJournal(journalFile);
+    }
+
+    public boolean isJournalEnabled() {
+        return executor.isJournalEnabled();
+    }
+
+    /** Latency histograms, queue depth, merge and failure numbers of the operations of this session. */
+    public AsyncMetrics getMetrics() {
+        return executor.getMetrics();
+    }
+
+    /**
+     * Calls the given reporter with {@link #getMetrics()} every interval on a shared background thread, until set to
+     * null or the session terminated after {@link #shutdown()}.
+     */
+    public void setMetricsReporter(AsyncMetricsReporter reporter, long intervalMillis) {
+        executor.setMetricsReporter(reporter, intervalMillis);
+    }
+
     //获取异步操作的回调的观察者
     public AsyncOperationListener getListener() {
         return executor.getListener();
@@ -72,6 +318,28 @@ public class AsyncSession {
         executor.setListenerMainThread(listenerMainThread);
     }
 
+    public AsyncOperationBatchListener getBatchListenerMainThread() {
+        return executor.getBatchListenerMainThread();
+    }
+
+    /**
+     * Sets a listener called on the main thread with lists of completed operations, at most once per
+     * {@link #getMainThreadBatchIntervalMillis()}. Prefer it over {@link #setListenerMainThread(AsyncOperationListener)}
+     * for many operations: that one posts a message per operation.
+     */
+    public void setBatchListenerMainThread(AsyncOperationBatchListener batchListenerMainThread) {
+        executor.setBatchListenerMainThread(batchListenerMainThread);
+    }
+
+    public int getMainThreadBatchIntervalMillis() {
+        return executor.getMainThreadBatchIntervalMillis();
+    }
+
+    /** Minimum interval between two calls of the main thread batch listener; default is one frame (16 ms). */
+    public void setMainThreadBatchIntervalMillis(int mainThreadBatchIntervalMillis) {
+        executor.setMainThreadBatchIntervalMillis(mainThreadBatchIntervalMillis);
+    }
+
     public boolean isCompleted() {
         return executor.isCompleted();
     }
@@ -266,6 +534,21 @@ public class AsyncSession {
         return enqueueDatabaseOperation(OperationType.QueryList, query, flags);
     }
 
+    /**
+     * Asynchronous version of {@link Query#forEachChunk(int, QueryChunkCallback)}: the callback receives the entities
+     * in chunks of the given size on a reader thread while the cursor is read. The result is the count of entities
+     * delivered to the callback. {@link AsyncOperation#requestStop()} stops it between chunks.
+     */
+    public <T> AsyncOperation queryChunked(Query<T> query, int chunkSize, QueryChunkCallback<T> callback) {
+        return queryChunked(query, chunkSize, callback, 0);
+    }
+
+    /** Asynchronous version of {@link Query#forEachChunk(int, QueryChunkCallback)}. */
+    public <T> AsyncOperation queryChunked(Query<T> query, int chunkSize, QueryChunkCallback<T> callback, int flags) {
+        return enqueueDatabaseOperation(OperationType.QueryChunked, new ChunkedQuery<T>(query, chunkSize, callback),
+                flags);
+    }
+
     /** Asynchronous version of {@link Query#unique()}. */
     public AsyncOperation queryUnique(Query<?> query) {
         return queryUnique(query, 0);
@@ -316,6 +599,121 @@ public class AsyncSession {
         return enqueueEntityOperation(OperationType.Refresh, entity, flags);
     }
 
+    /** {@link DaoFuture} version of {@link AbstractDao#insert(Object)}; the result is the row ID. */
+    public DaoFuture<Long> insertFuture(Object entity) {
+        return new DaoFuture<Long>(insert(entity));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#insertInTx(Object...)}. */
+    public <E> DaoFuture<Void> insertInTxFuture(Class<E> entityClass, E... entities) {
+        return new DaoFuture<Void>(insertInTx(entityClass, entities));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#insertInTx(Iterable)}. */
+    public <E> DaoFuture<Void> insertInTxFuture(Class<E> entityClass, Iterable<E> entities) {
+        return new DaoFuture<Void>(insertInTx(entityClass, entities));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#insertOrReplace(Object)}; the result is the row ID. */
+    public DaoFuture<Long> insertOrReplaceFuture(Object entity) {
+        return new DaoFuture<Long>(insertOrReplace(entity));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#insertOrReplaceInTx(Object...)}. */
+    public <E> DaoFuture<Void> insertOrReplaceInTxFuture(Class<E> entityClass, E... entities) {
+        return new DaoFuture<Void>(insertOrReplaceInTx(entityClass, entities));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#insertOrReplaceInTx(Iterable)}. */
+    public <E> DaoFuture<Void> insertOrReplaceInTxFuture(Class<E> entityClass, Iterable<E> entities) {
+        return new DaoFuture<Void>(insertOrReplaceInTx(entityClass, entities));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#update(Object)}. */
+    public DaoFuture<Void> updateFuture(Object entity) {
+        return new DaoFuture<Void>(update(entity));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#updateInTx(Object...)}. */
+    public <E> DaoFuture<Void> updateInTxFuture(Class<E> entityClass, E... entities) {
+        return new DaoFuture<Void>(updateInTx(entityClass, entities));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#updateInTx(Iterable)}. */
+    public <E> DaoFuture<Void> updateInTxFuture(Class<E> entityClass, Iterable<E> entities) {
+        return new DaoFuture<Void>(updateInTx(entityClass, entities));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#delete(Object)}. */
+    public DaoFuture<Void> deleteFuture(Object entity) {
+        return new DaoFuture<Void>(delete(entity));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#deleteByKey(Object)}. */
+    public DaoFuture<Void> deleteByKeyFuture(Object key) {
+        return new DaoFuture<Void>(deleteByKey(key));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#deleteInTx(Object...)}. */
+    public <E> DaoFuture<Void> deleteInTxFuture(Class<E> entityClass, E... entities) {
+        return new DaoFuture<Void>(deleteInTx(entityClass, entities));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#deleteInTx(Iterable)}. */
+    public <E> DaoFuture<Void> deleteInTxFuture(Class<E> entityClass, Iterable<E> entities) {
+        return new DaoFuture<Void>(deleteInTx(entityClass, entities));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#deleteAll()}. */
+    public <E> DaoFuture<Void> deleteAllFuture(Class<E> entityClass) {
+        return new DaoFuture<Void>(deleteAll(entityClass));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDaoSession#runInTx(Runnable)}. */
+    public DaoFuture<Void> runInTxFuture(Runnable runnable) {
+        return new DaoFuture<Void>(runInTx(runnable));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDaoSession#callInTx(Callable)}. */
+    public <V> DaoFuture<V> callInTxFuture(Callable<V> callable) {
+        return new DaoFuture<V>(callInTx(callable));
+    }
+
+    /** {@link DaoFuture} version of {@link Query#list()}. */
+    public <T> DaoFuture<List<T>> queryListFuture(Query<T> query) {
+        return new DaoFuture<List<T>>(queryList(query));
+    }
+
+    /** {@link DaoFuture} version of {@link Query#forEachChunk(int, QueryChunkCallback)}; the result is the count. */
+    public <T> DaoFuture<Long> queryChunkedFuture(Query<T> query, int chunkSize, QueryChunkCallback<T> callback) {
+        return new DaoFuture<Long>(queryChunked(query, chunkSize, callback));
+    }
+
+    /** {@link DaoFuture} version of {@link Query#unique()}. */
+    public <T> DaoFuture<T> queryUniqueFuture(Query<T> query) {
+        return new DaoFuture<T>(queryUnique(query));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#load(Object)}. */
+    public <E> DaoFuture<E> loadFuture(Class<E> entityClass, Object key) {
+        return new DaoFuture<E>(load(entityClass, key));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#loadAll()}. */
+    public <E> DaoFuture<List<E>> loadAllFuture(Class<E> entityClass) {
+        return new DaoFuture<List<E>>(loadAll(entityClass));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#count()}. */
+    public DaoFuture<Long> countFuture(Class<?> entityClass) {
+        return new DaoFuture<Long>(count(entityClass));
+    }
+
+    /** {@link DaoFuture} version of {@link AbstractDao#refresh(Object)}. */
+    public DaoFuture<Void> refreshFuture(Object entity) {
+        return new DaoFuture<Void>(refresh(entity));
+    }
+
     private AsyncOperation enqueueDatabaseOperation(OperationType type, Object param, int flags) {
         SQLiteDatabase database = daoSession.getDatabase();
         AsyncOperation operation = new AsyncOperation(type, null, database, param, flags | sessionFlags);
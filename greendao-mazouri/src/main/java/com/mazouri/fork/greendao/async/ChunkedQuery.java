@@ -0,0 +1,44 @@
+package com.mazouri.fork.greendao.async;
+
+import com.mazouri.fork.greendao.query.Query;
+import com.mazouri.fork.greendao.query.QueryChunkCallback;
+
+import java.util.List;
+
+/**
+ * Parameter of {@link AsyncOperation.OperationType#QueryChunked} operations; stops reading between chunks once
+ * {@link AsyncOperation#requestStop()} was called.
+ */
+final class ChunkedQuery<T> {
+
+    private final Query<T> query;
+    private final int chunkSize;
+    private final QueryChunkCallback<T> callback;
+
+    ChunkedQuery(Query<T> query, int chunkSize, QueryChunkCallback<T> callback) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        this.query = query;
+        this.chunkSize = chunkSize;
+        this.callback = callback;
+    }
+
+    /** @return The count of entities passed to the callback. */
+    long execute(final AsyncOperation operation) {
+        // Counted here: chunks read after a stop request reach forEachChunk, but not the callback
+        final long[] delivered = new long[1];
+        query.forCurrentThread().forEachChunk(chunkSize, new QueryChunkCallback<T>() {
+            @Override
+            public boolean onChunk(List<T> chunk) {
+                if (operation.isStopRequested()) {
+                    return false;
+                }
+                boolean more = callback.onChunk(chunk);
+                delivered[0] += chunk.size();
+                return more && !operation.isStopRequested();
+            }
+        });
+        return delivered[0];
+    }
+}
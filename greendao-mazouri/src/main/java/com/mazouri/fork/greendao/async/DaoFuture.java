@@ -0,0 +1,98 @@
+package com.mazouri.fork.greendao.async;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Typed {@link Future} of an {@link AsyncOperation}, returned by the xxxFuture methods of {@link AsyncSession}.
+ * Instead of blocking in {@link #get()}, dependent work can be attached using
+ * {@link #addCallback(DaoFutureCallback, Executor)}. The operation can be canceled while it is queued, and
+ * {@link #timeout(long)} drops it if it does not start in time.
+ *
+ * 带类型与回调的异步操作结果
+ *
+ * @param <R> The result type of the operation.
+ */
+public class DaoFuture<R> implements Future<R> {
+
+    private final AsyncOperation operation;
+
+    DaoFuture(AsyncOperation operation) {
+        this.operation = operation;
+    }
+
+    public AsyncOperation getOperation() {
+        return operation;
+    }
+
+    /** See {@link AsyncOperation#setTimeout(long)}. */
+    public DaoFuture<R> timeout(long timeoutMillis) {
+        operation.setTimeout(timeoutMillis);
+        return this;
+    }
+
+    /** Like {@link #addCallback(DaoFutureCallback, Executor)} calling back on the thread completing the operation. */
+    public DaoFuture<R> addCallback(DaoFutureCallback<? super R> callback) {
+        return addCallback(callback, null);
+    }
+
+    /**
+     * Calls back once the operation completed (immediately if it already has). Without executor, the callback runs on
+     * the completing thread (e.g. the executor thread of the session) and must not block.
+     */
+    public DaoFuture<R> addCallback(final DaoFutureCallback<? super R> callback, final Executor executor) {
+        operation.addCompletionListener(new Runnable() {
+            @Override
+            public void run() {
+                Runnable call = new Runnable() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void run() {
+                        Throwable throwable = operation.getThrowable();
+                        if (throwable != null) {
+                            callback.onFailure(throwable);
+                        } else {
+                            callback.onSuccess((R) operation.result);
+                        }
+                    }
+                };
+                if (executor != null) {
+                    executor.execute(call);
+                } else {
+                    call.run();
+                }
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return operation.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return operation.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return operation.isDone();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public R get() throws InterruptedException, ExecutionException {
+        return (R) operation.get();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return (R) operation.get(timeout, unit);
+    }
+}
@@ -0,0 +1,17 @@
+package com.mazouri.fork.greendao.async;
+
+/**
+ * Callback for the outcome of a {@link DaoFuture}, see {@link DaoFuture#addCallback(DaoFutureCallback)}.
+ *
+ * @param <R> The result type of the future.
+ */
+public interface DaoFutureCallback<R> {
+
+    void onSuccess(R result);
+
+    /**
+     * Called if the operation failed, was canceled ({@link java.util.concurrent.CancellationException}) or its
+     * deadline expired before it started.
+     */
+    void onFailure(Throwable throwable);
+}
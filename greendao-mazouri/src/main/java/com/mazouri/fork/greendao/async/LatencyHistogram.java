@@ -0,0 +1,118 @@
+package com.mazouri.fork.greendao.async;
+
+/**
+ * Histogram of latencies in microseconds with log-linear buckets (like HdrHistogram): each power of two range is split
+ * into 16 buckets, so recorded values are kept with a relative error below 1/16 at constant memory (about 4 KB).
+ * Values above {@link #MAX_VALUE_MICROS} (about 19 hours) are recorded as the maximum. Instances returned by
+ * {@link AsyncMetrics} are snapshots and do not change.
+ *
+ * 对数线性分桶的延迟直方图
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 36;
+
+    public static final long MAX_VALUE_MICROS = (1L << MAX_VALUE_BITS) - 1;
+
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long[] counts;
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    LatencyHistogram() {
+        counts = new long[BUCKET_COUNT];
+    }
+
+    private LatencyHistogram(LatencyHistogram other) {
+        counts = other.counts.clone();
+        totalCount = other.totalCount;
+        sum = other.sum;
+        min = other.min;
+        max = other.max;
+    }
+
+    /** Not thread-safe, callers synchronize. */
+    void record(long valueMicros) {
+        long value = Math.min(Math.max(valueMicros, 0), MAX_VALUE_MICROS);
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    LatencyHistogram copy() {
+        return new LatencyHistogram(this);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /** The largest value that falls into the given bucket. */
+    private static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    /** Smallest recorded value or 0 if there is none. */
+    public long getMinMicros() {
+        return totalCount > 0 ? min : 0;
+    }
+
+    public long getMaxMicros() {
+        return max;
+    }
+
+    public double getMeanMicros() {
+        return totalCount > 0 ? (double) sum / totalCount : 0;
+    }
+
+    /**
+     * Returns a value that the given percentage (0 to 100) of all recorded values are less than or equal to; it is
+     * within the bucket precision of the exact percentile. Returns 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double clamped = Math.min(Math.max(percentile, 0), 100);
+        long countAtPercentile = Math.max(1, (long) Math.ceil(clamped / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count >= countAtPercentile) {
+                return Math.min(highestValueInBucket(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + totalCount + ", mean=" + Math.round(getMeanMicros()) + "us, p50=" + getValueAtPercentile(50)
+                + "us, p99=" + getValueAtPercentile(99) + "us, max=" + max + "us";
+    }
+}
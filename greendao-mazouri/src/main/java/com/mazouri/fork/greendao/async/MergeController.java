@@ -0,0 +1,112 @@
+package com.mazouri.fork.greendao.async;
+
+/**
+ * Chooses how long the writer lane waits for another operation to merge and how many operations go into one
+ * transaction. Inputs are the arrival interval of mergeable operations and the execution time of transactions, both
+ * smoothed as exponentially weighted moving averages. Waiting only pays off if another operation is likely to
+ * arrive soon, so under light load the wait drops to zero. The batch size is as large as the target latency allows
+ * for the observed time per operation, so bursts are committed in few transactions.
+ *
+ * 根据到达速率与事务耗时自适应调整合并等待时间与批量大小
+ */
+final class MergeController {
+
+    static final int DEFAULT_TARGET_LATENCY_MILLIS = 100;
+    static final int MIN_OPERATION_COUNT = 8;
+    static final int MAX_OPERATION_COUNT = 2000;
+
+    /** Weight of a new sample in the moving averages. */
+    private static final double ALPHA = 0.2;
+    /** Assumed cost of an operation until the first transaction was measured. */
+    private static final double INITIAL_OPERATION_MILLIS = 1;
+
+    private int targetLatencyMillis;
+    private long lastArrivalNanos;
+    private double arrivalIntervalMillis;   // -1 until two arrivals were seen
+    private double transactionMillis;       // -1 until measured
+    private double operationMillis;         // -1 until measured
+
+    private long waitMicros;
+    private int maxOperationCount;
+
+    MergeController() {
+        targetLatencyMillis = DEFAULT_TARGET_LATENCY_MILLIS;
+        arrivalIntervalMillis = -1;
+        transactionMillis = -1;
+        operationMillis = -1;
+        update();
+    }
+
+    synchronized void onArrival(long nanoTime) {
+        if (lastArrivalNanos != 0) {
+            // Capped at the longest possible wait: an idle gap between bursts must not dominate the average
+            double interval = Math.min((nanoTime - lastArrivalNanos) / 1e6, targetLatencyMillis / 2.0);
+            arrivalIntervalMillis = average(arrivalIntervalMillis, interval);
+        }
+        lastArrivalNanos = nanoTime;
+        update();
+    }
+
+    /** Records a committed transaction executing the given count of operations. */
+    synchronized void onTransaction(long durationNanos, int operationCount) {
+        double millis = durationNanos / 1e6;
+        transactionMillis = average(transactionMillis, millis);
+        operationMillis = average(operationMillis, millis / operationCount);
+        update();
+    }
+
+    private static double average(double average, double sample) {
+        return average < 0 ? sample : ALPHA * sample + (1 - ALPHA) * average;
+    }
+
+    private void update() {
+        double transaction = transactionMillis >= 0 ? transactionMillis : 0;
+        double operation = operationMillis > 0 ? operationMillis : INITIAL_OPERATION_MILLIS;
+        // Half the budget left after committing may be spent waiting, if a partner is likely to arrive within it
+        double waitBudget = Math.max(0, (targetLatencyMillis - transaction) / 2);
+        double wait = 0;
+        if (arrivalIntervalMillis >= 0 && 2 * arrivalIntervalMillis <= waitBudget) {
+            wait = 2 * arrivalIntervalMillis;
+        }
+        waitMicros = (long) (wait * 1000);
+        double count = (targetLatencyMillis - wait) / operation;
+        maxOperationCount = (int) Math.max(MIN_OPERATION_COUNT, Math.min(MAX_OPERATION_COUNT, count));
+    }
+
+    synchronized void setTargetLatencyMillis(int targetLatencyMillis) {
+        if (targetLatencyMillis < 1) {
+            throw new IllegalArgumentException("Illegal target latency: " + targetLatencyMillis);
+        }
+        this.targetLatencyMillis = targetLatencyMillis;
+        update();
+    }
+
+    synchronized int getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+
+    synchronized long getWaitMicros() {
+        return waitMicros;
+    }
+
+    synchronized int getMaxOperationCount() {
+        return maxOperationCount;
+    }
+
+    /** Smoothed interval between mergeable operations or -1 if unknown. */
+    synchronized double getArrivalIntervalMillis() {
+        return arrivalIntervalMillis;
+    }
+
+    /** Smoothed duration of transactions or -1 if unknown. */
+    synchronized double getTransactionMillis() {
+        return transactionMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MergeController[wait=" + waitMicros + "us, maxOperations=" + maxOperationCount + ", arrivalInterval="
+                + arrivalIntervalMillis + "ms, transaction=" + transactionMillis + "ms, target="
+                + targetLatencyMillis + "ms]";
+    }
+}
@@ -0,0 +1,24 @@
+package com.mazouri.fork.greendao.async;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names threads "&lt;prefix&gt;-&lt;number&gt;", so async threads are recognizable in thread dumps and profilers.
+ *
+ * 为异步线程命名
+ */
+final class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, prefix + "-" + threadNumber.incrementAndGet());
+    }
+}
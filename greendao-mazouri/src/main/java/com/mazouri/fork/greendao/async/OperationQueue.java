@@ -0,0 +1,114 @@
+package com.mazouri.fork.greendao.async;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of the writer lane with one FIFO lane per priority (see {@link AsyncOperation#FLAG_PRIORITY_HIGH} and
+ * {@link AsyncOperation#FLAG_PRIORITY_LOW}): operations are taken from the highest priority lane that is not empty, so
+ * call order is kept within a priority only.
+ *
+ * 按优先级分道的写队列
+ */
+final class OperationQueue {
+
+    private final List<ArrayDeque<AsyncOperation>> lanes;
+    private int size;
+    private boolean closed;
+
+    OperationQueue() {
+        lanes = new ArrayList<ArrayDeque<AsyncOperation>>(AsyncOperation.PRIORITY_COUNT);
+        for (int i = 0; i < AsyncOperation.PRIORITY_COUNT; i++) {
+            lanes.add(new ArrayDeque<AsyncOperation>());
+        }
+    }
+
+    synchronized void add(AsyncOperation operation) {
+        lanes.get(operation.getPriority()).add(operation);
+        size++;
+        notifyAll();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized AsyncOperation peek() {
+        for (ArrayDeque<AsyncOperation> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return lane.peek();
+            }
+        }
+        return null;
+    }
+
+    synchronized AsyncOperation poll() {
+        for (ArrayDeque<AsyncOperation> lane : lanes) {
+            if (!lane.isEmpty()) {
+                size--;
+                return lane.poll();
+            }
+        }
+        return null;
+    }
+
+    /** Waits up to the given time for an operation; returns null right away once closed and empty. */
+    synchronized AsyncOperation poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (size == 0) {
+            if (closed) {
+                return null;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return poll();
+    }
+
+    /** Stops waiting in {@link #poll(long, TimeUnit)} for further operations; queued operations can still be taken. */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /** Removes and returns the head if it is the given operation (it may have been dropped concurrently). */
+    synchronized AsyncOperation pollIfHead(AsyncOperation expected) {
+        if (expected != null && peek() == expected) {
+            return poll();
+        }
+        return null;
+    }
+
+    /** Removes and returns the oldest operation of the given priority or null if there is none. */
+    synchronized AsyncOperation pollOldest(int priority) {
+        AsyncOperation operation = lanes.get(priority).poll();
+        if (operation != null) {
+            size--;
+        }
+        return operation;
+    }
+
+    /** Returns the oldest operation of the given priority without removing it. */
+    synchronized AsyncOperation peekOldest(int priority) {
+        return lanes.get(priority).peek();
+    }
+
+    /** Removes the given operation. */
+    synchronized boolean remove(AsyncOperation operation) {
+        Iterator<AsyncOperation> iterator = lanes.get(operation.getPriority()).iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == operation) {
+                iterator.remove();
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,375 @@
+package com.mazouri.fork.greendao.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the statements of a SQL script one at a time without loading the whole script (used by greenDAO internally).
+ * Statements end at semicolons outside of string literals, quoted identifiers and comments; comments are dropped. Like
+ * SQLite's sqlite3_complete, a CREATE TRIGGER statement ends only at a semicolon following END.
+ * <p/>
+ * If enabled, the literals of INSERT ... VALUES statements are replaced by parameters, so scripts made of many inserts
+ * into the same table share a few prepared statements.
+ *
+ * 流式读取SQL脚本中的语句
+ */
+public class SqlScriptReader implements Closeable {
+
+    /** SQLite's default SQLITE_MAX_VARIABLE_NUMBER. */
+    private static final int MAX_BIND_ARGS = 999;
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    private final StringBuilder sql = new StringBuilder();
+    private final StringBuilder template = new StringBuilder();
+    private final List<Object> bindArgs = new ArrayList<Object>();
+    private boolean parameterizeInserts;
+
+    // State of the statement being read
+    private int wordCount;
+    private String firstWord;
+    private boolean trigger;
+    private boolean values;
+    private boolean select;
+    private String lastWord;
+
+    private String statementSql;
+    private Object[] statementBindArgs;
+    private int lineNumber = 1;
+    private int statementLineNumber;
+
+    public SqlScriptReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /** Replaces literals of INSERT/REPLACE ... VALUES statements by parameters, see {@link #getBindArgs()}. */
+    public void setParameterizeInserts(boolean parameterizeInserts) {
+        this.parameterizeInserts = parameterizeInserts;
+    }
+
+    /** The statement read by the last call to {@link #next()}, without the trailing semicolon. */
+    public String getSql() {
+        return statementSql;
+    }
+
+    /**
+     * The values for the parameters of the current statement (Long, Double, String or byte[]), or null if the statement
+     * has no parameters.
+     */
+    public Object[] getBindArgs() {
+        return statementBindArgs;
+    }
+
+    /** The line of the script the current statement starts at (1-based). */
+    public int getLineNumber() {
+        return statementLineNumber;
+    }
+
+    /**
+     * Reads the next non-empty statement.
+     *
+     * @return false if the end of the script was reached.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            resetStatement();
+            boolean end = readStatement();
+            String text = sql.toString().trim();
+            if (text.length() > 0) {
+                if (isParameterizable()) {
+                    statementSql = template.toString().trim();
+                    statementBindArgs = bindArgs.toArray();
+                } else {
+                    statementSql = text;
+                    statementBindArgs = null;
+                }
+                return true;
+            } else if (end) {
+                statementSql = null;
+                statementBindArgs = null;
+                return false;
+            }
+        }
+    }
+
+    private void resetStatement() {
+        sql.setLength(0);
+        template.setLength(0);
+        bindArgs.clear();
+        wordCount = 0;
+        firstWord = null;
+        trigger = false;
+        values = false;
+        select = false;
+        lastWord = null;
+        statementLineNumber = 0;
+    }
+
+    private boolean isParameterizable() {
+        return parameterizeInserts && !bindArgs.isEmpty() && bindArgs.size() <= MAX_BIND_ARGS && values && !select
+                && ("INSERT".equals(firstWord) || "REPLACE".equals(firstWord));
+    }
+
+    /** @return true if the end of the script was reached. */
+    private boolean readStatement() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == EOF) {
+                return true;
+            }
+            boolean comment = (c == '-' && peek() == '-') || (c == '/' && peek() == '*');
+            if (statementLineNumber == 0 && !comment && !Character.isWhitespace(c)) {
+                statementLineNumber = lineNumber;
+            }
+            if (c == ';') {
+                if (!trigger || "END".equals(lastWord)) {
+                    return false;
+                }
+                append((char) c);
+                lastWord = null;
+            } else if (comment && c == '-') {
+                skipLineComment();
+            } else if (comment) {
+                read();
+                skipBlockComment();
+            } else if (c == '\'') {
+                String literal = readQuoted('\'', '\'');
+                sql.append(literal);
+                addBindArg(unquote(literal));
+                lastWord = null;
+            } else if (c == '"' || c == '`') {
+                appendRaw(readQuoted((char) c, (char) c));
+                lastWord = null;
+            } else if (c == '[') {
+                appendRaw(readQuoted('[', ']'));
+                lastWord = null;
+            } else if (isDigit(c) || (c == '.' && isDigit(peek()))) {
+                readNumber((char) c);
+                lastWord = null;
+            } else if (isWordStart(c)) {
+                readWord((char) c);
+            } else {
+                append((char) c);
+                if (!Character.isWhitespace(c)) {
+                    lastWord = null;
+                }
+            }
+        }
+    }
+
+    private void readWord(char first) throws IOException {
+        StringBuilder word = new StringBuilder();
+        word.append(first);
+        while (isWordPart(peek())) {
+            word.append((char) read());
+        }
+        if (word.length() == 1 && (first == 'x' || first == 'X') && peek() == '\'') {
+            // Blob literal
+            read();
+            String literal = readQuoted('\'', '\'');
+            sql.append(first).append(literal);
+            byte[] blob = parseHex(unquote(literal));
+            if (blob != null) {
+                addBindArg(blob);
+            } else {
+                template.append(first).append(literal);
+            }
+            lastWord = null;
+            return;
+        }
+        String text = word.toString();
+        appendRaw(text);
+        String upper = text.toUpperCase(Locale.ENGLISH);
+        wordCount++;
+        if (wordCount == 1) {
+            firstWord = upper;
+        } else if ("CREATE".equals(firstWord) && "TRIGGER".equals(upper)
+                && (wordCount == 2 || (wordCount == 3 && ("TEMP".equals(lastWord) || "TEMPORARY".equals(lastWord))))) {
+            trigger = true;
+        }
+        if ("VALUES".equals(upper)) {
+            values = true;
+        } else if ("SELECT".equals(upper)) {
+            select = true;
+        }
+        lastWord = upper;
+    }
+
+    private void readNumber(char first) throws IOException {
+        StringBuilder number = new StringBuilder();
+        number.append(first);
+        if (first == '0' && (peek() == 'x' || peek() == 'X')) {
+            // Hex integer, kept as it is
+            while (isWordPart(peek())) {
+                number.append((char) read());
+            }
+            appendRaw(number.toString());
+            return;
+        }
+        boolean real = first == '.';
+        while (true) {
+            int c = peek();
+            if (isDigit(c)) {
+                number.append((char) read());
+            } else if (c == '.' && !real) {
+                real = true;
+                number.append((char) read());
+            } else if (c == 'e' || c == 'E') {
+                real = true;
+                number.append((char) read());
+                c = peek();
+                if (c == '+' || c == '-') {
+                    number.append((char) read());
+                }
+            } else {
+                break;
+            }
+        }
+        String text = number.toString();
+        sql.append(text);
+        Object value;
+        try {
+            value = real ? (Object) Double.valueOf(text) : (Object) Long.valueOf(text);
+        } catch (NumberFormatException e) {
+            // Out of range for a long: let SQLite decide
+            value = null;
+        }
+        if (value != null) {
+            addBindArg(value);
+        } else {
+            template.append(text);
+        }
+    }
+
+    private void addBindArg(Object value) {
+        bindArgs.add(value);
+        template.append('?');
+    }
+
+    /** Reads up to and including the closing quote; doubled closing quotes are part of the content. */
+    private String readQuoted(char open, char close) throws IOException {
+        StringBuilder quoted = new StringBuilder();
+        quoted.append(open);
+        while (true) {
+            int c = read();
+            if (c == EOF) {
+                return quoted.toString();
+            }
+            quoted.append((char) c);
+            if (c == close) {
+                if (close != ']' && peek() == close) {
+                    quoted.append((char) read());
+                } else {
+                    return quoted.toString();
+                }
+            }
+        }
+    }
+
+    private static String unquote(String literal) {
+        int end = literal.length() > 1 && literal.endsWith("'") ? literal.length() - 1 : literal.length();
+        return literal.substring(1, end).replace("''", "'");
+    }
+
+    private static byte[] parseHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high == -1 || low == -1) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private void skipLineComment() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == EOF || c == '\n') {
+                break;
+            }
+            read();
+        }
+        append(' ');
+    }
+
+    private void skipBlockComment() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == EOF || (c == '*' && peek() == '/')) {
+                read();
+                break;
+            }
+        }
+        append(' ');
+    }
+
+    private void append(char c) {
+        sql.append(c);
+        template.append(c);
+    }
+
+    private void appendRaw(String text) {
+        sql.append(text);
+        template.append(text);
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordStart(int c) {
+        return c == '_' || (c != EOF && Character.isLetter(c));
+    }
+
+    private static boolean isWordPart(int c) {
+        return c == '_' || c == '$' || (c != EOF && Character.isLetterOrDigit(c));
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+            lineNumber++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int count = reader.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
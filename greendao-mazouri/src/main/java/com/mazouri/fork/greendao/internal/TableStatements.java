@@ -3,6 +3,9 @@ package com.mazouri.fork.greendao.internal;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Helper class to create SQL statements for specific tables (used by greenDAO internally).
  *
@@ -12,6 +15,9 @@ import android.database.sqlite.SQLiteStatement;
  */
 public class TableStatements {
 
+    /** Maximum number of query SQL templates kept per table, see {@link #getQueryTemplate(Object)}. */
+    public static final int QUERY_TEMPLATE_CACHE_SIZE = 64;
+
     private final SQLiteDatabase db;
     //tablename、allColumns、pkColumns 分别对应的是表的名称、所有的字段的名称的数组、所有的主键的字段的数组
     private final String tablename;
@@ -30,12 +36,21 @@ public class TableStatements {
     private volatile String selectByRowId;
     private volatile String selectKeys;
 
+    //QueryBuilder按查询结构缓存的Sql模板，LRU
+    private final Map<Object, Object> queryTemplates;
+
     //参数有表名，字段名的数组，主键名的数组
     public TableStatements(SQLiteDatabase db, String tablename, String[] allColumns, String[] pkColumns) {
         this.db = db;
         this.tablename = tablename;
         this.allColumns = allColumns;
         this.pkColumns = pkColumns;
+        queryTemplates = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                return size() > QUERY_TEMPLATE_CACHE_SIZE;
+            }
+        };
     }
 
     //获取可执行的插入执行语句的对象
@@ -106,4 +121,18 @@ public class TableStatements {
         }
         return selectByRowId;
     }
+
+    /** Returns the SQL template cached by QueryBuilder for the given query shape, or null. */
+    public Object getQueryTemplate(Object shape) {
+        synchronized (queryTemplates) {
+            return queryTemplates.get(shape);
+        }
+    }
+
+    /** Caches a SQL template for the given query shape; the least recently used templates are dropped. */
+    public void putQueryTemplate(Object shape, Object template) {
+        synchronized (queryTemplates) {
+            queryTemplates.put(shape, template);
+        }
+    }
 }
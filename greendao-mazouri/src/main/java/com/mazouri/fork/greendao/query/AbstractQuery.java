@@ -4,35 +4,82 @@ import com.mazouri.fork.greendao.AbstractDao;
 import com.mazouri.fork.greendao.DaoException;
 import com.mazouri.fork.greendao.InternalQueryDaoAccess;
 
+import java.util.Collection;
+import java.util.Date;
+
 /**
+ * Parameters are kept typed and bound natively (see {@link BindingCursorFactory}): integral numbers, dates and booleans
+ * as long, floating point numbers as double, byte arrays as BLOB and everything else as string. The keys of inLarge
+ * conditions are bound inline in fixed-size lists or loaded into a temporary table (see {@link BulkKeys}).
+ *
  * Created by wangdong on 16-1-18.
  */
 abstract class AbstractQuery<T> {
+    /** Marks a parameter whose value is stored unboxed in {@link #rawParameters}. */
+    static final Object RAW_LONG = new Object();
+    /** Marks a parameter whose value is stored unboxed as double bits in {@link #rawParameters}. */
+    static final Object RAW_DOUBLE = new Object();
+
     protected final AbstractDao<T, ?> dao;
     protected final InternalQueryDaoAccess<T> daoAccess;
     protected final String sql;
-    protected final String[] parameters;
+    protected final Object[] parameters;
+    protected final long[] rawParameters;
     protected final Thread ownerThread;
 
-    protected static String[] toStringArray(Object[] values) {
+    protected static Object[] toParameterArray(Object[] values) {
         int length = values.length;
-        String[] strings = new String[length];
+        Object[] parameters = new Object[length];
         for (int i = 0; i < length; i++) {
-            Object object = values[i];
-            if (object != null) {
-                strings[i] = object.toString();
-            } else {
-                strings[i] = null;
+            parameters[i] = toParameter(values[i]);
+        }
+        return parameters;
+    }
+
+    /**
+     * Normalizes the given value to null, Long, Double, byte[] or String. Key sets for inLarge conditions (long[] or
+     * Collection) become {@link BulkKeys}.
+     */
+    static Object toParameter(Object value) {
+        if (value == null || value instanceof Long || value instanceof Double || value instanceof String
+                || value instanceof byte[] || value instanceof BulkKeys) {
+            return value;
+        } else if (value instanceof long[]) {
+            return new BulkKeys((long[]) value);
+        } else if (value instanceof Collection) {
+            return new BulkKeys((Collection<?>) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1L : 0L;
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else {
+            return value.toString();
+        }
+    }
+
+    /** Returns the parameters with unboxed values boxed again, e.g. to be used as a cache key. */
+    static Object[] boxParameters(Object[] parameters, long[] rawParameters) {
+        Object[] boxed = parameters.clone();
+        for (int i = 0; i < boxed.length; i++) {
+            if (boxed[i] == RAW_LONG) {
+                boxed[i] = rawParameters[i];
+            } else if (boxed[i] == RAW_DOUBLE) {
+                boxed[i] = Double.longBitsToDouble(rawParameters[i]);
             }
         }
-        return strings;
+        return boxed;
     }
 
-    protected AbstractQuery(AbstractDao<T, ?> dao, String sql, String[] parameters) {
+    protected AbstractQuery(AbstractDao<T, ?> dao, String sql, Object[] parameters) {
         this.dao = dao;
         this.daoAccess = new InternalQueryDaoAccess<T>(dao);
         this.sql = sql;
         this.parameters = parameters;
+        rawParameters = new long[parameters.length];
         ownerThread = Thread.currentThread();
     }
 
@@ -45,11 +92,21 @@ abstract class AbstractQuery<T> {
      */
     public void setParameter(int index, Object parameter) {
         checkThread();
-        if (parameter != null) {
-            parameters[index] = parameter.toString();
-        } else {
-            parameters[index] = null;
-        }
+        parameters[index] = toParameter(parameter);
+    }
+
+    /** Like {@link #setParameter(int, Object)}, but binds the value as integer without boxing it. */
+    public void setParameter(int index, long parameter) {
+        checkThread();
+        parameters[index] = RAW_LONG;
+        rawParameters[index] = parameter;
+    }
+
+    /** Like {@link #setParameter(int, Object)}, but binds the value as floating point number without boxing it. */
+    public void setParameter(int index, double parameter) {
+        checkThread();
+        parameters[index] = RAW_DOUBLE;
+        rawParameters[index] = Double.doubleToRawLongBits(parameter);
     }
 
     protected void checkThread() {
@@ -15,10 +15,10 @@ import java.lang.ref.WeakReference;
 abstract class AbstractQueryData<T, Q extends AbstractQuery<T>> {
     final String sql;
     final AbstractDao<T, ?> dao;
-    final String[] initialValues;
+    final Object[] initialValues;
     final SparseArray<WeakReference<Q>> queriesForThreads;
 
-    AbstractQueryData(AbstractDao<T, ?> dao, String sql, String[] initialValues) {
+    AbstractQueryData(AbstractDao<T, ?> dao, String sql, Object[] initialValues) {
         this.dao = dao;
         this.sql = sql;
         this.initialValues = initialValues;
@@ -18,7 +18,7 @@ abstract class AbstractQueryWithLimit<T> extends AbstractQuery<T> {
     protected final int limitPosition;
     protected final int offsetPosition;
 
-    protected AbstractQueryWithLimit(AbstractDao<T, ?> dao, String sql, String[] initialValues, int limitPosition,
+    protected AbstractQueryWithLimit(AbstractDao<T, ?> dao, String sql, Object[] initialValues, int limitPosition,
                                      int offsetPosition) {
         super(dao, sql, initialValues);
         this.limitPosition = limitPosition;
@@ -30,10 +30,26 @@ abstract class AbstractQueryWithLimit<T> extends AbstractQuery<T> {
      * standard WHERE parameters come first. After that come the WHERE parameters of joins (if any).
      */
     public void setParameter(int index, Object parameter) {
+        checkIndex(index);
+        super.setParameter(index, parameter);
+    }
+
+    /** Like {@link #setParameter(int, Object)}, but binds the value as integer without boxing it. */
+    public void setParameter(int index, long parameter) {
+        checkIndex(index);
+        super.setParameter(index, parameter);
+    }
+
+    /** Like {@link #setParameter(int, Object)}, but binds the value as floating point number without boxing it. */
+    public void setParameter(int index, double parameter) {
+        checkIndex(index);
+        super.setParameter(index, parameter);
+    }
+
+    private void checkIndex(int index) {
         if (index >= 0 && (index == limitPosition || index == offsetPosition)) {
             throw new IllegalArgumentException("Illegal parameter index: " + index);
         }
-        super.setParameter(index, parameter);
     }
 
     public void setParameter(int index, Date parameter) {
@@ -56,7 +72,8 @@ abstract class AbstractQueryWithLimit<T> extends AbstractQuery<T> {
         if (limitPosition == -1) {
             throw new IllegalStateException("Limit must be set with QueryBuilder before it can be used here");
         }
-        parameters[limitPosition] = Integer.toString(limit);
+        parameters[limitPosition] = RAW_LONG;
+        rawParameters[limitPosition] = limit;
     }
 
     /**
@@ -69,6 +86,7 @@ abstract class AbstractQueryWithLimit<T> extends AbstractQuery<T> {
         if (offsetPosition == -1) {
             throw new IllegalStateException("Offset must be set with QueryBuilder before it can be used here");
         }
-        parameters[offsetPosition] = Integer.toString(offset);
+        parameters[offsetPosition] = RAW_LONG;
+        rawParameters[offsetPosition] = offset;
     }
 }
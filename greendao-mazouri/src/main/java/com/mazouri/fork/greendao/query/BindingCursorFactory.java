@@ -0,0 +1,69 @@
+package com.mazouri.fork.greendao.query;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+
+import com.mazouri.fork.greendao.DaoException;
+
+/**
+ * Internal class to bind typed query parameters. SQLiteDatabase.rawQuery only accepts strings, so queries are run
+ * with this factory, which binds the parameters to the compiled SQLiteQuery before the cursor is created.
+ *
+ * 按类型绑定查询参数，而不是全部转成字符串
+ */
+final class BindingCursorFactory implements SQLiteDatabase.CursorFactory {
+
+    /** Runs the given SELECT with the given parameters (see {@link AbstractQuery#toParameter(Object)}). */
+    static Cursor query(SQLiteDatabase db, String sql, Object[] parameters, long[] rawParameters) {
+        return db.rawQueryWithFactory(new BindingCursorFactory(parameters, rawParameters), sql, null, null);
+    }
+
+    /** Binds the given parameters to the given program; rawParameters may be null if there are no unboxed values. */
+    static void bind(SQLiteProgram program, Object[] parameters, long[] rawParameters) {
+        for (int i = 0; i < parameters.length; i++) {
+            Object value = parameters[i];
+            if (value == AbstractQuery.RAW_LONG) {
+                program.bindLong(i + 1, rawParameters[i]);
+            } else if (value == AbstractQuery.RAW_DOUBLE) {
+                program.bindDouble(i + 1, Double.longBitsToDouble(rawParameters[i]));
+            } else {
+                bindValue(program, i + 1, value);
+            }
+        }
+    }
+
+    /** Binds a single normalized value (1 based index). */
+    static void bindValue(SQLiteProgram program, int index, Object value) {
+        if (value == null) {
+            program.bindNull(index);
+        } else if (value instanceof Long) {
+            program.bindLong(index, (Long) value);
+        } else if (value instanceof Double) {
+            program.bindDouble(index, (Double) value);
+        } else if (value instanceof byte[]) {
+            program.bindBlob(index, (byte[]) value);
+        } else if (value instanceof BulkKeys) {
+            throw new DaoException("Keys of inLarge conditions must be loaded before binding");
+        } else {
+            program.bindString(index, value.toString());
+        }
+    }
+
+    private final Object[] parameters;
+    private final long[] rawParameters;
+
+    private BindingCursorFactory(Object[] parameters, long[] rawParameters) {
+        this.parameters = parameters;
+        this.rawParameters = rawParameters;
+    }
+
+    @Override
+    public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+        bind(query, parameters, rawParameters);
+        return new SQLiteCursor(masterQuery, editTable, query);
+    }
+}
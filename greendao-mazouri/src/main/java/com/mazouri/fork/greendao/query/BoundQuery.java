@@ -0,0 +1,87 @@
+package com.mazouri.fork.greendao.query;
+
+import com.mazouri.fork.greendao.DaoException;
+
+import java.util.List;
+
+/**
+ * An immutable call of a {@link Query} with its own parameter values, created by {@link Query#with(Object...)}.
+ * Instances are not bound to a thread: the compiled SQL is shared, the parameters are owned by this object, and
+ * nothing is synchronized when executing (except the result cache, if the query opted in).<br/>
+ * <br/>
+ * Example: <code>List&lt;Note&gt; notes = query.with(authorId, true).list();</code>
+ *
+ * 线程安全的查询调用，每次调用携带自己的参数
+ *
+ * @param <T> The entity class the query will return results for.
+ */
+public class BoundQuery<T> {
+
+    private final Query<T> query;
+    private final Object[] parameters;
+
+    BoundQuery(Query<T> query, Object[] parameters) {
+        this.query = query;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Returns a copy using the given limit. {@link QueryBuilder#limit(int)} must have been called on the QueryBuilder
+     * that created the query.
+     */
+    public BoundQuery<T> limit(int limit) {
+        if (query.limitPosition == -1) {
+            throw new IllegalStateException("Limit must be set with QueryBuilder before it can be used here");
+        }
+        Object[] values = parameters.clone();
+        values[query.limitPosition] = (long) limit;
+        return new BoundQuery<T>(query, values);
+    }
+
+    /**
+     * Returns a copy using the given offset. {@link QueryBuilder#offset(int)} must have been called on the
+     * QueryBuilder that created the query.
+     */
+    public BoundQuery<T> offset(int offset) {
+        if (query.offsetPosition == -1) {
+            throw new IllegalStateException("Offset must be set with QueryBuilder before it can be used here");
+        }
+        Object[] values = parameters.clone();
+        values[query.offsetPosition] = (long) offset;
+        return new BoundQuery<T>(query, values);
+    }
+
+    /** See {@link Query#list()}. */
+    public List<T> list() {
+        return query.list(parameters, null);
+    }
+
+    /** See {@link Query#listLazy()}. */
+    public LazyList<T> listLazy() {
+        return query.listLazy(parameters, null, true);
+    }
+
+    /** See {@link Query#listLazyUncached()}. */
+    public LazyList<T> listLazyUncached() {
+        return query.listLazy(parameters, null, false);
+    }
+
+    /** See {@link Query#listIterator()}. */
+    public CloseableListIterator<T> listIterator() {
+        return listLazyUncached().listIteratorAutoClose();
+    }
+
+    /** See {@link Query#unique()}. */
+    public T unique() {
+        return query.unique(parameters, null);
+    }
+
+    /** See {@link Query#uniqueOrThrow()}. */
+    public T uniqueOrThrow() {
+        T entity = unique();
+        if (entity == null) {
+            throw new DaoException("No entity found for query");
+        }
+        return entity;
+    }
+}
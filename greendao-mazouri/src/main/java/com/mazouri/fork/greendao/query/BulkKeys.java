@@ -0,0 +1,291 @@
+package com.mazouri.fork.greendao.query;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.mazouri.fork.greendao.DaoException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Internal class holding the keys of a {@link WhereCondition.LargeInCondition} as a query parameter.
+ * <p/>
+ * Reads bind the keys inline where possible (see {@link #inline(String, Object[], long[], boolean)}): the subquery is
+ * replaced by "IN (?,...)" with a fixed arity, so a query has only a few distinct SQL strings for SQLite's statement
+ * cache. Otherwise, and for deletes, the keys are written to a temporary table inside a transaction and the parameter
+ * is replaced by the slot number of the keys in that table, so the SQL and its single placeholder stay the same for
+ * any number of keys. Temporary tables live in the connection, so the query must be read completely before the
+ * transaction ends.
+ *
+ * 大量IN参数优先按固定数目内联绑定，否则先写入临时表，查询时用子查询关联
+ */
+final class BulkKeys {
+
+    static final String TABLENAME = "greendao_bulk_keys";
+
+    /** SQL to append to a column, the placeholder takes the slot. */
+    static final String IN_SQL = " IN (SELECT k FROM temp." + TABLENAME + " WHERE slot=?)";
+
+    private static final String CREATE_SQL = "CREATE TEMP TABLE IF NOT EXISTS " + TABLENAME
+            + " (slot INTEGER NOT NULL, k NOT NULL, PRIMARY KEY (slot, k))";
+    private static final String INSERT_SQL = "INSERT OR IGNORE INTO temp." + TABLENAME + " (slot, k) VALUES (?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM temp." + TABLENAME + " WHERE slot=?";
+
+    /** SQLite's default limit of host parameters in a statement (SQLITE_MAX_VARIABLE_NUMBER). */
+    private static final int MAX_VARIABLES = 999;
+
+    /** Largest number of keys bound inline for one condition, also the chunk size. */
+    static final int MAX_INLINE_KEYS = 512;
+
+    private static final int MIN_INLINE_KEYS = 8;
+
+    /** SQL and parameters of one statement of an inline read. */
+    static final class Statement {
+        final String sql;
+        final Object[] parameters;
+
+        Statement(String sql, Object[] parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    private final long[] longKeys;
+    private final Object[] keys;
+
+    BulkKeys(long[] keys) {
+        longKeys = keys;
+        this.keys = null;
+    }
+
+    BulkKeys(Collection<?> keys) {
+        longKeys = null;
+        Object[] values = new Object[keys.size()];
+        int i = 0;
+        for (Object key : keys) {
+            values[i++] = AbstractQuery.toParameter(key);
+        }
+        this.keys = values;
+    }
+
+    /** Adds the keys as Long or normalized values (see {@link AbstractQuery#toParameter(Object)}). */
+    void addKeysTo(Collection<Object> target) {
+        if (longKeys != null) {
+            for (long key : longKeys) {
+                target.add(key);
+            }
+        } else {
+            for (Object key : keys) {
+                target.add(key);
+            }
+        }
+    }
+
+    int size() {
+        return longKeys != null ? longKeys.length : keys.length;
+    }
+
+    /** The keys without NULL, which never matches IN. */
+    private Object[] nonNullKeys() {
+        if (longKeys != null) {
+            Object[] values = new Object[longKeys.length];
+            for (int i = 0; i < longKeys.length; i++) {
+                values[i] = longKeys[i];
+            }
+            return values;
+        }
+        List<Object> values = new ArrayList<Object>(keys.length);
+        for (Object key : keys) {
+            if (key != null) {
+                values.add(key);
+            }
+        }
+        return values.toArray();
+    }
+
+    static boolean contains(Object[] parameters) {
+        for (Object parameter : parameters) {
+            if (parameter instanceof BulkKeys) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void checkNone(Object[] parameters, String usage) {
+        if (contains(parameters)) {
+            throw new DaoException("inLarge conditions are not supported for " + usage);
+        }
+    }
+
+    /**
+     * Plans a read binding the keys inline, which needs no transaction and no temporary table. Each BulkKeys parameter
+     * becomes "IN (?,...)" with the next power of two of its key count as arity (padded by repeating a key), so only a
+     * few SQL strings exist per query. If the keys exceed SQLite's parameter limit and chunkable is true, the keys of
+     * the single BulkKeys parameter are split into chunks of {@link #MAX_INLINE_KEYS}, one statement per chunk.
+     *
+     * @param chunkable true if the query has a single inLarge condition ANDed to the WHERE clause and no ORDER BY,
+     *                  LIMIT or OFFSET, so the results of the chunks are disjoint and may be concatenated or summed.
+     * @return the statements (parameters boxed), or null if the temporary table must be used
+     */
+    static List<Statement> inline(String sql, Object[] parameters, long[] rawParameters, boolean chunkable) {
+        Object[] boxed = AbstractQuery.boxParameters(parameters, rawParameters);
+        Object[][] keys = new Object[boxed.length][];
+        int bulkIndex = -1;
+        int bulkCount = 0;
+        int variables = 0;
+        for (int i = 0; i < boxed.length; i++) {
+            if (boxed[i] instanceof BulkKeys) {
+                keys[i] = ((BulkKeys) boxed[i]).nonNullKeys();
+                bulkIndex = i;
+                bulkCount++;
+                variables += arity(keys[i].length);
+            } else {
+                variables++;
+            }
+        }
+        if (variables <= MAX_VARIABLES) {
+            Statement statement = expand(sql, boxed, keys);
+            return statement != null ? Collections.singletonList(statement) : null;
+        }
+        Object[] allKeys = bulkCount == 1 ? keys[bulkIndex] : null;
+        if (!chunkable || allKeys == null || boxed.length - 1 + MAX_INLINE_KEYS > MAX_VARIABLES) {
+            return null;
+        }
+        List<Statement> statements = new ArrayList<Statement>(allKeys.length / MAX_INLINE_KEYS + 1);
+        for (int offset = 0; offset < allKeys.length; offset += MAX_INLINE_KEYS) {
+            keys[bulkIndex] = Arrays.copyOfRange(allKeys, offset, Math.min(offset + MAX_INLINE_KEYS, allKeys.length));
+            Statement statement = expand(sql, boxed, keys);
+            if (statement == null) {
+                return null;
+            }
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    /** Keys above {@link #MAX_INLINE_KEYS} result in an arity exceeding {@link #MAX_VARIABLES}. */
+    private static int arity(int keyCount) {
+        if (keyCount == 0) {
+            return 0;
+        }
+        int arity = MIN_INLINE_KEYS;
+        while (arity < keyCount) {
+            arity <<= 1;
+        }
+        return arity;
+    }
+
+    /** Replaces the n-th {@link #IN_SQL} by the keys of the n-th BulkKeys parameter; null if the SQL does not match. */
+    private static Statement expand(String sql, Object[] boxed, Object[][] keys) {
+        StringBuilder builder = new StringBuilder(sql.length() + 64);
+        List<Object> bound = new ArrayList<Object>(boxed.length + 64);
+        int start = 0;
+        for (int i = 0; i < boxed.length; i++) {
+            if (keys[i] == null) {
+                bound.add(boxed[i]);
+                continue;
+            }
+            int position = sql.indexOf(IN_SQL, start);
+            if (position < 0) {
+                return null;
+            }
+            builder.append(sql, start, position).append(" IN (");
+            Object[] values = keys[i];
+            int arity = arity(values.length);
+            for (int j = 0; j < arity; j++) {
+                builder.append(j > 0 ? ",?" : "?");
+                bound.add(values[Math.min(j, values.length - 1)]);
+            }
+            builder.append(')');
+            start = position + IN_SQL.length();
+        }
+        if (sql.indexOf(IN_SQL, start) >= 0) {
+            return null;
+        }
+        builder.append(sql, start, sql.length());
+        return new Statement(builder.toString(), bound.toArray());
+    }
+
+    /**
+     * Starts the transaction for a read using the temporary table or several chunks. It is not exclusive (BEGIN
+     * IMMEDIATE): it takes SQLite's RESERVED lock, which blocks other writers until it ends, but not readers.
+     */
+    static void beginRead(SQLiteDatabase db) {
+        db.beginTransactionNonExclusive();
+    }
+
+    /**
+     * Writes the keys of all BulkKeys parameters to the temporary table and returns the parameters to bind, where each
+     * BulkKeys parameter is replaced by its slot. Must be called inside a transaction.
+     */
+    static Object[] load(SQLiteDatabase db, Object[] parameters) {
+        db.execSQL(CREATE_SQL);
+        Object[] bound = parameters.clone();
+        SQLiteStatement delete = null;
+        SQLiteStatement insert = null;
+        try {
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i] instanceof BulkKeys) {
+                    if (delete == null) {
+                        delete = db.compileStatement(DELETE_SQL);
+                        insert = db.compileStatement(INSERT_SQL);
+                    }
+                    long slot = i;
+                    delete.bindLong(1, slot);
+                    delete.executeUpdateDelete();
+                    ((BulkKeys) parameters[i]).insert(insert, slot);
+                    bound[i] = slot;
+                }
+            }
+        } finally {
+            if (delete != null) {
+                delete.close();
+                insert.close();
+            }
+        }
+        return bound;
+    }
+
+    private void insert(SQLiteStatement insert, long slot) {
+        insert.bindLong(1, slot);
+        if (longKeys != null) {
+            for (long key : longKeys) {
+                insert.bindLong(2, key);
+                insert.executeInsert();
+            }
+        } else {
+            for (Object key : keys) {
+                if (key != null) {
+                    // NULL never matches IN, skip it
+                    BindingCursorFactory.bindValue(insert, 2, key);
+                    insert.executeInsert();
+                }
+            }
+        }
+    }
+
+    /** Removes the keys written by {@link #load(SQLiteDatabase, Object[])} for the given parameters. */
+    static void release(SQLiteDatabase db, Object[] parameters) {
+        SQLiteStatement delete = db.compileStatement(DELETE_SQL);
+        try {
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i] instanceof BulkKeys) {
+                    delete.bindLong(1, i);
+                    delete.executeUpdateDelete();
+                }
+            }
+        } finally {
+            delete.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BulkKeys[" + size() + "]";
+    }
+}
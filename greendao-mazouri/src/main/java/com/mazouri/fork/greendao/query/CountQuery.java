@@ -1,10 +1,13 @@
 package com.mazouri.fork.greendao.query;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
 import com.mazouri.fork.greendao.AbstractDao;
 import com.mazouri.fork.greendao.DaoException;
 
+import java.util.List;
+
 /**
  * 指定的查询语句结果集的查询的数目
  *
@@ -13,9 +16,11 @@ import com.mazouri.fork.greendao.DaoException;
 public class CountQuery<T> extends AbstractQuery<T> {
 
     private final static class QueryData<T2> extends AbstractQueryData<T2, CountQuery<T2>> {
+        private final boolean chunkable;
 
-        private QueryData(AbstractDao<T2, ?> dao, String sql, String[] initialValues) {
+        private QueryData(AbstractDao<T2, ?> dao, String sql, Object[] initialValues, boolean chunkable) {
             super(dao, sql, initialValues);
+            this.chunkable = chunkable;
         }
 
         @Override
@@ -24,14 +29,15 @@ public class CountQuery<T> extends AbstractQuery<T> {
         }
     }
 
-    static <T2> CountQuery<T2> create(AbstractDao<T2, ?> dao, String sql, Object[] initialValues) {
-        QueryData<T2> queryData = new QueryData<T2>(dao, sql, toStringArray(initialValues));
+    /** @param chunkable True if the keys of an inLarge condition may be counted in chunks, see {@link BulkKeys}. */
+    static <T2> CountQuery<T2> create(AbstractDao<T2, ?> dao, String sql, Object[] initialValues, boolean chunkable) {
+        QueryData<T2> queryData = new QueryData<T2>(dao, sql, toParameterArray(initialValues), chunkable);
         return queryData.forCurrentThread();
     }
 
     private final QueryData<T> queryData;
 
-    private CountQuery(QueryData<T> queryData, AbstractDao<T, ?> dao, String sql, String[] initialValues) {
+    private CountQuery(QueryData<T> queryData, AbstractDao<T, ?> dao, String sql, Object[] initialValues) {
         super(dao, sql, initialValues);
         this.queryData = queryData;
     }
@@ -43,7 +49,37 @@ public class CountQuery<T> extends AbstractQuery<T> {
     /** Returns the count (number of results matching the query). Uses SELECT COUNT (*) sematics. */
     public long count() {
         checkThread();
-        Cursor cursor = dao.getDatabase().rawQuery(sql, parameters);
+        if (BulkKeys.contains(parameters)) {
+            SQLiteDatabase db = dao.getDatabase();
+            List<BulkKeys.Statement> statements = BulkKeys.inline(sql, parameters, rawParameters, queryData.chunkable);
+            if (statements != null && statements.size() == 1) {
+                BulkKeys.Statement statement = statements.get(0);
+                return readCount(BindingCursorFactory.query(db, statement.sql, statement.parameters, null));
+            }
+            // Chunks and the temporary key table are read in a non exclusive transaction, see BulkKeys
+            BulkKeys.beginRead(db);
+            try {
+                if (statements != null) {
+                    long count = 0;
+                    for (BulkKeys.Statement statement : statements) {
+                        count += readCount(BindingCursorFactory.query(db, statement.sql, statement.parameters, null));
+                    }
+                    db.setTransactionSuccessful();
+                    return count;
+                }
+                Object[] bound = BulkKeys.load(db, parameters);
+                long count = readCount(BindingCursorFactory.query(db, sql, bound, rawParameters));
+                BulkKeys.release(db, parameters);
+                db.setTransactionSuccessful();
+                return count;
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return readCount(BindingCursorFactory.query(dao.getDatabase(), sql, parameters, rawParameters));
+    }
+
+    private long readCount(Cursor cursor) {
         try {
             if (!cursor.moveToNext()) {
                 throw new DaoException("No result for count");
@@ -20,7 +20,7 @@ public class CursorQuery<T> extends AbstractQueryWithLimit<T> {
         private final int limitPosition;
         private final int offsetPosition;
 
-        QueryData(AbstractDao dao, String sql, String[] initialValues, int limitPosition, int offsetPosition) {
+        QueryData(AbstractDao dao, String sql, Object[] initialValues, int limitPosition, int offsetPosition) {
             super(dao, sql, initialValues);
             this.limitPosition = limitPosition;
             this.offsetPosition = offsetPosition;
@@ -40,14 +40,14 @@ public class CursorQuery<T> extends AbstractQueryWithLimit<T> {
 
     static <T2> CursorQuery<T2> create(AbstractDao<T2, ?> dao, String sql, Object[] initialValues, int limitPosition,
                                        int offsetPosition) {
-        QueryData<T2> queryData = new QueryData<T2>(dao, sql, toStringArray(initialValues), limitPosition,
+        QueryData<T2> queryData = new QueryData<T2>(dao, sql, toParameterArray(initialValues), limitPosition,
                 offsetPosition);
         return queryData.forCurrentThread();
     }
 
     private final QueryData<T> queryData;
 
-    private CursorQuery(QueryData<T> queryData, AbstractDao<T, ?> dao, String sql, String[] initialValues, int limitPosition,
+    private CursorQuery(QueryData<T> queryData, AbstractDao<T, ?> dao, String sql, Object[] initialValues, int limitPosition,
                         int offsetPosition) {
         super(dao, sql, initialValues, limitPosition, offsetPosition);
         this.queryData = queryData;
@@ -60,6 +60,7 @@ public class CursorQuery<T> extends AbstractQueryWithLimit<T> {
     /** Executes the query and returns a raw android.database.Cursor. Don't forget to close it. */
     public Cursor query() {
         checkThread();
-        return dao.getDatabase().rawQuery(sql, parameters);
+        BulkKeys.checkNone(parameters, "cursor queries");
+        return BindingCursorFactory.query(dao.getDatabase(), sql, parameters, rawParameters);
     }
 }
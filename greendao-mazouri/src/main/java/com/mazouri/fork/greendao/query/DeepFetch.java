@@ -0,0 +1,198 @@
+package com.mazouri.fork.greendao.query;
+
+import android.database.Cursor;
+
+import com.mazouri.fork.greendao.AbstractDao;
+import com.mazouri.fork.greendao.DaoException;
+import com.mazouri.fork.greendao.InternalQueryDaoAccess;
+import com.mazouri.fork.greendao.Property;
+import com.mazouri.fork.greendao.ToOneRelation;
+import com.mazouri.fork.greendao.internal.SqlUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Internal class describing the to-one relations fetched together with the entities of a query (see
+ * {@link QueryBuilder#fetch(ToOneRelation, ToOneRelation[])}). Each fetched relation becomes a LEFT JOIN; the columns of
+ * the target entities follow the columns of the queried entity in the order the relations were added.
+ *
+ * 通过LEFT JOIN一次性加载对一关系
+ */
+class DeepFetch<T> {
+
+    private static class Node {
+        /** Index of the node holding the source entity or -1 for the queried entity. */
+        final int parentIndex;
+        final ToOneRelation<Object, Object> relation;
+        final AbstractDao<Object, ?> targetDao;
+        final InternalQueryDaoAccess<Object> targetAccess;
+        final String tablePrefix;
+        final int columnOffset;
+
+        Node(int parentIndex, ToOneRelation<Object, Object> relation, AbstractDao<Object, ?> targetDao,
+             String tablePrefix, int columnOffset) {
+            this.parentIndex = parentIndex;
+            this.relation = relation;
+            this.targetDao = targetDao;
+            this.tablePrefix = tablePrefix;
+            this.columnOffset = columnOffset;
+            targetAccess = new InternalQueryDaoAccess<Object>(targetDao);
+        }
+    }
+
+    private final AbstractDao<T, ?> dao;
+    private final InternalQueryDaoAccess<T> daoAccess;
+    private final List<Node> nodes;
+    private int columnCount;
+
+    DeepFetch(AbstractDao<T, ?> dao) {
+        this.dao = dao;
+        daoAccess = new InternalQueryDaoAccess<T>(dao);
+        nodes = new ArrayList<Node>();
+        columnCount = dao.getAllColumns().length;
+    }
+
+    private DeepFetch(DeepFetch<T> other) {
+        dao = other.dao;
+        daoAccess = other.daoAccess;
+        nodes = new ArrayList<Node>(other.nodes);
+        columnCount = other.columnCount;
+    }
+
+    /** Returns a copy that is not affected by paths added to this instance later. */
+    DeepFetch<T> copy() {
+        return new DeepFetch<T>(this);
+    }
+
+    boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /** Adds the given path of nested relations; nodes for a common leading path are shared. */
+    @SuppressWarnings("unchecked")
+    void addPath(ToOneRelation<?, ?>[] path) {
+        if (dao.getSession() == null) {
+            throw new DaoException("Deep fetch requires a DAO that belongs to a session");
+        }
+        int parentIndex = -1;
+        AbstractDao<?, ?> sourceDao = dao;
+        for (ToOneRelation<?, ?> relation : path) {
+            int index = indexOf(parentIndex, relation);
+            if (index == -1) {
+                checkProperty(sourceDao, relation);
+                AbstractDao<Object, ?> targetDao = (AbstractDao<Object, ?>) dao.getSession().getDao(
+                        relation.targetEntityClass);
+                if (targetDao.getPkProperty() == null) {
+                    throw new DaoException("Cannot fetch " + relation + ": target has no single-column primary key");
+                }
+                String tablePrefix = "F" + (nodes.size() + 1);
+                nodes.add(new Node(parentIndex, (ToOneRelation<Object, Object>) relation, targetDao, tablePrefix,
+                        columnCount));
+                columnCount += targetDao.getAllColumns().length;
+                index = nodes.size() - 1;
+            }
+            parentIndex = index;
+            sourceDao = nodes.get(index).targetDao;
+        }
+    }
+
+    private int indexOf(int parentIndex, ToOneRelation<?, ?> relation) {
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            if (node.parentIndex == parentIndex && node.relation == relation) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void checkProperty(AbstractDao<?, ?> sourceDao, ToOneRelation<?, ?> relation) {
+        for (Property property : sourceDao.getProperties()) {
+            if (property == relation.fkProperty) {
+                return;
+            }
+        }
+        throw new DaoException("Cannot fetch " + relation + ": its source is not " + sourceDao);
+    }
+
+    void appendShapeTo(List<Object> shape) {
+        shape.add(nodes.size());
+        for (Node node : nodes) {
+            shape.add(node.parentIndex);
+            shape.add(node.relation);
+        }
+    }
+
+    /** Appends the columns of all fetched target entities, each preceded by a comma. */
+    void appendColumns(StringBuilder builder) {
+        for (Node node : nodes) {
+            builder.append(',');
+            SqlUtils.appendColumns(builder, node.tablePrefix, node.targetDao.getAllColumns());
+        }
+    }
+
+    void appendJoins(StringBuilder builder, String tablePrefix) {
+        for (Node node : nodes) {
+            String sourcePrefix = node.parentIndex == -1 ? tablePrefix : nodes.get(node.parentIndex).tablePrefix;
+            builder.append(" LEFT JOIN \"").append(node.targetDao.getTablename()).append("\" ");
+            builder.append(node.tablePrefix).append(" ON ");
+            SqlUtils.appendProperty(builder, sourcePrefix, node.relation.fkProperty).append('=');
+            SqlUtils.appendProperty(builder, node.tablePrefix, node.targetDao.getPkProperty());
+        }
+    }
+
+    void addTablenames(List<String> tablenames) {
+        for (Node node : nodes) {
+            tablenames.add(node.targetDao.getTablename());
+        }
+    }
+
+    /** Loads the entity at the current cursor position and resolves the fetched relations. */
+    T loadCurrent(Cursor cursor) {
+        T entity = daoAccess.loadCurrent(cursor, 0, true);
+        int size = nodes.size();
+        Object[] targets = new Object[size];
+        for (int i = 0; i < size; i++) {
+            Node node = nodes.get(i);
+            Object source = node.parentIndex == -1 ? entity : targets[node.parentIndex];
+            if (source != null) {
+                Object target = node.targetAccess.loadCurrent(cursor, node.columnOffset, true);
+                node.relation.setResolved(source, target);
+                targets[i] = target;
+            }
+        }
+        return entity;
+    }
+
+    List<T> loadAllAndCloseCursor(Cursor cursor) {
+        try {
+            int count = cursor.getCount();
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            List<T> list = new ArrayList<T>(count);
+            while (cursor.moveToNext()) {
+                list.add(loadCurrent(cursor));
+            }
+            return list;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    T loadUniqueAndCloseCursor(Cursor cursor) {
+        try {
+            boolean available = cursor.moveToFirst();
+            if (!available) {
+                return null;
+            } else if (!cursor.isLast()) {
+                throw new DaoException("Expected unique result, but count was " + cursor.getCount());
+            }
+            return loadCurrent(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.mazouri.fork.greendao.query;
 
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.mazouri.fork.greendao.AbstractDao;
 
@@ -18,7 +19,7 @@ import com.mazouri.fork.greendao.AbstractDao;
 public class DeleteQuery<T> extends AbstractQuery<T> {
     private final static class QueryData<T2> extends AbstractQueryData<T2, DeleteQuery<T2>> {
 
-        private QueryData(AbstractDao<T2, ?> dao, String sql, String[] initialValues) {
+        private QueryData(AbstractDao<T2, ?> dao, String sql, Object[] initialValues) {
             super(dao, sql, initialValues);
         }
 
@@ -29,13 +30,13 @@ public class DeleteQuery<T> extends AbstractQuery<T> {
     }
 
     static <T2> DeleteQuery<T2> create(AbstractDao<T2, ?> dao, String sql, Object[] initialValues) {
-        QueryData<T2> queryData = new QueryData<T2>(dao, sql, toStringArray(initialValues));
+        QueryData<T2> queryData = new QueryData<T2>(dao, sql, toParameterArray(initialValues));
         return queryData.forCurrentThread();
     }
 
     private final QueryData<T> queryData;
 
-    private DeleteQuery(QueryData<T> queryData, AbstractDao<T, ?> dao, String sql, String[] initialValues) {
+    private DeleteQuery(QueryData<T> queryData, AbstractDao<T, ?> dao, String sql, Object[] initialValues) {
         super(dao, sql, initialValues);
         this.queryData = queryData;
     }
@@ -52,18 +53,35 @@ public class DeleteQuery<T> extends AbstractQuery<T> {
     public void executeDeleteWithoutDetachingEntities() {
         checkThread();
         SQLiteDatabase db = dao.getDatabase();
-        if (db.isDbLockedByCurrentThread()) {
-            dao.getDatabase().execSQL(sql, parameters);
+        if (db.isDbLockedByCurrentThread() && db.inTransaction()) {
+            execute(db);
         } else {
             // Do TX to acquire a connection before locking this to avoid deadlocks
             // Locking order as described in AbstractDao
             db.beginTransaction();
             try {
-                dao.getDatabase().execSQL(sql, parameters);
+                execute(db);
                 db.setTransactionSuccessful();
             } finally {
                 db.endTransaction();
             }
         }
+        daoAccess.onTableChanged();
+    }
+
+    /** Must be called inside a transaction if there are inLarge conditions. */
+    private void execute(SQLiteDatabase db) {
+        boolean bulkKeys = BulkKeys.contains(parameters);
+        Object[] bound = bulkKeys ? BulkKeys.load(db, parameters) : parameters;
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            BindingCursorFactory.bind(statement, bound, rawParameters);
+            statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+        if (bulkKeys) {
+            BulkKeys.release(db, parameters);
+        }
     }
 }
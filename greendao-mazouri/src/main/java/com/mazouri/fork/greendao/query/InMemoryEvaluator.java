@@ -0,0 +1,355 @@
+package com.mazouri.fork.greendao.query;
+
+import com.mazouri.fork.greendao.AbstractDao;
+import com.mazouri.fork.greendao.DaoException;
+import com.mazouri.fork.greendao.InternalQueryDaoAccess;
+import com.mazouri.fork.greendao.Property;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Internal class compiling WHERE conditions and ORDER BY properties to predicates and comparators working on entity
+ * objects. Property values are read using the DAO's generated accessor in their database representation and compared
+ * like SQLite does: values of the condition are converted to the affinity of the property's column, NULL never
+ * matches (except IS NULL) and sorts first, strings compare binary (LIKE case insensitive for ASCII) and String
+ * properties are sorted using the default locale's collator (like COLLATE LOCALIZED).
+ *
+ * 将查询条件编译成在内存中执行的判断与排序
+ */
+final class InMemoryEvaluator<T> {
+
+    /** A property of the ORDER BY clause; custom and raw orders cannot be evaluated in memory. */
+    static final class Order {
+        final Property property;
+        final boolean descending;
+
+        Order(Property property, boolean descending) {
+            this.property = property;
+            this.descending = descending;
+        }
+    }
+
+    /** The WHERE conditions (with their values) and ORDER BY properties of a query kept for evaluation in memory. */
+    static final class Plan {
+        final List<WhereCondition> conditions;
+        final List<Order> orders;
+
+        Plan(List<WhereCondition> conditions, List<Order> orders) {
+            this.conditions = conditions;
+            this.orders = orders;
+        }
+    }
+
+    private static final int AFFINITY_NONE = 0;
+    private static final int AFFINITY_INTEGER = 1;
+    private static final int AFFINITY_REAL = 2;
+    private static final int AFFINITY_TEXT = 3;
+
+    private final InternalQueryDaoAccess<T> daoAccess;
+
+    InMemoryEvaluator(AbstractDao<T, ?> dao) {
+        daoAccess = new InternalQueryDaoAccess<T>(dao);
+    }
+
+    /** Compiles the given conditions combined using AND. */
+    Predicate<T> compile(List<WhereCondition> conditions) {
+        List<Predicate<T>> predicates = new ArrayList<Predicate<T>>(conditions.size());
+        for (WhereCondition condition : conditions) {
+            predicates.add(compile(condition));
+        }
+        return new CombinedPredicate<T>(predicates, false);
+    }
+
+    Predicate<T> compile(WhereCondition condition) {
+        if (condition instanceof WhereCondition.PropertyCondition) {
+            WhereCondition.PropertyCondition propertyCondition = (WhereCondition.PropertyCondition) condition;
+            if (propertyCondition.operator == null) {
+                throw new DaoException("Custom operator cannot be evaluated in memory: " + propertyCondition.op);
+            }
+            return new PropertyPredicate<T>(daoAccess, propertyCondition.property, propertyCondition.operator,
+                    propertyCondition.getValues());
+        } else if (condition instanceof WhereCondition.LargeInCondition) {
+            WhereCondition.LargeInCondition largeIn = (WhereCondition.LargeInCondition) condition;
+            List<Object> keys = new ArrayList<Object>();
+            largeIn.appendValuesTo(keys);
+            List<Object> values = new ArrayList<Object>();
+            ((BulkKeys) keys.get(0)).addKeysTo(values);
+            return new PropertyPredicate<T>(daoAccess, largeIn.property, WhereCondition.Operator.IN, values.toArray());
+        } else if (condition instanceof WhereCondition.CombinedCondition) {
+            WhereCondition.CombinedCondition combined = (WhereCondition.CombinedCondition) condition;
+            List<Predicate<T>> predicates = new ArrayList<Predicate<T>>(combined.conditions.size());
+            for (WhereCondition child : combined.conditions) {
+                predicates.add(compile(child));
+            }
+            return new CombinedPredicate<T>(predicates, combined.isOr());
+        } else {
+            throw new DaoException(condition.getClass().getSimpleName() + " cannot be evaluated in memory");
+        }
+    }
+
+    /** Not thread safe (uses a Collator); create one per sort. */
+    Comparator<T> comparator(final List<Order> orders) {
+        final Collator collator = Collator.getInstance();
+        return new Comparator<T>() {
+            @Override
+            public int compare(T lhs, T rhs) {
+                for (Order order : orders) {
+                    Object left = daoAccess.getPropertyValue(lhs, order.property.ordinal);
+                    Object right = daoAccess.getPropertyValue(rhs, order.property.ordinal);
+                    int result;
+                    if (left == null || right == null) {
+                        result = left == null ? (right == null ? 0 : -1) : 1;
+                    } else if (left instanceof String && right instanceof String
+                            && String.class.equals(order.property.type)) {
+                        result = collator.compare(left, right);
+                    } else {
+                        result = compareValues(left, right);
+                    }
+                    if (result != 0) {
+                        return order.descending ? -result : result;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    private static final class CombinedPredicate<T> implements Predicate<T> {
+        private final List<Predicate<T>> predicates;
+        private final boolean or;
+
+        CombinedPredicate(List<Predicate<T>> predicates, boolean or) {
+            this.predicates = predicates;
+            this.or = or;
+        }
+
+        @Override
+        public boolean test(T entity) {
+            for (Predicate<T> predicate : predicates) {
+                if (predicate.test(entity) == or) {
+                    return or;
+                }
+            }
+            return !or;
+        }
+    }
+
+    private static final class PropertyPredicate<T> implements Predicate<T> {
+        private final InternalQueryDaoAccess<T> daoAccess;
+        private final int ordinal;
+        private final WhereCondition.Operator operator;
+        private final Object[] values;
+        private final Set<Object> valueSet;
+        private final boolean hasNullValue;
+        private final Pattern likePattern;
+
+        PropertyPredicate(InternalQueryDaoAccess<T> daoAccess, Property property, WhereCondition.Operator operator,
+                          Object[] values) {
+            this.daoAccess = daoAccess;
+            this.operator = operator;
+            ordinal = property.ordinal;
+            int affinity = getAffinity(property);
+            this.values = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                this.values[i] = coerce(affinity, values[i]);
+            }
+            boolean hasNull = false;
+            if (operator == WhereCondition.Operator.IN || operator == WhereCondition.Operator.NOT_IN) {
+                valueSet = new HashSet<Object>();
+                for (Object value : this.values) {
+                    if (value != null) {
+                        valueSet.add(value);
+                    } else {
+                        hasNull = true;
+                    }
+                }
+            } else {
+                valueSet = null;
+            }
+            hasNullValue = hasNull;
+            if (operator == WhereCondition.Operator.LIKE && this.values[0] != null) {
+                likePattern = compileLike(this.values[0].toString());
+            } else {
+                likePattern = null;
+            }
+        }
+
+        @Override
+        public boolean test(T entity) {
+            Object value = daoAccess.getPropertyValue(entity, ordinal);
+            switch (operator) {
+                case IS_NULL:
+                    return value == null;
+                case IS_NOT_NULL:
+                    return value != null;
+                default:
+                    break;
+            }
+            if (value == null) {
+                return false;
+            }
+            switch (operator) {
+                case EQ:
+                    return values[0] != null && compareValues(value, values[0]) == 0;
+                case NOT_EQ:
+                    return values[0] != null && compareValues(value, values[0]) != 0;
+                case GT:
+                    return values[0] != null && compareValues(value, values[0]) > 0;
+                case LT:
+                    return values[0] != null && compareValues(value, values[0]) < 0;
+                case GE:
+                    return values[0] != null && compareValues(value, values[0]) >= 0;
+                case LE:
+                    return values[0] != null && compareValues(value, values[0]) <= 0;
+                case BETWEEN:
+                    return values[0] != null && values[1] != null && compareValues(value, values[0]) >= 0
+                            && compareValues(value, values[1]) <= 0;
+                case IN:
+                    return containsValue(value);
+                case NOT_IN:
+                    // NOT IN with a NULL value is never true in SQL
+                    return !hasNullValue && !containsValue(value);
+                case LIKE:
+                    return likePattern != null && !(value instanceof byte[])
+                            && likePattern.matcher(value.toString()).matches();
+                default:
+                    throw new DaoException("Unsupported operator: " + operator);
+            }
+        }
+
+        private boolean containsValue(Object value) {
+            if (valueSet.contains(value)) {
+                return true;
+            } else if (value instanceof Long) {
+                return valueSet.contains(((Long) value).doubleValue());
+            } else if (value instanceof Double) {
+                Object asLong = toIntegral((Double) value);
+                return asLong != value && valueSet.contains(asLong);
+            }
+            return false;
+        }
+    }
+
+    private static int getAffinity(Property property) {
+        Class<?> type = property.type;
+        if (type == long.class || type == Long.class || type == int.class || type == Integer.class
+                || type == short.class || type == Short.class || type == byte.class || type == Byte.class
+                || type == boolean.class || type == Boolean.class || type == Date.class) {
+            return AFFINITY_INTEGER;
+        } else if (type == double.class || type == Double.class || type == float.class || type == Float.class) {
+            return AFFINITY_REAL;
+        } else if (type == String.class) {
+            return AFFINITY_TEXT;
+        } else {
+            return AFFINITY_NONE;
+        }
+    }
+
+    /** Converts a condition value like SQLite converts it when comparing it to a column of the given affinity. */
+    private static Object coerce(int affinity, Object value) {
+        value = AbstractQuery.toParameter(value);
+        if (value == null || affinity == AFFINITY_NONE) {
+            return value;
+        }
+        if (affinity == AFFINITY_TEXT) {
+            return value instanceof Number ? value.toString() : value;
+        }
+        if (value instanceof String) {
+            String string = ((String) value).trim();
+            try {
+                value = Long.parseLong(string);
+            } catch (NumberFormatException e) {
+                try {
+                    value = Double.parseDouble(string);
+                } catch (NumberFormatException e2) {
+                    return value;
+                }
+            }
+        }
+        if (affinity == AFFINITY_REAL && value instanceof Long) {
+            return ((Long) value).doubleValue();
+        } else if (affinity == AFFINITY_INTEGER && value instanceof Double) {
+            return toIntegral((Double) value);
+        }
+        return value;
+    }
+
+    /** Returns the value as Long if it has no fraction, otherwise the given Double. */
+    private static Object toIntegral(Double value) {
+        double doubleValue = value;
+        long longValue = (long) doubleValue;
+        return longValue == doubleValue ? (Object) longValue : value;
+    }
+
+    /** Compares non-null values using SQLite's order: numbers before text before BLOBs. */
+    static int compareValues(Object left, Object right) {
+        int leftClass = getStorageClass(left);
+        int rightClass = getStorageClass(right);
+        if (leftClass != rightClass) {
+            return leftClass < rightClass ? -1 : 1;
+        }
+        if (left instanceof Long && right instanceof Long) {
+            long leftLong = (Long) left;
+            long rightLong = (Long) right;
+            return leftLong < rightLong ? -1 : (leftLong == rightLong ? 0 : 1);
+        } else if (left instanceof Number) {
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        } else if (left instanceof String) {
+            return ((String) left).compareTo((String) right);
+        } else if (left instanceof byte[]) {
+            byte[] leftBytes = (byte[]) left;
+            byte[] rightBytes = (byte[]) right;
+            int length = Math.min(leftBytes.length, rightBytes.length);
+            for (int i = 0; i < length; i++) {
+                int diff = (leftBytes[i] & 0xFF) - (rightBytes[i] & 0xFF);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return leftBytes.length - rightBytes.length;
+        } else {
+            return left.equals(right) ? 0 : left.toString().compareTo(right.toString());
+        }
+    }
+
+    private static int getStorageClass(Object value) {
+        if (value instanceof Number) {
+            return 1;
+        } else if (value instanceof String) {
+            return 2;
+        } else if (value instanceof byte[]) {
+            return 3;
+        } else {
+            return 4;
+        }
+    }
+
+    /** SQLite's default LIKE: '%' and '_' wildcards, case insensitive for ASCII characters only. */
+    private static Pattern compileLike(String like) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+}
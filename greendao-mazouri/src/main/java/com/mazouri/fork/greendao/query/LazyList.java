@@ -115,15 +115,17 @@ public class LazyList<E> implements List<E>, Closeable {
     }
 
     private final InternalQueryDaoAccess<E> daoAccess;
+    private final DeepFetch<E> deepFetch;
     private final Cursor cursor;
     private final List<E> entities;
     private final int size;
     private final ReentrantLock lock;
     private volatile int loadedCount;
 
-    LazyList(InternalQueryDaoAccess<E> daoAccess, Cursor cursor, boolean cacheEntities) {
+    LazyList(InternalQueryDaoAccess<E> daoAccess, DeepFetch<E> deepFetch, Cursor cursor, boolean cacheEntities) {
         this.cursor = cursor;
         this.daoAccess = daoAccess;
+        this.deepFetch = deepFetch;
         size = cursor.getCount();
         if (cacheEntities) {
             entities = new ArrayList<E>(size);
@@ -257,7 +259,7 @@ public class LazyList<E> implements List<E>, Closeable {
         if(!ok) {
             throw new DaoException("Could not move to cursor location " + location);
         }
-        E entity = daoAccess.loadCurrent(cursor, 0, true);
+        E entity = deepFetch != null ? deepFetch.loadCurrent(cursor) : daoAccess.loadCurrent(cursor, 0, true);
         if (entity == null) {
             throw new DaoException("Loading of entity failed (null) at position " + location);
         }
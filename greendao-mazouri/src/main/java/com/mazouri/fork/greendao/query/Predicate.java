@@ -0,0 +1,12 @@
+package com.mazouri.fork.greendao.query;
+
+/**
+ * A condition evaluated on entity objects in memory, see {@link QueryBuilder#buildPredicate()}.
+ *
+ * 在内存中对实体对象求值的条件
+ *
+ * @param <T> Entity class the predicate is evaluated on.
+ */
+public interface Predicate<T> {
+    boolean test(T entity);
+}
@@ -1,10 +1,14 @@
 package com.mazouri.fork.greendao.query;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
 import com.mazouri.fork.greendao.AbstractDao;
+import com.mazouri.fork.greendao.AbstractDaoSession;
 import com.mazouri.fork.greendao.DaoException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -21,11 +25,23 @@ public class Query<T> extends AbstractQueryWithLimit<T> {
     private final static class QueryData<T2> extends AbstractQueryData<T2, Query<T2>> {
         private final int limitPosition;
         private final int offsetPosition;
+        private final String[] tablenames;
+        private final DeepFetch<T2> deepFetch;
+        private final InMemoryEvaluator.Plan plan;
+        private final boolean chunkable;
+        private volatile boolean cacheResults;
 
-        QueryData(AbstractDao<T2, ?> dao, String sql, String[] initialValues, int limitPosition, int offsetPosition) {
+        QueryData(AbstractDao<T2, ?> dao, String sql, Object[] initialValues, int limitPosition, int offsetPosition,
+                  String[] tablenames, boolean cacheResults, DeepFetch<T2> deepFetch, InMemoryEvaluator.Plan plan,
+                  boolean chunkable) {
             super(dao, sql, initialValues);
             this.limitPosition = limitPosition;
             this.offsetPosition = offsetPosition;
+            this.tablenames = tablenames;
+            this.cacheResults = cacheResults;
+            this.deepFetch = deepFetch;
+            this.plan = plan;
+            this.chunkable = chunkable;
         }
 
         @Override
@@ -37,19 +53,25 @@ public class Query<T> extends AbstractQueryWithLimit<T> {
 
     /** For internal use by greenDAO only. */
     public static <T2> Query<T2> internalCreate(AbstractDao<T2, ?> dao, String sql, Object[] initialValues) {
-        return create(dao, sql, initialValues, -1, -1);
+        return create(dao, sql, initialValues, -1, -1, new String[]{dao.getTablename()}, false, null, null,
+                false);
     }
 
+    /**
+     * @param plan      Conditions and orders if the query may be evaluated in memory, see {@link QueryDiffer}.
+     * @param chunkable True if the keys of an inLarge condition may be queried in chunks, see {@link BulkKeys}.
+     */
     static <T2> Query<T2> create(AbstractDao<T2, ?> dao, String sql, Object[] initialValues, int limitPosition,
-                                 int offsetPosition) {
-        QueryData<T2> queryData = new QueryData<T2>(dao, sql, toStringArray(initialValues), limitPosition,
-                offsetPosition);
+                                 int offsetPosition, String[] tablenames, boolean cacheResults,
+                                 DeepFetch<T2> deepFetch, InMemoryEvaluator.Plan plan, boolean chunkable) {
+        QueryData<T2> queryData = new QueryData<T2>(dao, sql, toParameterArray(initialValues), limitPosition,
+                offsetPosition, tablenames, cacheResults, deepFetch, plan, chunkable);
         return queryData.forCurrentThread();
     }
 
     private final QueryData<T> queryData;
 
-    private Query(QueryData<T> queryData, AbstractDao<T, ?> dao, String sql, String[] initialValues, int limitPosition,
+    private Query(QueryData<T> queryData, AbstractDao<T, ?> dao, String sql, Object[] initialValues, int limitPosition,
                   int offsetPosition) {
         super(dao, sql, initialValues, limitPosition, offsetPosition);
         this.queryData = queryData;
@@ -59,11 +81,179 @@ public class Query<T> extends AbstractQueryWithLimit<T> {
         return queryData.forCurrentThread(this);
     }
 
+    /**
+     * Enables or disables caching of {@link #list()} results in the session's {@link QueryResultCache}. The setting
+     * applies to the instances of this query for all threads. Requires a DAO that belongs to a session.
+     */
+    public void setCacheResults(boolean cacheResults) {
+        queryData.cacheResults = cacheResults;
+    }
+
+    public boolean isCacheResults() {
+        return queryData.cacheResults;
+    }
+
+    /**
+     * Returns a call of this query using the given values for the WHERE parameters (in the order they were added during
+     * building the query); limit and offset are taken from the QueryBuilder and may be changed on the returned
+     * object. Other than the methods of this class, this method and the returned {@link BoundQuery} may be used from
+     * any thread and share no state except the immutable SQL, so no {@link #forCurrentThread()} is needed.
+     */
+    public BoundQuery<T> with(Object... parameters) {
+        Object[] values = queryData.initialValues.clone();
+        int count = values.length;
+        if (limitPosition != -1) {
+            count--;
+        }
+        if (offsetPosition != -1) {
+            count--;
+        }
+        if (parameters.length != count) {
+            throw new DaoException("Expected " + count + " parameters, but got " + parameters.length);
+        }
+        for (int i = 0; i < count; i++) {
+            values[i] = toParameter(parameters[i]);
+        }
+        return new BoundQuery<T>(this, values);
+    }
+
+    /** Like {@link #observe(QueryObserver, long)} using {@link QueryObservation#DEFAULT_DEBOUNCE_MILLIS}. */
+    public QueryObservation<T> observe(QueryObserver<T> observer) {
+        return observe(observer, QueryObservation.DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Observes the query using the current parameter values: the observer gets the result once initially and again
+     * after each committed transaction that wrote (through the session's DAOs) to a table the query reads from. Changes
+     * within debounceMillis are collapsed into one re-execution. Requires a DAO that belongs to a session.
+     */
+    public QueryObservation<T> observe(QueryObserver<T> observer, long debounceMillis) {
+        checkThread();
+        AbstractDaoSession session = dao.getSession();
+        if (session == null) {
+            throw new DaoException("Observing a query requires a DAO that belongs to a session");
+        }
+        if (debounceMillis < 0) {
+            throw new IllegalArgumentException("Illegal debounce delay: " + debounceMillis);
+        }
+        BoundQuery<T> boundQuery = new BoundQuery<T>(this, boxParameters(parameters, rawParameters));
+        QueryObservation<T> observation = new QueryObservation<T>(session, boundQuery, queryData.tablenames, observer,
+                null, null, debounceMillis);
+        observation.start();
+        return observation;
+    }
+
+    /** Like {@link #observeChanges(QueryChangeObserver, long)} using {@link QueryObservation#DEFAULT_DEBOUNCE_MILLIS}. */
+    public QueryObservation<T> observeChanges(QueryChangeObserver<T> observer) {
+        return observeChanges(observer, QueryObservation.DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Like {@link #observe(QueryObserver, long)}, but the observer receives the changes to the previous result as a
+     * {@link QueryDiff} keyed by primary key (the first diff inserts the complete result). Empty diffs are not
+     * delivered. For queries without joins, fetches, limit, offset and custom orders that are ordered by the primary key
+     * (e.g. {@code orderAsc(Properties.Name, Properties.Id)}), changes are computed from the written keys without
+     * executing the query. Rows written without known keys (e.g. by a {@link DeleteQuery}) are
+     * detected as insertions and removals only. Requires an entity with a single-column primary key.
+     */
+    public QueryObservation<T> observeChanges(QueryChangeObserver<T> observer, long debounceMillis) {
+        checkThread();
+        AbstractDaoSession session = dao.getSession();
+        if (session == null) {
+            throw new DaoException("Observing a query requires a DAO that belongs to a session");
+        }
+        if (dao.getPkProperty() == null) {
+            throw new DaoException("Observing changes requires an entity with a single-column primary key");
+        }
+        if (debounceMillis < 0) {
+            throw new IllegalArgumentException("Illegal debounce delay: " + debounceMillis);
+        }
+        Object[] values = boxParameters(parameters, rawParameters);
+        BoundQuery<T> boundQuery = new BoundQuery<T>(this, values);
+        // The plan holds the values given to the QueryBuilder, so parameters must not have been changed since
+        InMemoryEvaluator.Plan plan = Arrays.deepEquals(values, queryData.initialValues) ? queryData.plan : null;
+        QueryDiffer<T> differ = new QueryDiffer<T>(dao, boundQuery, plan, queryData.deepFetch != null);
+        QueryObservation<T> observation = new QueryObservation<T>(session, boundQuery, queryData.tablenames, null,
+                differ, observer, debounceMillis);
+        observation.start();
+        return observation;
+    }
+
     /** Executes the query and returns the result as a list containing all entities loaded into memory. */
     public List<T> list() {
         checkThread();
-        Cursor cursor = dao.getDatabase().rawQuery(sql, parameters);
-        return daoAccess.loadAllAndCloseCursor(cursor);
+        return list(parameters, rawParameters);
+    }
+
+    /** Executes the query with the given parameters; rawParameters may be null if there are no unboxed values. */
+    List<T> list(Object[] parameters, long[] rawParameters) {
+        if (BulkKeys.contains(parameters)) {
+            return listWithBulkKeys(parameters, rawParameters);
+        }
+        if (queryData.cacheResults) {
+            AbstractDaoSession session = dao.getSession();
+            if (session != null) {
+                return listCached(session.getQueryResultCache(), boxParameters(parameters, rawParameters));
+            }
+        }
+        Cursor cursor = BindingCursorFactory.query(dao.getDatabase(), sql, parameters, rawParameters);
+        return loadAllAndCloseCursor(cursor);
+    }
+
+    private List<T> loadAllAndCloseCursor(Cursor cursor) {
+        if (queryData.deepFetch != null) {
+            return queryData.deepFetch.loadAllAndCloseCursor(cursor);
+        } else {
+            return daoAccess.loadAllAndCloseCursor(cursor);
+        }
+    }
+
+    /**
+     * Results of inLarge queries are not cached. The keys are bound inline if possible; chunks are read in a non
+     * exclusive transaction for a consistent result, as is the temporary key table otherwise (see {@link BulkKeys}).
+     */
+    private List<T> listWithBulkKeys(Object[] parameters, long[] rawParameters) {
+        SQLiteDatabase db = dao.getDatabase();
+        List<BulkKeys.Statement> statements = BulkKeys.inline(sql, parameters, rawParameters, queryData.chunkable);
+        if (statements != null && statements.size() == 1) {
+            BulkKeys.Statement statement = statements.get(0);
+            return loadAllAndCloseCursor(BindingCursorFactory.query(db, statement.sql, statement.parameters, null));
+        }
+        BulkKeys.beginRead(db);
+        try {
+            if (statements != null) {
+                List<T> result = new ArrayList<T>();
+                for (BulkKeys.Statement statement : statements) {
+                    Cursor cursor = BindingCursorFactory.query(db, statement.sql, statement.parameters, null);
+                    result.addAll(loadAllAndCloseCursor(cursor));
+                }
+                db.setTransactionSuccessful();
+                return result;
+            }
+            Object[] bound = BulkKeys.load(db, parameters);
+            List<T> result = loadAllAndCloseCursor(BindingCursorFactory.query(db, sql, bound, rawParameters));
+            BulkKeys.release(db, parameters);
+            db.setTransactionSuccessful();
+            return result;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private List<T> listCached(QueryResultCache cache, Object[] parameters) {
+        @SuppressWarnings("unchecked")
+        List<T> cached = (List<T>) cache.get(sql, parameters);
+        if (cached != null) {
+            return new ArrayList<T>(cached);
+        }
+        long generation = cache.getGeneration();
+        Cursor cursor = BindingCursorFactory.query(dao.getDatabase(), sql, parameters, null);
+        List<T> result = loadAllAndCloseCursor(cursor);
+        // Uncommitted data of the current thread's transaction must not become visible to others
+        if (!dao.getDatabase().inTransaction()) {
+            cache.put(sql, parameters, queryData.tablenames, result, generation);
+        }
+        return result;
     }
 
     /**
@@ -73,8 +263,7 @@ public class Query<T> extends AbstractQueryWithLimit<T> {
      */
     public LazyList<T> listLazy() {
         checkThread();
-        Cursor cursor = dao.getDatabase().rawQuery(sql, parameters);
-        return new LazyList<T>(daoAccess, cursor, true);
+        return listLazy(parameters, rawParameters, true);
     }
 
     /**
@@ -83,8 +272,13 @@ public class Query<T> extends AbstractQueryWithLimit<T> {
      */
     public LazyList<T> listLazyUncached() {
         checkThread();
-        Cursor cursor = dao.getDatabase().rawQuery(sql, parameters);
-        return new LazyList<T>(daoAccess, cursor, false);
+        return listLazy(parameters, rawParameters, false);
+    }
+
+    LazyList<T> listLazy(Object[] parameters, long[] rawParameters, boolean cacheEntities) {
+        BulkKeys.checkNone(parameters, "lazy lists");
+        Cursor cursor = BindingCursorFactory.query(dao.getDatabase(), sql, parameters, rawParameters);
+        return new LazyList<T>(daoAccess, queryData.deepFetch, cursor, cacheEntities);
     }
 
     /**
@@ -95,6 +289,54 @@ public class Query<T> extends AbstractQueryWithLimit<T> {
         return listLazyUncached().listIteratorAutoClose();
     }
 
+    /**
+     * Executes the query and passes the entities to the callback in lists of the given size (the last one may be
+     * smaller) while reading the cursor: only the current cursor window and chunk are held in memory. Filling the first
+     * window counts all rows, so SQLite steps through the whole result before the first chunk arrives. The callback
+     * can stop reading after each chunk.
+     *
+     * @return The count of entities passed to the callback.
+     */
+    public long forEachChunk(int chunkSize, QueryChunkCallback<T> callback) {
+        checkThread();
+        return forEachChunk(parameters, rawParameters, chunkSize, callback);
+    }
+
+    long forEachChunk(Object[] parameters, long[] rawParameters, int chunkSize, QueryChunkCallback<T> callback) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        BulkKeys.checkNone(parameters, "chunked queries");
+        Cursor cursor = BindingCursorFactory.query(dao.getDatabase(), sql, parameters, rawParameters);
+        long count = 0;
+        try {
+            List<T> chunk = new ArrayList<T>(chunkSize);
+            while (cursor.moveToNext()) {
+                // Entities are loaded one at a time, so the identity scope is not locked while the next window fills
+                if (queryData.deepFetch != null) {
+                    chunk.add(queryData.deepFetch.loadCurrent(cursor));
+                } else {
+                    chunk.add(daoAccess.loadCurrent(cursor, 0, true));
+                }
+                if (chunk.size() == chunkSize) {
+                    boolean more = callback.onChunk(chunk);
+                    count += chunkSize;
+                    if (!more) {
+                        return count;
+                    }
+                    chunk = new ArrayList<T>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                callback.onChunk(chunk);
+                count += chunk.size();
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Executes the query and returns the unique result or null.
      *
@@ -103,8 +345,60 @@ public class Query<T> extends AbstractQueryWithLimit<T> {
      */
     public T unique() {
         checkThread();
-        Cursor cursor = dao.getDatabase().rawQuery(sql, parameters);
-        return daoAccess.loadUniqueAndCloseCursor(cursor);
+        return unique(parameters, rawParameters);
+    }
+
+    T unique(Object[] parameters, long[] rawParameters) {
+        if (BulkKeys.contains(parameters)) {
+            SQLiteDatabase db = dao.getDatabase();
+            List<BulkKeys.Statement> statements = BulkKeys.inline(sql, parameters, rawParameters, queryData.chunkable);
+            if (statements != null && statements.size() == 1) {
+                BulkKeys.Statement statement = statements.get(0);
+                return loadUniqueAndCloseCursor(BindingCursorFactory.query(db, statement.sql, statement.parameters,
+                        null));
+            }
+            BulkKeys.beginRead(db);
+            try {
+                if (statements != null) {
+                    T entity = uniqueOfChunks(db, statements);
+                    db.setTransactionSuccessful();
+                    return entity;
+                }
+                Object[] bound = BulkKeys.load(db, parameters);
+                T entity = loadUniqueAndCloseCursor(BindingCursorFactory.query(db, sql, bound, rawParameters));
+                BulkKeys.release(db, parameters);
+                db.setTransactionSuccessful();
+                return entity;
+            } finally {
+                db.endTransaction();
+            }
+        }
+        Cursor cursor = BindingCursorFactory.query(dao.getDatabase(), sql, parameters, rawParameters);
+        return loadUniqueAndCloseCursor(cursor);
+    }
+
+    /** The chunks are disjoint, so the result is unique if at most one chunk has a (unique) result. */
+    private T uniqueOfChunks(SQLiteDatabase db, List<BulkKeys.Statement> statements) {
+        T entity = null;
+        for (BulkKeys.Statement statement : statements) {
+            T chunkEntity = loadUniqueAndCloseCursor(BindingCursorFactory.query(db, statement.sql,
+                    statement.parameters, null));
+            if (chunkEntity != null) {
+                if (entity != null) {
+                    throw new DaoException("Expected unique result, but found more than one");
+                }
+                entity = chunkEntity;
+            }
+        }
+        return entity;
+    }
+
+    private T loadUniqueAndCloseCursor(Cursor cursor) {
+        if (queryData.deepFetch != null) {
+            return queryData.deepFetch.loadUniqueAndCloseCursor(cursor);
+        } else {
+            return daoAccess.loadUniqueAndCloseCursor(cursor);
+        }
     }
 
     /**
@@ -3,10 +3,14 @@ package com.mazouri.fork.greendao.query;
 import com.mazouri.fork.greendao.AbstractDao;
 import com.mazouri.fork.greendao.DaoException;
 import com.mazouri.fork.greendao.DaoLog;
+import com.mazouri.fork.greendao.InternalQueryDaoAccess;
 import com.mazouri.fork.greendao.Property;
+import com.mazouri.fork.greendao.ToOneRelation;
 import com.mazouri.fork.greendao.internal.SqlUtils;
+import com.mazouri.fork.greendao.internal.TableStatements;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -21,6 +25,10 @@ import java.util.List;
  * List<User> joes = dao.queryBuilder().where(Properties.FirstName.eq("Joe")).orderAsc(Properties.LastName).list();
  * </code>
  *
+ * Building a query with the same structure (conditions, joins, order, limit and offset, but different values) as an
+ * earlier one reuses the SQL built for it, so only the values are collected again; see
+ * {@link WhereCondition.AbstractCondition#appendShapeTo(List)}.
+ *
  * @param <T> Entity class to create an query for.
  *
  * 查询语句构造成对象的工具类
@@ -34,9 +42,34 @@ public class QueryBuilder<T> {
 
     /** Set to see the given values. */
     public static boolean LOG_VALUES;
+
+    private static final String SHAPE_QUERY = "QUERY";
+    private static final String SHAPE_CURSOR = "CURSOR";
+    private static final String SHAPE_COUNT = "COUNT";
+    private static final String SHAPE_DELETE = "DELETE";
+
+    /** SQL and parameter layout built for a query shape, cached in the DAO's {@link TableStatements}. */
+    private static final class SqlTemplate<T2> {
+        final String sql;
+        final int limitPosition;
+        final int offsetPosition;
+        final String[] tablenames;
+        final DeepFetch<T2> deepFetch;
+
+        SqlTemplate(String sql, int limitPosition, int offsetPosition, String[] tablenames, DeepFetch<T2> deepFetch) {
+            this.sql = sql;
+            this.limitPosition = limitPosition;
+            this.offsetPosition = offsetPosition;
+            this.tablenames = tablenames;
+            this.deepFetch = deepFetch;
+        }
+    }
+
     private final WhereCollector<T> whereCollector; //where条件聚合器
 
     private StringBuilder orderBuilder; //StringBuilder类型，字符串逐一的拼接
+    private final List<InMemoryEvaluator.Order> orders;  //内存中排序用，orderCustom与orderRaw无法在内存中执行
+    private boolean customOrder;
 
     private final List<Object> values;  //参数的集合
     private final List<Join<T, ?>> joins;   //做join参数的集合
@@ -46,6 +79,8 @@ public class QueryBuilder<T> {
     private Integer limit;  //limit与offset对游标与查询的结果集进行一定的限制
     private Integer offset;
     private boolean distinct;
+    private boolean cacheResults;
+    private DeepFetch<T> deepFetch;
 
     //成员方法主要是构造基本sql（包括表的sql，where的sql以及join的sql），再配合查询的参数，形成最终的查询的sql
 
@@ -63,6 +98,7 @@ public class QueryBuilder<T> {
         this.tablePrefix = tablePrefix;
         values = new ArrayList<Object>();
         joins = new ArrayList<Join<T, ?>>();
+        orders = new ArrayList<InMemoryEvaluator.Order>();
         whereCollector = new WhereCollector<T>(dao, tablePrefix);
     }
 
@@ -80,6 +116,15 @@ public class QueryBuilder<T> {
         return this;
     }
 
+    /**
+     * Caches the results of {@link Query#list()} in the session's {@link QueryResultCache}. Cached results are dropped
+     * whenever the queried table or one of the joined tables is written through a DAO.
+     */
+    public QueryBuilder<T> cacheResults() {
+        cacheResults = true;
+        return this;
+    }
+
     /**
      * Adds the given conditions to the where clause using an logical AND. To create new conditions, use the properties
      * given in the generated dao classes.
@@ -164,15 +209,39 @@ public class QueryBuilder<T> {
         return join;
     }
 
+    /**
+     * Loads the target of the given to-one relation together with the queried entities using a LEFT JOIN, so the to-one
+     * getters return it without loading it one by one. Pass nested relations to fetch a path, e.g.
+     * {@code fetch(NoteDao.Relations.Author, AuthorDao.Relations.Country)} also resolves the author's country. Call
+     * fetch again for other paths; relations are taken from the "Relations" inner class of the generated DAOs.<br/>
+     * Fetching applies to entity queries ({@link #build()}) only and is ignored for cursor, count and delete queries.
+     */
+    public QueryBuilder<T> fetch(ToOneRelation<?, ?> relation, ToOneRelation<?, ?>... nestedRelations) {
+        ToOneRelation<?, ?>[] path = new ToOneRelation<?, ?>[nestedRelations.length + 1];
+        path[0] = relation;
+        System.arraycopy(nestedRelations, 0, path, 1, nestedRelations.length);
+        if (deepFetch == null) {
+            deepFetch = new DeepFetch<T>(dao);
+        }
+        deepFetch.addPath(path);
+        return this;
+    }
+
     /** Adds the given properties to the ORDER BY section using ascending order. */
     public QueryBuilder<T> orderAsc(Property... properties) {
         orderAscOrDesc(" ASC", properties);
+        for (Property property : properties) {
+            orders.add(new InMemoryEvaluator.Order(property, false));
+        }
         return this;
     }
 
     /** Adds the given properties to the ORDER BY section using descending order. */
     public QueryBuilder<T> orderDesc(Property... properties) {
         orderAscOrDesc(" DESC", properties);
+        for (Property property : properties) {
+            orders.add(new InMemoryEvaluator.Order(property, true));
+        }
         return this;
     }
 
@@ -192,6 +261,7 @@ public class QueryBuilder<T> {
         checkOrderBuilder();
         append(orderBuilder, property).append(' ');
         orderBuilder.append(customOrderForProperty);
+        customOrder = true;
         return this;
     }
 
@@ -202,6 +272,7 @@ public class QueryBuilder<T> {
     public QueryBuilder<T> orderRaw(String rawOrder) {
         checkOrderBuilder();
         orderBuilder.append(rawOrder);
+        customOrder = true;
         return this;
     }
 
@@ -232,14 +303,91 @@ public class QueryBuilder<T> {
      * each execution.
      */
     public Query<T> build() {
-        StringBuilder builder = createSelectBuilder();
-        int limitPosition = checkAddLimit(builder);
-        int offsetPosition = checkAddOffset(builder);
+        List<Object> shape = createShape(SHAPE_QUERY);
+        SqlTemplate<T> template = getTemplate(shape);
+        if (template == null) {
+            DeepFetch<T> fetch = deepFetch != null && !deepFetch.isEmpty() ? deepFetch.copy() : null;
+            StringBuilder builder = createSelectBuilder(fetch);
+            int limitPosition = checkAddLimit(builder);
+            int offsetPosition = checkAddOffset(builder);
+            template = new SqlTemplate<T>(builder.toString(), limitPosition, offsetPosition, getTablenames(fetch),
+                    fetch);
+            putTemplate(shape, template);
+        } else {
+            collectValues(true);
+        }
+        checkLog(template.sql);
 
-        String sql = builder.toString();
-        checkLog(sql);
+        InMemoryEvaluator.Plan plan = null;
+        if (joins.isEmpty() && !customOrder && limit == null && offset == null && template.deepFetch == null
+                && isOrderedByPk()) {
+            plan = new InMemoryEvaluator.Plan(new ArrayList<WhereCondition>(whereCollector.getConditions()),
+                    new ArrayList<InMemoryEvaluator.Order>(orders));
+        }
+        return Query.create(dao, template.sql, values.toArray(), template.limitPosition, template.offsetPosition,
+                template.tablenames, cacheResults, template.deepFetch, plan,
+                isChunkable() && (orderBuilder == null || orderBuilder.length() == 0));
+    }
 
-        return Query.create(dao, sql, values.toArray(), limitPosition, offsetPosition);
+    /**
+     * True if the keys of an inLarge condition may be queried in chunks and the results concatenated or summed: there
+     * is a single inLarge condition, it is ANDed to the WHERE clause, no LIMIT or OFFSET restricts the result and no
+     * DISTINCT may remove a row that another chunk returns, too. Orders are checked by the caller.
+     */
+    private boolean isChunkable() {
+        if (limit != null || offset != null || (distinct && !joins.isEmpty())) {
+            return false;
+        }
+        int topLevel = countLargeIn(whereCollector);
+        for (Join<T, ?> join : joins) {
+            topLevel += countLargeIn(join.whereCollector);
+        }
+        int bulkKeys = 0;
+        for (Object value : values) {
+            if (value instanceof BulkKeys) {
+                bulkKeys++;
+            }
+        }
+        return topLevel == 1 && bulkKeys == 1;
+    }
+
+    private static int countLargeIn(WhereCollector<?> collector) {
+        int count = 0;
+        for (WhereCondition condition : collector.getConditions()) {
+            if (condition instanceof WhereCondition.LargeInCondition) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * True if the orders end with (or contain) the primary key, so SQL returns the rows in an order the in-memory
+     * comparator reproduces; otherwise SQLite may return ties and unordered rows in index or rowid order.
+     */
+    private boolean isOrderedByPk() {
+        Property pkProperty = dao.getPkProperty();
+        if (pkProperty == null) {
+            return false;
+        }
+        for (InMemoryEvaluator.Order order : orders) {
+            if (order.property == pkProperty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String[] getTablenames(DeepFetch<T> fetch) {
+        List<String> tablenames = new ArrayList<String>(joins.size() + 1);
+        tablenames.add(dao.getTablename());
+        for (Join<T, ?> join : joins) {
+            tablenames.add(join.daoDestination.getTablename());
+        }
+        if (fetch != null) {
+            fetch.addTablenames(tablenames);
+        }
+        return tablenames.toArray(new String[tablenames.size()]);
     }
 
     /**
@@ -247,19 +395,102 @@ public class QueryBuilder<T> {
      * (Query objects can be executed more efficiently than creating a QueryBuilder for each execution.
      */
     public CursorQuery buildCursor() {
-        StringBuilder builder = createSelectBuilder();
-        int limitPosition = checkAddLimit(builder);
-        int offsetPosition = checkAddOffset(builder);
+        List<Object> shape = createShape(SHAPE_CURSOR);
+        SqlTemplate<T> template = getTemplate(shape);
+        if (template == null) {
+            StringBuilder builder = createSelectBuilder(null);
+            int limitPosition = checkAddLimit(builder);
+            int offsetPosition = checkAddOffset(builder);
+            template = new SqlTemplate<T>(builder.toString(), limitPosition, offsetPosition, null, null);
+            putTemplate(shape, template);
+        } else {
+            collectValues(true);
+        }
+        checkLog(template.sql);
 
-        String sql = builder.toString();
-        checkLog(sql);
+        return CursorQuery.create(dao, template.sql, values.toArray(), template.limitPosition,
+                template.offsetPosition);
+    }
 
-        return CursorQuery.create(dao, sql, values.toArray(), limitPosition, offsetPosition);
+    /**
+     * The shape identifies the SQL this builder creates for the given kind of query: equal shapes result in equal SQL
+     * and an equal parameter layout.
+     *
+     * @return null if a condition has no shape, so the SQL cannot be reused.
+     */
+    private List<Object> createShape(String kind) {
+        List<Object> shape = new ArrayList<Object>();
+        shape.add(kind);
+        shape.add(dao);
+        shape.add(tablePrefix);
+        shape.add(distinct);
+        shape.add(limit != null);
+        shape.add(offset != null);
+        shape.add(joins.size());
+        for (Join<T, ?> join : joins) {
+            shape.add(join.sourceTablePrefix);
+            shape.add(join.tablePrefix);
+            shape.add(join.joinPropertySource);
+            shape.add(join.daoDestination);
+            shape.add(join.joinPropertyDestination);
+            if (!join.whereCollector.appendShapeTo(shape)) {
+                return null;
+            }
+        }
+        if (!whereCollector.appendShapeTo(shape)) {
+            return null;
+        }
+        shape.add(orderBuilder != null ? orderBuilder.toString() : null);
+        if (SHAPE_QUERY.equals(kind) && deepFetch != null) {
+            deepFetch.appendShapeTo(shape);
+        }
+        return shape;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SqlTemplate<T> getTemplate(List<Object> shape) {
+        if (shape == null) {
+            return null;
+        }
+        return (SqlTemplate<T>) InternalQueryDaoAccess.getStatements(dao).getQueryTemplate(shape);
     }
 
-    private StringBuilder createSelectBuilder() {
-        String select = SqlUtils.createSqlSelect(dao.getTablename(), tablePrefix, dao.getAllColumns(), distinct);
-        StringBuilder builder = new StringBuilder(select);
+    private void putTemplate(List<Object> shape, SqlTemplate<T> template) {
+        if (shape != null) {
+            InternalQueryDaoAccess.getStatements(dao).putQueryTemplate(shape, template);
+        }
+    }
+
+    /** Collects the values in the same order as building the SQL does. */
+    private void collectValues(boolean withLimitAndOffset) {
+        values.clear();
+        whereCollector.appendValuesTo(values);
+        for (Join<T, ?> join : joins) {
+            join.whereCollector.appendValuesTo(values);
+        }
+        if (withLimitAndOffset) {
+            if (limit != null) {
+                values.add(limit);
+            }
+            if (offset != null) {
+                values.add(offset);
+            }
+        }
+    }
+
+    private StringBuilder createSelectBuilder(DeepFetch<T> fetch) {
+        StringBuilder builder;
+        if (fetch == null) {
+            String select = SqlUtils.createSqlSelect(dao.getTablename(), tablePrefix, dao.getAllColumns(), distinct);
+            builder = new StringBuilder(select);
+        } else {
+            builder = new StringBuilder(distinct ? "SELECT DISTINCT " : "SELECT ");
+            SqlUtils.appendColumns(builder, tablePrefix, dao.getAllColumns());
+            fetch.appendColumns(builder);
+            builder.append(" FROM \"").append(dao.getTablename()).append("\" ").append(tablePrefix);
+            fetch.appendJoins(builder, tablePrefix);
+            builder.append(' ');
+        }
 
         appendJoinsAndWheres(builder, tablePrefix);
 
@@ -300,18 +531,27 @@ public class QueryBuilder<T> {
         if (!joins.isEmpty()) {
             throw new DaoException("JOINs are not supported for DELETE queries");
         }
-        String tablename = dao.getTablename();
-        String baseSql = SqlUtils.createSqlDelete(tablename, null);
-        StringBuilder builder = new StringBuilder(baseSql);
-
-        // tablePrefix gets replaced by table name below. Don't use tableName here because it causes trouble when
-        // table name ends with tablePrefix.
-        appendJoinsAndWheres(builder, tablePrefix);
-
-        String sql = builder.toString();
-        // Remove table aliases, not supported for DELETE queries.
-        // TODO(?): don't create table aliases in the first place.
-        sql = sql.replace(tablePrefix + ".\"", '"' + tablename + "\".\"");
+        List<Object> shape = createShape(SHAPE_DELETE);
+        SqlTemplate<T> template = getTemplate(shape);
+        String sql;
+        if (template == null) {
+            String tablename = dao.getTablename();
+            String baseSql = SqlUtils.createSqlDelete(tablename, null);
+            StringBuilder builder = new StringBuilder(baseSql);
+
+            // tablePrefix gets replaced by table name below. Don't use tableName here because it causes trouble when
+            // table name ends with tablePrefix.
+            appendJoinsAndWheres(builder, tablePrefix);
+
+            sql = builder.toString();
+            // Remove table aliases, not supported for DELETE queries.
+            // TODO(?): don't create table aliases in the first place.
+            sql = sql.replace(tablePrefix + ".\"", '"' + tablename + "\".\"");
+            putTemplate(shape, new SqlTemplate<T>(sql, -1, -1, null, null));
+        } else {
+            sql = template.sql;
+            collectValues(false);
+        }
         checkLog(sql);
 
         return DeleteQuery.create(dao, sql, values.toArray());
@@ -322,15 +562,24 @@ public class QueryBuilder<T> {
      * QueryBuilder for each execution.
      */
     public CountQuery<T> buildCount() {
-        String tablename = dao.getTablename();
-        String baseSql = SqlUtils.createSqlSelectCountStar(tablename, tablePrefix);
-        StringBuilder builder = new StringBuilder(baseSql);
-        appendJoinsAndWheres(builder, tablePrefix);
-
-        String sql = builder.toString();
+        List<Object> shape = createShape(SHAPE_COUNT);
+        SqlTemplate<T> template = getTemplate(shape);
+        String sql;
+        if (template == null) {
+            String tablename = dao.getTablename();
+            String baseSql = SqlUtils.createSqlSelectCountStar(tablename, tablePrefix);
+            StringBuilder builder = new StringBuilder(baseSql);
+            appendJoinsAndWheres(builder, tablePrefix);
+
+            sql = builder.toString();
+            putTemplate(shape, new SqlTemplate<T>(sql, -1, -1, null, null));
+        } else {
+            sql = template.sql;
+            collectValues(false);
+        }
         checkLog(sql);
 
-        return CountQuery.create(dao, sql, values.toArray());
+        return CountQuery.create(dao, sql, values.toArray(), isChunkable());
     }
 
     private void checkLog(String sql) {
@@ -423,6 +672,55 @@ public class QueryBuilder<T> {
         return build().uniqueOrThrow();
     }
 
+    /**
+     * Compiles the WHERE conditions of this builder to a predicate evaluated on entity objects in memory, using the
+     * property accessors of the generated DAO. Conditions created by {@link Property} and combinations of them are
+     * supported; {@link WhereCondition.StringCondition}s, custom operators and joins are not.
+     */
+    public Predicate<T> buildPredicate() {
+        return buildPredicate(new InMemoryEvaluator<T>(dao));
+    }
+
+    private Predicate<T> buildPredicate(InMemoryEvaluator<T> evaluator) {
+        if (!joins.isEmpty()) {
+            throw new DaoException("JOINs cannot be evaluated in memory");
+        }
+        return evaluator.compile(whereCollector.getConditions());
+    }
+
+    /**
+     * Answers the query in memory without SQL: filters and sorts all entities of the table, which are loaded once and
+     * kept until the table is written through its DAO (see {@link #buildPredicate()} for supported conditions;
+     * orderCustom and orderRaw are not supported). Meant for small, frequently queried tables; writes bypassing the DAO
+     * are not noticed and unsaved changes to entities of the identity scope are visible.
+     */
+    public List<T> listFromCache() {
+        InMemoryEvaluator<T> evaluator = new InMemoryEvaluator<T>(dao);
+        Predicate<T> predicate = buildPredicate(evaluator);
+        if (customOrder) {
+            throw new DaoException("orderCustom and orderRaw cannot be evaluated in memory");
+        }
+        if (offset != null && limit == null) {
+            throw new IllegalStateException("Offset cannot be set without limit");
+        }
+        List<T> result = new ArrayList<T>();
+        for (T entity : new InternalQueryDaoAccess<T>(dao).loadAllCached()) {
+            if (predicate.test(entity)) {
+                result.add(entity);
+            }
+        }
+        if (!orders.isEmpty()) {
+            Collections.sort(result, evaluator.comparator(orders));
+        }
+        if (limit != null) {
+            // Like SQLite, a negative limit means no limit
+            int from = Math.min(offset != null ? Math.max(offset, 0) : 0, result.size());
+            int to = limit < 0 ? result.size() : (int) Math.min((long) from + limit, result.size());
+            result = new ArrayList<T>(result.subList(from, to));
+        }
+        return result;
+    }
+
     /**
      * Shorthand for {@link QueryBuilder#buildCount() buildCount()}.{@link CountQuery#count() count()}; see
      * {@link CountQuery#count()} for details. To execute a query more than once, you should build the query and keep
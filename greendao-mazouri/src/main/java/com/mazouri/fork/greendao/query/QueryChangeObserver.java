@@ -0,0 +1,12 @@
+package com.mazouri.fork.greendao.query;
+
+/**
+ * Receives the changes of an observed query, see {@link Query#observeChanges(QueryChangeObserver)}. Called on a
+ * background thread.
+ *
+ * @param <T> The entity class the query returns results for.
+ */
+public interface QueryChangeObserver<T> {
+    /** @param diff The changes since the previous call; called once initially and after each relevant change. */
+    void onQueryChanged(QueryDiff<T> diff);
+}
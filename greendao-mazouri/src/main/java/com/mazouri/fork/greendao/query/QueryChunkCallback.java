@@ -0,0 +1,21 @@
+package com.mazouri.fork.greendao.query;
+
+import java.util.List;
+
+/**
+ * Receives the result of {@link Query#forEachChunk(int, QueryChunkCallback)} in chunks while the cursor is read.
+ *
+ * 分块接收查询结果
+ *
+ * @param <T> The entity class the query returns results for.
+ */
+public interface QueryChunkCallback<T> {
+
+    /**
+     * Called on the thread executing the query with the next entities in result order; the list belongs to the
+     * callback.
+     *
+     * @return false to stop reading: the cursor is closed and no further chunks are delivered.
+     */
+    boolean onChunk(List<T> chunk);
+}
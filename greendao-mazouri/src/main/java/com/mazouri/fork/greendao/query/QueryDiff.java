@@ -0,0 +1,89 @@
+package com.mazouri.fork.greendao.query;
+
+import java.util.List;
+
+/**
+ * The changes between two results of an observed query, see {@link Query#observeChanges(QueryChangeObserver)}.
+ * Entities are matched by primary key. Applying the changes in order to the previous result yields the new result:
+ * removals come first (using indexes of the previous result, descending), then moves (like
+ * <code>list.add(toIndex, list.remove(fromIndex))</code>), then insertions (ascending), and finally updates (using
+ * indexes of the new result). This matches the notifyItemXxx methods of RecyclerView adapters.
+ *
+ * 按主键计算的查询结果差异
+ *
+ * @param <T> The entity class the query returns results for.
+ */
+public class QueryDiff<T> {
+
+    public enum Type {
+        INSERT, UPDATE, MOVE, REMOVE
+    }
+
+    public static final class Change<T> {
+        public final Type type;
+        /** Index before the change; -1 for INSERT and UPDATE. */
+        public final int fromIndex;
+        /** Index after the change; -1 for REMOVE. */
+        public final int toIndex;
+        public final Object key;
+        /** The new entity; the removed entity for REMOVE. */
+        public final T entity;
+
+        Change(Type type, int fromIndex, int toIndex, Object key, T entity) {
+            this.type = type;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.key = key;
+            this.entity = entity;
+        }
+
+        @Override
+        public String toString() {
+            return type + "[" + fromIndex + "->" + toIndex + ", key=" + key + "]";
+        }
+    }
+
+    private final List<Change<T>> changes;
+    private final List<T> result;
+    private final boolean initial;
+    private final boolean incremental;
+
+    QueryDiff(List<Change<T>> changes, List<T> result, boolean initial, boolean incremental) {
+        this.changes = changes;
+        this.result = result;
+        this.initial = initial;
+        this.incremental = incremental;
+    }
+
+    /** The changes in the order they must be applied; do not modify. */
+    public List<Change<T>> getChanges() {
+        return changes;
+    }
+
+    /** The new result of the query; do not modify. */
+    public List<T> getResult() {
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /** True for the first diff of an observation, which inserts the complete result. */
+    public boolean isInitial() {
+        return initial;
+    }
+
+    /**
+     * True if the diff was computed from the keys written by the triggering transactions without executing the query,
+     * false if the query was executed and the results compared.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryDiff" + changes;
+    }
+}
@@ -0,0 +1,283 @@
+package com.mazouri.fork.greendao.query;
+
+import com.mazouri.fork.greendao.AbstractDao;
+import com.mazouri.fork.greendao.DaoException;
+import com.mazouri.fork.greendao.InternalQueryDaoAccess;
+import com.mazouri.fork.greendao.Property;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Internal class keeping the last result of an observed query and computing {@link QueryDiff}s by primary key. If the
+ * query can be evaluated in memory (no joins, fetches, limit, offset or custom orders, and ordered by the primary key,
+ * so SQL and the comparator agree on the order of every row) and the written keys are known, only the written rows are
+ * loaded and matched against the compiled conditions; otherwise the query is executed and both results are compared.
+ * Not thread safe; used by the observer thread only.
+ *
+ * 增量计算查询结果的变化
+ */
+final class QueryDiffer<T> {
+
+    /** If more keys were written, executing the query is usually cheaper than loading the written rows. */
+    static final int MAX_INCREMENTAL_KEYS = 256;
+
+    /** Maximum number of keys per IN query loading written rows (stays below SQLite's 999 variable limit). */
+    private static final int LOAD_CHUNK_SIZE = 500;
+
+    /** Counts per index with prefix sums in O(log n) (Fenwick tree). */
+    private static final class Counts {
+        private final int[] tree;
+
+        Counts(int size) {
+            tree = new int[size + 1];
+        }
+
+        void add(int index, int delta) {
+            for (int i = index + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        /** Sum of the counts of the indexes below the given one. */
+        int countBelow(int index) {
+            int count = 0;
+            for (int i = index; i > 0; i -= i & -i) {
+                count += tree[i];
+            }
+            return count;
+        }
+    }
+
+    private final AbstractDao<T, Object> dao;
+    private final InternalQueryDaoAccess<T> daoAccess;
+    private final BoundQuery<T> query;
+    private final boolean fetching;
+    private final Predicate<T> predicate;
+    private final Comparator<T> comparator;
+
+    private List<T> result;
+    private List<Object> keys;
+
+    /**
+     * @param plan     Conditions and orders of the query if it may be evaluated in memory using the parameters of the
+     *                 given query, otherwise null. The orders must include the primary key.
+     * @param fetching True if the query fetches to-one relations (changes to their tables update all entities).
+     */
+    @SuppressWarnings("unchecked")
+    QueryDiffer(AbstractDao<T, ?> dao, BoundQuery<T> query, InMemoryEvaluator.Plan plan, boolean fetching) {
+        this.dao = (AbstractDao<T, Object>) dao;
+        this.query = query;
+        this.fetching = fetching;
+        daoAccess = new InternalQueryDaoAccess<T>(dao);
+        Predicate<T> predicate = null;
+        Comparator<T> comparator = null;
+        if (plan != null) {
+            InMemoryEvaluator<T> evaluator = new InMemoryEvaluator<T>(dao);
+            try {
+                predicate = evaluator.compile(plan.conditions);
+                comparator = evaluator.comparator(plan.orders);
+            } catch (DaoException e) {
+                // Not supported in memory (e.g. custom operators), the query will be executed instead
+                predicate = null;
+            }
+        }
+        this.predicate = predicate;
+        this.comparator = comparator;
+    }
+
+    /** Executes the query and returns its result as insertions. */
+    QueryDiff<T> initial() {
+        List<T> newResult = query.list();
+        List<Object> newKeys = keysOf(newResult);
+        List<QueryDiff.Change<T>> changes = new ArrayList<QueryDiff.Change<T>>(newResult.size());
+        for (int i = 0; i < newResult.size(); i++) {
+            changes.add(new QueryDiff.Change<T>(QueryDiff.Type.INSERT, -1, i, newKeys.get(i), newResult.get(i)));
+        }
+        result = newResult;
+        keys = newKeys;
+        return new QueryDiff<T>(Collections.unmodifiableList(changes), Collections.unmodifiableList(newResult), true,
+                false);
+    }
+
+    /**
+     * @param changedKeys        Keys written to the queried table or null if unknown.
+     * @param otherTablesChanged True if other tables the query reads from were written.
+     */
+    QueryDiff<T> update(Set<Object> changedKeys, boolean otherTablesChanged) {
+        boolean incremental = predicate != null && changedKeys != null && !otherTablesChanged
+                && changedKeys.size() <= MAX_INCREMENTAL_KEYS;
+        List<T> newResult = incremental ? applyChanges(changedKeys) : query.list();
+        Set<Object> updatedKeys = changedKeys != null ? changedKeys : Collections.<Object>emptySet();
+        return diff(newResult, updatedKeys, otherTablesChanged && fetching, incremental);
+    }
+
+    private List<T> applyChanges(Set<Object> changedKeys) {
+        List<T> newResult = new ArrayList<T>(result.size() + changedKeys.size());
+        for (int i = 0; i < result.size(); i++) {
+            if (!changedKeys.contains(keys.get(i))) {
+                newResult.add(result.get(i));
+            }
+        }
+        for (T entity : loadAll(changedKeys)) {
+            if (predicate.test(entity)) {
+                int index = Collections.binarySearch(newResult, entity, comparator);
+                newResult.add(index < 0 ? -index - 1 : index, entity);
+            }
+        }
+        return newResult;
+    }
+
+    /** Loads the rows with the given keys using a few IN queries instead of one query per key. */
+    private List<T> loadAll(Set<Object> changedKeys) {
+        List<Object> keysToLoad = new ArrayList<Object>(changedKeys);
+        if (keysToLoad.size() == 1) {
+            T entity = dao.load(keysToLoad.get(0));
+            return entity != null ? Collections.singletonList(entity) : Collections.<T>emptyList();
+        }
+        Property pkProperty = dao.getPkProperty();
+        List<T> loaded = new ArrayList<T>(keysToLoad.size());
+        for (int i = 0; i < keysToLoad.size(); i += LOAD_CHUNK_SIZE) {
+            List<Object> chunk = keysToLoad.subList(i, Math.min(i + LOAD_CHUNK_SIZE, keysToLoad.size()));
+            loaded.addAll(dao.queryBuilder().where(pkProperty.in(chunk)).list());
+        }
+        return loaded;
+    }
+
+    private QueryDiff<T> diff(List<T> newResult, Set<Object> updatedKeys, boolean allUpdated, boolean incremental) {
+        List<Object> newKeys = keysOf(newResult);
+        Map<Object, Integer> newIndexes = new HashMap<Object, Integer>(newKeys.size() * 4 / 3 + 1);
+        for (int i = 0; i < newKeys.size(); i++) {
+            newIndexes.put(newKeys.get(i), i);
+        }
+        List<QueryDiff.Change<T>> changes = new ArrayList<QueryDiff.Change<T>>();
+
+        // Removals, descending so the indexes stay valid
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            Object key = keys.get(i);
+            if (!newIndexes.containsKey(key)) {
+                changes.add(new QueryDiff.Change<T>(QueryDiff.Type.REMOVE, i, -1, key, result.get(i)));
+            }
+        }
+
+        // Moves: entities off the longest run keeping their relative order are moved behind their new predecessor.
+        // The working list (old order without removals) is not materialized: placed entities (the run and entities
+        // moved so far) are in new order, each sitting behind its anchor, the entity of the run it follows directly or
+        // indirectly (-1 for the start); unplaced entities keep their old position relative to the run.
+        List<Integer> targets = new ArrayList<Integer>(keys.size());
+        for (Object key : keys) {
+            Integer target = newIndexes.get(key);
+            if (target != null) {
+                targets.add(target);
+            }
+        }
+        boolean[] stable = longestIncreasing(targets);
+        int[] oldPositions = new int[newKeys.size()];
+        int[] anchors = new int[newKeys.size()];
+        TreeSet<Integer> placedTargets = new TreeSet<Integer>();
+        Counts placedByTarget = new Counts(newKeys.size());
+        Counts placedByAnchor = new Counts(targets.size() + 1);
+        Counts unplaced = new Counts(targets.size());
+        List<Integer> moving = new ArrayList<Integer>();
+        for (int i = 0; i < targets.size(); i++) {
+            int target = targets.get(i);
+            oldPositions[target] = i;
+            if (stable[i]) {
+                anchors[target] = i;
+                placedTargets.add(target);
+                placedByTarget.add(target, 1);
+                placedByAnchor.add(i + 1, 1);
+            } else {
+                moving.add(target);
+                unplaced.add(i, 1);
+            }
+        }
+        Collections.sort(moving);
+        for (int target : moving) {
+            int oldPosition = oldPositions[target];
+            int from = placedByAnchor.countBelow(oldPosition + 1) + unplaced.countBelow(oldPosition);
+            unplaced.add(oldPosition, -1);
+            Integer predecessor = placedTargets.lower(target);
+            int anchor = predecessor != null ? anchors[predecessor] : -1;
+            int to = placedByTarget.countBelow(target) + unplaced.countBelow(anchor + 1);
+            anchors[target] = anchor;
+            placedTargets.add(target);
+            placedByTarget.add(target, 1);
+            placedByAnchor.add(anchor + 1, 1);
+            if (from != to) {
+                Object key = newKeys.get(target);
+                changes.add(new QueryDiff.Change<T>(QueryDiff.Type.MOVE, from, to, key, newResult.get(target)));
+            }
+        }
+
+        // Insertions ascending, then updates using the indexes of the new result
+        Set<Object> oldKeys = new HashSet<Object>(keys);
+        for (int i = 0; i < newKeys.size(); i++) {
+            Object key = newKeys.get(i);
+            if (!oldKeys.contains(key)) {
+                changes.add(new QueryDiff.Change<T>(QueryDiff.Type.INSERT, -1, i, key, newResult.get(i)));
+            }
+        }
+        for (int i = 0; i < newKeys.size(); i++) {
+            Object key = newKeys.get(i);
+            if (oldKeys.contains(key) && (allUpdated || updatedKeys.contains(key))) {
+                changes.add(new QueryDiff.Change<T>(QueryDiff.Type.UPDATE, -1, i, key, newResult.get(i)));
+            }
+        }
+
+        result = newResult;
+        keys = newKeys;
+        return new QueryDiff<T>(Collections.unmodifiableList(changes), Collections.unmodifiableList(newResult), false,
+                incremental);
+    }
+
+    private List<Object> keysOf(List<T> entities) {
+        List<Object> entityKeys = new ArrayList<Object>(entities.size());
+        for (T entity : entities) {
+            Object key = daoAccess.getKey(entity);
+            if (key == null) {
+                throw new DaoException("Entity has no key: " + entity);
+            }
+            entityKeys.add(key);
+        }
+        return entityKeys;
+    }
+
+    /** Marks the elements of a longest strictly increasing subsequence. */
+    private static boolean[] longestIncreasing(List<Integer> values) {
+        int size = values.size();
+        int[] tails = new int[size];
+        int[] previous = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            int value = values.get(i);
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values.get(tails[mid]) < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] stable = new boolean[size];
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) {
+            stable[i] = true;
+        }
+        return stable;
+    }
+}
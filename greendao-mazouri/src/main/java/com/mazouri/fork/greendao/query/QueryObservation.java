@@ -0,0 +1,201 @@
+package com.mazouri.fork.greendao.query;
+
+import com.mazouri.fork.greendao.AbstractDaoSession;
+import com.mazouri.fork.greendao.DaoLog;
+import com.mazouri.fork.greendao.EntityChangeListener;
+import com.mazouri.fork.greendao.TableChangeListener;
+import com.mazouri.fork.greendao.TableChanges;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A running observation of a query created by {@link Query#observe(QueryObserver, long)} or
+ * {@link Query#observeChanges(QueryChangeObserver, long)}. The query is executed once initially and again after
+ * committed writes to any of the tables it reads from. Writes arriving within the debounce
+ * delay are collapsed into a single re-execution, so bulk writes cause one query instead of one per write.<br/>
+ * Queries run and results are delivered on a shared background thread; call {@link #cancel()} when done.
+ *
+ * 观察查询结果，表变更后去抖重新查询
+ *
+ * @param <T> The entity class the query returns results for.
+ */
+public class QueryObservation<T> implements TableChangeListener, EntityChangeListener {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 50;
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "greenDAO-observer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final AbstractDaoSession session;
+    private final BoundQuery<T> query;
+    private final String[] tablenames;
+    private final QueryObserver<T> observer;
+    private final QueryDiffer<T> differ;
+    private final QueryChangeObserver<T> changeObserver;
+    private final long debounceMillis;
+    private final AtomicBoolean scheduled;
+    private final Runnable runQuery;
+    private volatile boolean canceled;
+
+    // Written keys of the queried table (tablenames[0]) since the last run; guarded by this
+    private final Set<Object> pendingKeys;
+    private boolean pendingUnknownKeys;
+    private boolean pendingOtherTables;
+    private boolean initialDelivered;
+
+    /** Either observer or differ and changeObserver must be given. */
+    QueryObservation(AbstractDaoSession session, BoundQuery<T> query, String[] tablenames, QueryObserver<T> observer,
+                     QueryDiffer<T> differ, QueryChangeObserver<T> changeObserver, long debounceMillis) {
+        this.session = session;
+        this.query = query;
+        this.tablenames = tablenames;
+        this.observer = observer;
+        this.differ = differ;
+        this.changeObserver = changeObserver;
+        this.debounceMillis = debounceMillis;
+        pendingKeys = new HashSet<Object>();
+        scheduled = new AtomicBoolean();
+        runQuery = new Runnable() {
+            @Override
+            public void run() {
+                execute();
+            }
+        };
+    }
+
+    void start() {
+        if (differ != null) {
+            session.addEntityChangeListener(this);
+        } else {
+            session.addTableChangeListener(this);
+        }
+        scheduled.set(true);
+        executor.execute(runQuery);
+    }
+
+    @Override
+    public void onTablesChanged(Set<String> changedTables) {
+        if (canceled) {
+            return;
+        }
+        for (String tablename : tablenames) {
+            if (changedTables.contains(tablename)) {
+                schedule();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onEntitiesChanged(TableChanges changes) {
+        if (canceled) {
+            return;
+        }
+        boolean relevant = false;
+        synchronized (this) {
+            for (int i = 0; i < tablenames.length; i++) {
+                String tablename = tablenames[i];
+                if (!changes.contains(tablename)) {
+                    continue;
+                }
+                relevant = true;
+                if (i > 0) {
+                    pendingOtherTables = true;
+                } else if (!pendingUnknownKeys) {
+                    Set<Object> keys = changes.getKeys(tablename);
+                    if (keys != null) {
+                        pendingKeys.addAll(keys);
+                    } else {
+                        pendingUnknownKeys = true;
+                        pendingKeys.clear();
+                    }
+                }
+            }
+        }
+        if (relevant) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(runQuery, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void execute() {
+        // Cleared before querying: a change during the query schedules another run
+        scheduled.set(false);
+        if (canceled) {
+            return;
+        }
+        if (differ != null) {
+            executeDiff();
+            return;
+        }
+        List<T> result;
+        try {
+            result = query.list();
+        } catch (RuntimeException e) {
+            DaoLog.e("Observed query failed", e);
+            return;
+        }
+        if (!canceled) {
+            observer.onQueryResult(result);
+        }
+    }
+
+    private void executeDiff() {
+        Set<Object> keys;
+        boolean otherTables;
+        synchronized (this) {
+            keys = pendingUnknownKeys ? null : new HashSet<Object>(pendingKeys);
+            otherTables = pendingOtherTables;
+            pendingKeys.clear();
+            pendingUnknownKeys = false;
+            pendingOtherTables = false;
+        }
+        QueryDiff<T> diff;
+        try {
+            // Changes before the initial run are already part of its result
+            diff = initialDelivered ? differ.update(keys, otherTables) : differ.initial();
+        } catch (RuntimeException e) {
+            DaoLog.e("Observed query failed", e);
+            synchronized (this) {
+                // The differ may have missed changes, so compare complete results next time
+                pendingUnknownKeys = true;
+                pendingKeys.clear();
+            }
+            return;
+        }
+        initialDelivered = true;
+        if (!canceled && (diff.isInitial() || !diff.isEmpty())) {
+            changeObserver.onQueryChanged(diff);
+        }
+    }
+
+    /** Stops the observation; no results are delivered after this method returned (unless delivery already began). */
+    public void cancel() {
+        canceled = true;
+        session.removeTableChangeListener(this);
+        session.removeEntityChangeListener(this);
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+}
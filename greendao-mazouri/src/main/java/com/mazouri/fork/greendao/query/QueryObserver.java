@@ -0,0 +1,13 @@
+package com.mazouri.fork.greendao.query;
+
+import java.util.List;
+
+/**
+ * Receives the results of an observed query, see {@link Query#observe(QueryObserver)}. Called on a background thread.
+ *
+ * @param <T> The entity class the query returns results for.
+ */
+public interface QueryObserver<T> {
+    /** @param result The current result of the query; called once initially and after each relevant change. */
+    void onQueryResult(List<T> result);
+}
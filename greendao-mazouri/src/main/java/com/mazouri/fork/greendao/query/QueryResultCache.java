@@ -0,0 +1,284 @@
+package com.mazouri.fork.greendao.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the results of {@link Query#list()} for queries that opted in using {@link QueryBuilder#cacheResults()} or
+ * {@link Query#setCacheResults(boolean)}. Results are keyed by SQL and parameter values and kept in LRU order until the
+ * total number of cached entities exceeds the size budget. Any write to a table through a DAO of the owning session
+ * drops all entries that read from that table (including joined tables). Inside a transaction, results reading a
+ * written table are not cached until the transaction ended, as other connections may still read the old rows.<br/>
+ * <br/>
+ * Writes that bypass the DAOs (e.g. {@link android.database.sqlite.SQLiteDatabase#execSQL(String)}) are not seen by
+ * the cache; call {@link #invalidate(String)} or {@link #clear()} after such writes.
+ *
+ * 查询结果缓存，按表失效
+ */
+public class QueryResultCache {
+
+    /** Default size budget: number of entities held by all cached results together. */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final class Key {
+        final String sql;
+        final Object[] parameters;
+        final int hashCode;
+
+        Key(String sql, Object[] parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+            hashCode = 31 * sql.hashCode() + Arrays.deepHashCode(parameters);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && sql.equals(other.sql)
+                    && Arrays.deepEquals(parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        final List<?> result;
+        final String[] tablenames;
+
+        Entry(List<?> result, String[] tablenames) {
+            this.result = result;
+            this.tablenames = tablenames;
+        }
+
+        int size() {
+            return Math.max(1, result.size());
+        }
+    }
+
+    private final LinkedHashMap<Key, Entry> entries;
+    private final Map<String, Set<Key>> keysForTable;
+    // Number of open transactions that wrote each table
+    private final Map<String, Integer> writingTransactions;
+
+    private int maxSize;
+    private int size;
+    private long generation;
+
+    private long hitCount;
+    private long missCount;
+    private long putCount;
+    private long evictionCount;
+    private long invalidationCount;
+    private long invalidatedEntryCount;
+
+    public QueryResultCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public QueryResultCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal max size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        keysForTable = new HashMap<String, Set<Key>>();
+        writingTransactions = new HashMap<String, Integer>();
+    }
+
+    /** Returns the cached result or null if there is none. The returned list must not be modified. */
+    synchronized List<?> get(String sql, Object[] parameters) {
+        Entry entry = entries.get(new Key(sql, parameters));
+        if (entry != null) {
+            hitCount++;
+            return entry.result;
+        } else {
+            missCount++;
+            return null;
+        }
+    }
+
+    /**
+     * The current invalidation generation. Read it before executing the query and pass it to
+     * {@link #put(String, Object[], String[], List, long)}, so results read before a concurrent write are not cached.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /** Stores a copy of the given result, unless a table was invalidated since the given generation. */
+    synchronized void put(String sql, Object[] parameters, String[] tablenames, List<?> result, long generation) {
+        if (generation != this.generation || maxSize == 0) {
+            return;
+        }
+        for (String tablename : tablenames) {
+            if (writingTransactions.containsKey(tablename)) {
+                return;
+            }
+        }
+        Key key = new Key(sql, parameters.clone());
+        Entry entry = new Entry(new ArrayList<Object>(result), tablenames);
+        if (entry.size() > maxSize) {
+            return;
+        }
+        removeEntry(key, entries.remove(key));
+        entries.put(key, entry);
+        size += entry.size();
+        for (String tablename : tablenames) {
+            Set<Key> keys = keysForTable.get(tablename);
+            if (keys == null) {
+                keys = new HashSet<Key>();
+                keysForTable.put(tablename, keys);
+            }
+            keys.add(key);
+        }
+        putCount++;
+        trimToSize(maxSize);
+    }
+
+    /** Drops all results that were read from the given table. Called by the DAOs after each write. */
+    public synchronized void invalidate(String tablename) {
+        generation++;
+        Set<Key> keys = keysForTable.remove(tablename);
+        if (keys != null && !keys.isEmpty()) {
+            invalidationCount++;
+            for (Key key : keys) {
+                Entry entry = entries.remove(key);
+                if (entry != null) {
+                    invalidatedEntryCount++;
+                    removeEntry(key, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the results read from the given table and stops caching results reading it until {@link #endWrite(String)}.
+     * Called by the session when a transaction first writes the table: before it committed, readers on other
+     * connections may still see the old rows.
+     */
+    public synchronized void beginWrite(String tablename) {
+        Integer count = writingTransactions.get(tablename);
+        writingTransactions.put(tablename, count != null ? count + 1 : 1);
+        invalidate(tablename);
+    }
+
+    /** Called by the session after a transaction that wrote the given table ended; drops results read meanwhile. */
+    public synchronized void endWrite(String tablename) {
+        Integer count = writingTransactions.get(tablename);
+        if (count != null && count > 1) {
+            writingTransactions.put(tablename, count - 1);
+        } else {
+            writingTransactions.remove(tablename);
+        }
+        invalidate(tablename);
+    }
+
+    /** Drops all cached results. */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        keysForTable.clear();
+        size = 0;
+    }
+
+    /** Sets the size budget (number of entities held by all cached results together) and evicts if necessary. */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal max size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Number of entities held by all cached results together; empty results count as one. */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /** Hits divided by lookups, or 0 if there were no lookups yet. */
+    public synchronized double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups > 0 ? (double) hitCount / lookups : 0;
+    }
+
+    public synchronized long getPutCount() {
+        return putCount;
+    }
+
+    /** Number of entries dropped to stay within the size budget. */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** Number of table writes that dropped at least one cached result. */
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /** Number of cached results dropped because of table writes. */
+    public synchronized long getInvalidatedEntryCount() {
+        return invalidatedEntryCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "QueryResultCache[size=" + size + "/" + maxSize + ", entries=" + entries.size() + ", hits=" + hitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + ", invalidations=" + invalidationCount
+                + "]";
+    }
+
+    private void trimToSize(int maxSize) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            iterator.remove();
+            removeEntry(eldest.getKey(), eldest.getValue());
+            evictionCount++;
+        }
+    }
+
+    private void removeEntry(Key key, Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        size -= entry.size();
+        for (String tablename : entry.tablenames) {
+            Set<Key> keys = keysForTable.get(tablename);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysForTable.remove(tablename);
+                }
+            }
+        }
+    }
+}
@@ -38,45 +38,32 @@ class WhereCollector<T> {
 
     WhereCondition combineWhereConditions(String combineOp, WhereCondition cond1, WhereCondition cond2,
                                           WhereCondition... condMore) {
-        StringBuilder builder = new StringBuilder("(");
-        List<Object> combinedValues = new ArrayList<Object>();
-
-        addCondition(builder, combinedValues, cond1);
-        builder.append(combineOp);
-        addCondition(builder, combinedValues, cond2);
-
+        List<WhereCondition> conditions = new ArrayList<WhereCondition>(condMore.length + 2);
+        conditions.add(cond1);
+        conditions.add(cond2);
         for (WhereCondition cond : condMore) {
-            builder.append(combineOp);
-            addCondition(builder, combinedValues, cond);
+            conditions.add(cond);
         }
-        builder.append(')');
-        return new WhereCondition.StringCondition(builder.toString(), combinedValues.toArray());
-    }
-
-    void addCondition(StringBuilder builder, List<Object> values, WhereCondition condition) {
-        checkCondition(condition);
-        condition.appendTo(builder, tablePrefix);
-        condition.appendValuesTo(values);
+        for (WhereCondition condition : conditions) {
+            checkCondition(condition);
+        }
+        return new WhereCondition.CombinedCondition(combineOp, conditions, tablePrefix);
     }
 
     void checkCondition(WhereCondition whereCondition) {
         if (whereCondition instanceof WhereCondition.PropertyCondition) {
             checkProperty(((WhereCondition.PropertyCondition) whereCondition).property);
+        } else if (whereCondition instanceof WhereCondition.LargeInCondition) {
+            checkProperty(((WhereCondition.LargeInCondition) whereCondition).property);
         }
     }
 
-    //检查指定的property是否是Dao中的属性的一部分，通过反射判断
+    //检查指定的property是否是Dao中的属性的一部分，属性按ordinal存放
     void checkProperty(Property property) {
         if (dao != null) {
             Property[] properties = dao.getProperties();
-            boolean found = false;
-            for (Property property2 : properties) {
-                if (property == property2) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
+            int ordinal = property.ordinal;
+            if (ordinal < 0 || ordinal >= properties.length || properties[ordinal] != property) {
                 throw new DaoException("Property '" + property.name + "' is not part of " + dao);
             }
         }
@@ -94,6 +81,38 @@ class WhereCollector<T> {
         }
     }
 
+    void appendValuesTo(List<Object> values) {
+        for (WhereCondition condition : whereConditions) {
+            condition.appendValuesTo(values);
+        }
+    }
+
+    /** @return false if a condition has no shape, see {@link WhereCondition.AbstractCondition#appendShapeTo(List)}. */
+    boolean appendShapeTo(List<Object> shape) {
+        shape.add(whereConditions.size());
+        for (WhereCondition condition : whereConditions) {
+            if (!appendShapeTo(shape, condition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Conditions implementing WhereCondition directly have no shape. */
+    static boolean appendShapeTo(List<Object> shape, WhereCondition condition) {
+        if (condition instanceof WhereCondition.AbstractCondition) {
+            return ((WhereCondition.AbstractCondition) condition).appendShapeTo(shape);
+        } else if (condition instanceof WhereCondition.CombinedCondition) {
+            return ((WhereCondition.CombinedCondition) condition).appendShapeTo(shape);
+        } else {
+            return false;
+        }
+    }
+
+    List<WhereCondition> getConditions() {
+        return whereConditions;
+    }
+
     boolean isEmpty() {
         return whereConditions.isEmpty();
     }
@@ -4,6 +4,9 @@ import com.mazouri.fork.greendao.DaoException;
 import com.mazouri.fork.greendao.Property;
 import com.mazouri.fork.greendao.internal.SqlUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -16,6 +19,46 @@ import java.util.List;
  * Created by wangdong on 16-1-19.
  */
 public interface WhereCondition {
+
+    /**
+     * Operators of {@link PropertyCondition}s known to greenDAO; conditions using these can also be evaluated in memory
+     * (see {@link QueryBuilder#buildPredicate()}).
+     */
+    enum Operator {
+        EQ, NOT_EQ, LIKE, BETWEEN, IN, NOT_IN, GT, LT, GE, LE, IS_NULL, IS_NOT_NULL;
+
+        /** Returns the operator for the given SQL as created by {@link Property}, or null for custom SQL. */
+        public static Operator fromSql(String op) {
+            if ("=?".equals(op)) {
+                return EQ;
+            } else if ("<>?".equals(op)) {
+                return NOT_EQ;
+            } else if (" LIKE ?".equals(op)) {
+                return LIKE;
+            } else if (" BETWEEN ? AND ?".equals(op)) {
+                return BETWEEN;
+            } else if (op.startsWith(" IN (")) {
+                return IN;
+            } else if (op.startsWith(" NOT IN (")) {
+                return NOT_IN;
+            } else if (">?".equals(op)) {
+                return GT;
+            } else if ("<?".equals(op)) {
+                return LT;
+            } else if (">=?".equals(op)) {
+                return GE;
+            } else if ("<=?".equals(op)) {
+                return LE;
+            } else if (" IS NULL".equals(op)) {
+                return IS_NULL;
+            } else if (" IS NOT NULL".equals(op)) {
+                return IS_NOT_NULL;
+            } else {
+                return null;
+            }
+        }
+    }
+
     void appendTo(StringBuilder builder, String tableAlias);
 
     void appendValuesTo(List<Object> values);
@@ -54,6 +97,18 @@ public interface WhereCondition {
                 }
             }
         }
+
+        /**
+         * Appends the structure of this condition (everything that affects the SQL, but not the values) to the given
+         * list. Conditions with equal shapes must render the same SQL with the same number of values; QueryBuilder uses
+         * the shape to reuse previously built SQL. Subclasses rendering SQL of their own override this; by default,
+         * the condition has no shape and queries using it always build their SQL.
+         *
+         * @return false if the condition has no shape.
+         */
+        public boolean appendShapeTo(List<Object> shape) {
+            return false;
+        }
     }
 
     public static class PropertyCondition extends AbstractCondition {
@@ -104,28 +159,49 @@ public interface WhereCondition {
 
         public final Property property;
         public final String op;
+        /** The structured operator or null if op is custom SQL. */
+        public final Operator operator;
 
         public PropertyCondition(Property property, String op) {
             this.property = property;
             this.op = op;
+            operator = Operator.fromSql(op);
         }
 
         public PropertyCondition(Property property, String op, Object value) {
             super(checkValueForType(property, value));
             this.property = property;
             this.op = op;
+            operator = Operator.fromSql(op);
         }
 
         public PropertyCondition(Property property, String op, Object[] values) {
             super(checkValuesForType(property, values));
             this.property = property;
             this.op = op;
+            operator = Operator.fromSql(op);
+        }
+
+        /** The values of this condition: none, one or several (IN, BETWEEN). */
+        public Object[] getValues() {
+            if (hasSingleValue) {
+                return new Object[]{value};
+            } else {
+                return values != null ? values : new Object[0];
+            }
         }
 
         @Override
         public void appendTo(StringBuilder builder, String tableAlias) {
             SqlUtils.appendProperty(builder, tableAlias, property).append(op);
         }
+
+        @Override
+        public boolean appendShapeTo(List<Object> shape) {
+            shape.add(property);
+            shape.add(op);
+            return true;
+        }
     }
 
     public static class StringCondition extends AbstractCondition {
@@ -151,5 +227,97 @@ public interface WhereCondition {
             builder.append(string);
         }
 
+        @Override
+        public boolean appendShapeTo(List<Object> shape) {
+            shape.add(string);
+            return true;
+        }
+
+    }
+
+    /**
+     * Matches a property against a large set of keys, see {@link Property#inLarge(long[])}. Reads bind the keys in
+     * lists of a few fixed sizes, larger sets and deletes load them into a temporary table (see {@link BulkKeys}).
+     */
+    public static class LargeInCondition extends AbstractCondition {
+
+        public final Property property;
+
+        public LargeInCondition(Property property, long[] keys) {
+            super(new BulkKeys(keys));
+            this.property = property;
+        }
+
+        public LargeInCondition(Property property, Collection<?> keys) {
+            super(new BulkKeys(keys));
+            this.property = property;
+        }
+
+        @Override
+        public void appendTo(StringBuilder builder, String tableAlias) {
+            SqlUtils.appendProperty(builder, tableAlias, property).append(BulkKeys.IN_SQL);
+        }
+
+        @Override
+        public boolean appendShapeTo(List<Object> shape) {
+            shape.add(property);
+            shape.add(BulkKeys.IN_SQL);
+            return true;
+        }
+    }
+
+    /**
+     * Conditions combined using AND or OR, see {@link QueryBuilder#and(WhereCondition, WhereCondition,
+     * WhereCondition...)} and {@link QueryBuilder#or(WhereCondition, WhereCondition, WhereCondition...)}. The
+     * conditions are rendered using the table alias of the builder or join that combined them.
+     */
+    public static class CombinedCondition implements WhereCondition {
+
+        /** " AND " or " OR ". */
+        public final String combineOp;
+        public final List<WhereCondition> conditions;
+        private final String tableAlias;
+
+        public CombinedCondition(String combineOp, List<WhereCondition> conditions, String tableAlias) {
+            this.combineOp = combineOp;
+            this.conditions = Collections.unmodifiableList(new ArrayList<WhereCondition>(conditions));
+            this.tableAlias = tableAlias;
+        }
+
+        public boolean isOr() {
+            return " OR ".equals(combineOp);
+        }
+
+        @Override
+        public void appendTo(StringBuilder builder, String ignoredTableAlias) {
+            builder.append('(');
+            for (int i = 0; i < conditions.size(); i++) {
+                if (i > 0) {
+                    builder.append(combineOp);
+                }
+                conditions.get(i).appendTo(builder, tableAlias);
+            }
+            builder.append(')');
+        }
+
+        @Override
+        public void appendValuesTo(List<Object> values) {
+            for (WhereCondition condition : conditions) {
+                condition.appendValuesTo(values);
+            }
+        }
+
+        /** Like {@link AbstractCondition#appendShapeTo(List)}; has no shape if one of the conditions has none. */
+        public boolean appendShapeTo(List<Object> shape) {
+            shape.add(combineOp);
+            shape.add(tableAlias);
+            shape.add(conditions.size());
+            for (WhereCondition condition : conditions) {
+                if (!WhereCollector.appendShapeTo(shape, condition)) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
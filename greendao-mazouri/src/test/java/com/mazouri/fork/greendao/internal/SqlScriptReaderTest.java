@@ -0,0 +1,129 @@
+package com.mazouri.fork.greendao.internal;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SqlScriptReaderTest {
+
+    @Test
+    public void splitsStatements() throws IOException {
+        List<String> statements = readAll("CREATE TABLE A (X INTEGER);\n\nINSERT INTO A VALUES (1);  ;\nDELETE FROM A");
+        assertEquals(3, statements.size());
+        assertEquals("CREATE TABLE A (X INTEGER)", statements.get(0));
+        assertEquals("INSERT INTO A VALUES (1)", statements.get(1));
+        assertEquals("DELETE FROM A", statements.get(2));
+    }
+
+    @Test
+    public void keepsSemicolonsInQuotes() throws IOException {
+        List<String> statements = readAll("INSERT INTO A VALUES ('a;b', 'it''s;');\n"
+                + "CREATE TABLE \"B;C\" ([D;E] TEXT, `F;G` TEXT);");
+        assertEquals(2, statements.size());
+        assertEquals("INSERT INTO A VALUES ('a;b', 'it''s;')", statements.get(0));
+        assertEquals("CREATE TABLE \"B;C\" ([D;E] TEXT, `F;G` TEXT)", statements.get(1));
+    }
+
+    @Test
+    public void dropsComments() throws IOException {
+        SqlScriptReader reader = new SqlScriptReader(new StringReader("-- first; comment\n"
+                + "/* block; \n comment */\n"
+                + "SELECT 1; -- trailing\n"
+                + "SELECT '--not a comment' /* inline */ FROM A;"));
+        assertTrue(reader.next());
+        assertEquals("SELECT 1", reader.getSql());
+        assertEquals(4, reader.getLineNumber());
+        assertTrue(reader.next());
+        assertEquals("SELECT '--not a comment'   FROM A", reader.getSql());
+        assertEquals(5, reader.getLineNumber());
+        assertFalse(reader.next());
+        assertNull(reader.getSql());
+    }
+
+    @Test
+    public void endsTriggersAtEnd() throws IOException {
+        List<String> statements = readAll("CREATE TEMP TRIGGER T AFTER INSERT ON A BEGIN\n"
+                + "  UPDATE B SET X = 1;\n"
+                + "  DELETE FROM C;\n"
+                + "END;\n"
+                + "SELECT 1;");
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(0).startsWith("CREATE TEMP TRIGGER"));
+        assertTrue(statements.get(0).endsWith("END"));
+        assertTrue(statements.get(0).contains("UPDATE B SET X = 1;"));
+        assertEquals("SELECT 1", statements.get(1));
+    }
+
+    @Test
+    public void bindsInsertValues() throws IOException {
+        SqlScriptReader reader = new SqlScriptReader(new StringReader(
+                "INSERT INTO A VALUES (42, -1.5e3, 'it''s', X'0aFF', NULL);"));
+        reader.setParameterizeInserts(true);
+        assertTrue(reader.next());
+        assertEquals("INSERT INTO A VALUES (?, -?, ?, ?, NULL)", reader.getSql());
+        Object[] args = reader.getBindArgs();
+        assertEquals(4, args.length);
+        assertEquals(42L, args[0]);
+        assertEquals(1.5e3, args[1]);
+        assertEquals("it's", args[2]);
+        assertArrayEquals(new byte[]{0x0a, (byte) 0xff}, (byte[]) args[3]);
+    }
+
+    @Test
+    public void keepsLiteralsThatCannotBeBound() throws IOException {
+        SqlScriptReader reader = new SqlScriptReader(new StringReader(
+                "INSERT INTO A VALUES (0x1F, 99999999999999999999, X'ABC', 7);"));
+        reader.setParameterizeInserts(true);
+        assertTrue(reader.next());
+        assertEquals("INSERT INTO A VALUES (0x1F, 99999999999999999999, X'ABC', ?)", reader.getSql());
+        assertArrayEquals(new Object[]{7L}, reader.getBindArgs());
+    }
+
+    @Test
+    public void bindsOnlyInserts() throws IOException {
+        SqlScriptReader reader = new SqlScriptReader(new StringReader(
+                "UPDATE A SET X = 1;\nINSERT INTO A SELECT 1;\nINSERT INTO A VALUES (1);"));
+        reader.setParameterizeInserts(true);
+        assertTrue(reader.next());
+        assertEquals("UPDATE A SET X = 1", reader.getSql());
+        assertNull(reader.getBindArgs());
+        assertTrue(reader.next());
+        assertEquals("INSERT INTO A SELECT 1", reader.getSql());
+        assertNull(reader.getBindArgs());
+        assertTrue(reader.next());
+        assertEquals("INSERT INTO A VALUES (?)", reader.getSql());
+        assertArrayEquals(new Object[]{1L}, reader.getBindArgs());
+    }
+
+    @Test
+    public void readsAcrossBufferBoundaries() throws IOException {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            script.append("INSERT INTO A VALUES (").append(i).append(", 'row ").append(i).append("');\n");
+        }
+        SqlScriptReader reader = new SqlScriptReader(new StringReader(script.toString()));
+        reader.setParameterizeInserts(true);
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(reader.next());
+            assertEquals("INSERT INTO A VALUES (?, ?)", reader.getSql());
+            assertArrayEquals(new Object[]{(long) i, "row " + i}, reader.getBindArgs());
+            assertEquals(i + 1, reader.getLineNumber());
+        }
+        assertFalse(reader.next());
+    }
+
+    private static List<String> readAll(String script) throws IOException {
+        SqlScriptReader reader = new SqlScriptReader(new StringReader(script));
+        List<String> statements = new ArrayList<String>();
+        while (reader.next()) {
+            statements.add(reader.getSql());
+        }
+        reader.close();
+        return statements;
+    }
+}